@@ -0,0 +1,125 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Class HuffVectorKernels. The histogram and packing kernels of HuffKernels, written
+ * with the Java Vector API. This class is in its own source folder because it needs the
+ * jdk.incubator.vector module to compile and run; HuffKernels loads it by name only if
+ * the module is in the boot layer, and uses its own scalar kernels otherwise.
+ *
+ * The histogram gives each lane its own copy of every counter (sub[value*LANES + lane]),
+ * so the lanes of one scatter never store to the same counter.
+ */
+public class HuffVectorKernels extends HuffKernels {
+
+	/** The int species - one lane for each byte counted at a time. */
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	/** The number of lanes. */
+	private static final int LANES = INTS.length();
+
+	/** The byte species that is loaded and widened to INTS; its first LANES bytes are used. */
+	private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, LANES * 8)));
+
+	/** The lane numbers 0..LANES-1. */
+	private static final IntVector LANE = IntVector.zero(INTS).addIndex(1);
+
+	/**
+	 * Gets the name of the kernels, for the benchmark.
+	 *
+	 * @return the name
+	 */
+	@Override
+	String getName() {
+		return "vector";
+	}
+
+	/**
+	 * Gets the number of sub-histograms that countChunk() counts into - one for each lane.
+	 *
+	 * @return the number of sub-histograms
+	 */
+	@Override
+	int getNumSubHistograms() {
+		return LANES;
+	}
+
+	/**
+	 * Counts each byte value in a chunk, LANES bytes at a time: the bytes are widened to
+	 * ints, turned into the index of their lane's counter, and the counters are gathered,
+	 * incremented and scattered back.
+	 *
+	 * @param chunk the bytes to count
+	 * @param numBytes the number of bytes in the chunk
+	 * @param sub the sub-histograms, interleaved by lane
+	 */
+	@Override
+	void countChunk(byte[] chunk, int numBytes, int[] sub) {
+		int[] index = new int[LANES];
+		int i = 0;
+		for (; i + BYTES.length() <= numBytes; i += LANES) {
+			widen(chunk, i).mul(LANES).add(LANE).intoArray(index, 0);
+			IntVector.fromArray(INTS, sub, 0, index, 0).add(1).intoArray(sub, 0, index, 0);
+		}
+		for (; i < numBytes; i++) {
+			sub[(chunk[i] & 0xFF) * LANES]++;
+		}
+	}
+
+	/**
+	 * Gets the count of one byte value in the sub-histograms filled by countChunk().
+	 *
+	 * @param sub the sub-histograms
+	 * @param value the byte value
+	 * @return the count
+	 */
+	@Override
+	int subCount(int[] sub, int value) {
+		return IntVector.fromArray(INTS, sub, value * LANES).reduceLanes(VectorOperators.ADD);
+	}
+
+	/**
+	 * Finds the first byte that has no code, gathering the code lengths of LANES bytes at
+	 * a time.
+	 *
+	 * @param data the bytes to encode
+	 * @param off the index of the first byte
+	 * @param len the number of bytes
+	 * @param codeLengths the length of each code (0 = no code)
+	 * @return the index of the first byte with no code, or off+len if every byte has a code
+	 */
+	@Override
+	int findUncoded(byte[] data, int off, int len, byte[] codeLengths) {
+		int[] lengths = new int[NUM_BYTES];
+		for (int v = 0; v < Math.min(NUM_BYTES, codeLengths.length); v++) {
+			lengths[v] = codeLengths[v];
+		}
+		int[] index = new int[LANES];
+		int end = off + len;
+		int i = off;
+		for (; i + BYTES.length() <= end; i += LANES) {
+			widen(data, i).intoArray(index, 0);
+			VectorMask<Integer> uncoded = IntVector.fromArray(INTS, lengths, 0, index, 0).eq(0);
+			if (uncoded.anyTrue()) {
+				return i + uncoded.firstTrue();
+			}
+		}
+		return super.findUncoded(data, i, end - i, codeLengths);
+	}
+
+	/**
+	 * Loads LANES bytes and widens them to unsigned ints.
+	 *
+	 * @param data the bytes
+	 * @param i the index of the first byte
+	 * @return the byte values 0..255
+	 */
+	private static IntVector widen(byte[] data, int i) {
+		IntVector v = (IntVector) ByteVector.fromArray(BYTES, data, i).convertShape(VectorOperators.B2I, INTS, 0);
+		return v.and(0xFF);
+	}
+}
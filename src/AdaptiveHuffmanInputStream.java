@@ -0,0 +1,156 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Class AdaptiveHuffmanInputStream. Decompresses a stream written by
+ * AdaptiveHuffmanOutputStream, rebuilding the same AdaptiveHuffmanTree one byte at a time.
+ *
+ * The compressed data is read without read ahead (see BitReader), so a read returns as
+ * soon as the codes of the next byte have arrived on a pipe or socket, and any data that
+ * follows the end of data marker is left in the underlying stream.
+ */
+public class AdaptiveHuffmanInputStream extends FilterInputStream {
+
+	/** The bit reader connected to the underlying stream. */
+	private BitReader bitReader;
+
+	/** The adaptive code, updated after every byte. */
+	private AdaptiveHuffmanTree tree;
+
+	/** Set once the header has been read. */
+	private boolean started;
+
+	/** Set once the end of data marker has been read. */
+	private boolean finished;
+
+	/**
+	 * Instantiates a new adaptive Huffman input stream. The header is read on the first read.
+	 *
+	 * @param in the stream that supplies the compressed data
+	 */
+	public AdaptiveHuffmanInputStream(InputStream in) {
+		this(in, false);
+	}
+
+	/**
+	 * Instantiates a new adaptive Huffman input stream. Used by EncodeDecode, which has
+	 * already consumed the .huf header while detecting the container mode.
+	 *
+	 * @param in the stream that supplies the compressed data
+	 * @param headerRead true if the .huf header has already been read from in
+	 */
+	AdaptiveHuffmanInputStream(InputStream in, boolean headerRead) {
+		super(in);
+		bitReader = new BitReader(in, false);
+		tree = new AdaptiveHuffmanTree();
+		started = headerRead;
+		finished = false;
+	}
+
+	/**
+	 * Reads one byte.
+	 *
+	 * @return the byte (0 to 255), or -1 at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred, or the data is corrupt
+	 */
+	@Override
+	public int read() throws IOException {
+		int b;
+		while ((b = decodeNext()) == AdaptiveHuffmanTree.SYNC) {
+			// skip the flush points
+		}
+		return (b == AdaptiveHuffmanTree.EOF) ? -1 : b;
+	}
+
+	/**
+	 * Reads up to len bytes into the array, starting at off. The read stops at a flush
+	 * point once it has some data, so it does not wait for data that has not been sent.
+	 *
+	 * @param b the buffer
+	 * @param off the start offset in the buffer
+	 * @param len the maximum number of bytes to read
+	 * @return the number of bytes read, or -1 at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred, or the data is corrupt
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		while (n < len) {
+			int c = decodeNext();
+			if (c == AdaptiveHuffmanTree.EOF || (c == AdaptiveHuffmanTree.SYNC && n > 0)) {
+				break;
+			}
+			if (c != AdaptiveHuffmanTree.SYNC) {
+				b[off + n++] = (byte) c;
+			}
+		}
+		return (n == 0) ? -1 : n;
+	}
+
+	/**
+	 * Decodes the next byte, reading the header first if needed. At a flush point the
+	 * padding to the next byte boundary is skipped.
+	 *
+	 * @return the byte (0 to 255), AdaptiveHuffmanTree.EOF at the end of the stream, or
+	 *         AdaptiveHuffmanTree.SYNC at a flush point
+	 * @throws IOException Signals that an I/O exception has occurred, or the data is corrupt
+	 */
+	private int decodeNext() throws IOException {
+		if (finished) {
+			return AdaptiveHuffmanTree.EOF;
+		}
+		if (!started) {
+			if (!HuffFileHeader.readMagic(in) || HuffFileHeader.read(in).getMode() != HuffFileHeader.MODE_ADAPTIVE) {
+				throw new IOException("Not an adaptive Huffman stream");
+			}
+			started = true;
+		}
+		int b = tree.decode(bitReader);
+		if (b == AdaptiveHuffmanTree.SYNC) {
+			bitReader.alignToByte();
+		} else if (b == AdaptiveHuffmanTree.EOF) {
+			finished = true;
+		}
+		return b;
+	}
+
+	/**
+	 * Skips up to n bytes of decompressed data.
+	 *
+	 * @param n the number of bytes to skip
+	 * @return the number of bytes skipped
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && read() != -1) {
+			skipped++;
+		}
+		return skipped;
+	}
+
+	/**
+	 * The number of bytes available without blocking is not known.
+	 *
+	 * @return 0
+	 */
+	@Override
+	public int available() {
+		return 0;
+	}
+
+	/**
+	 * Mark is not supported.
+	 *
+	 * @return false
+	 */
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
@@ -0,0 +1,138 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The Class AdaptiveHuffmanOutputStream. Compresses a stream in a single pass with an
+ * AdaptiveHuffmanTree: each byte is encoded as soon as it is written, with no weights
+ * gathered beforehand and no weights file. This suits live data that cannot be read twice.
+ *
+ * Stream layout: a .huf header in MODE_ADAPTIVE, followed by the adaptive codes and the
+ * end of data marker, padded to a byte boundary. flush() writes a sync marker, padded to a
+ * byte boundary, so the reader can decode every byte written before the flush.
+ *
+ * The stream MUST be finished (finish() or close()) to write the end of data marker.
+ */
+public class AdaptiveHuffmanOutputStream extends FilterOutputStream {
+
+	/** The bit writer connected to the underlying stream. */
+	private BitWriter bitWriter;
+
+	/** The adaptive code, updated after every byte. */
+	private AdaptiveHuffmanTree tree;
+
+	/** Set once the header has been written. */
+	private boolean started;
+
+	/** Set when bytes have been written since the last flush. */
+	private boolean pending;
+
+	/** Set once the end of data marker has been written. */
+	private boolean finished;
+
+	/**
+	 * Instantiates a new adaptive Huffman output stream.
+	 *
+	 * @param out the stream that receives the compressed data
+	 */
+	public AdaptiveHuffmanOutputStream(OutputStream out) {
+		super(out);
+		bitWriter = new BinaryIO().openBitWriter(out);
+		tree = new AdaptiveHuffmanTree();
+		started = false;
+		finished = false;
+	}
+
+	/**
+	 * Writes one byte.
+	 *
+	 * @param b the byte
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		ensureStarted();
+		tree.encode(b & 0xFF, bitWriter);
+		pending = true;
+	}
+
+	/**
+	 * Writes len bytes from the array, starting at off.
+	 *
+	 * @param b the data
+	 * @param off the start offset in the data
+	 * @param len the number of bytes to write
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureStarted();
+		for (int i = off, end = off + len; i < end; i++) {
+			tree.encode(b[i] & 0xFF, bitWriter);
+		}
+		pending |= (len > 0);
+	}
+
+	/**
+	 * Writes a sync marker, pads to a byte boundary and flushes the underlying stream -
+	 * the equivalent of GZIPOutputStream's sync flush. Every byte written before the flush
+	 * can then be decoded by the other end. The marker costs a few bytes, so nothing is
+	 * written if no data has been written since the last flush.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (pending && !finished) {
+			tree.encodeSync(bitWriter);
+			bitWriter.flush();
+			pending = false;
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the end of data marker, without closing the underlying stream.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		ensureStarted();
+		tree.encodeEOF(bitWriter);
+		bitWriter.flush();
+		finished = true;
+	}
+
+	/**
+	 * Finishes the stream and closes the underlying stream.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the .huf header the first time, and throws an IOException if the stream has
+	 * been finished.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred, or the stream has been finished
+	 */
+	private void ensureStarted() throws IOException {
+		if (finished) {
+			throw new IOException("AdaptiveHuffmanOutputStream has been finished");
+		}
+		if (!started) {
+			new HuffFileHeader(HuffFileHeader.MODE_ADAPTIVE).write(out);
+			started = true;
+		}
+	}
+}
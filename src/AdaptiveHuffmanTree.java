@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The Class AdaptiveHuffmanTree. An adaptive Huffman code (the FGK algorithm) for the 256
+ * byte values. The encoder and the decoder start with the same tree - a single NYT ("not
+ * yet transmitted") node - and update it identically after every symbol, so no weights
+ * need to be sent and the input only has to be read once.
+ *
+ * The first time a byte is seen, the code for the NYT node is written, followed by the
+ * byte in ESCAPE_BITS bits. The end of the data is marked the same way with the value EOF,
+ * and a flush point (after which the encoder pads to a byte boundary) with the value SYNC.
+ *
+ * The nodes are stored in arrays indexed by their node number. The sibling property
+ * (weights never decrease as the node number increases) is restored after each symbol by
+ * swapping a node with the highest numbered node of the same weight (its block leader).
+ * Swapping exchanges the contents of the two slots, so the parent links stay valid.
+ */
+public class AdaptiveHuffmanTree {
+
+	/** The value written after the NYT code to mark the end of the data. */
+	static final int EOF = 256;
+
+	/** The value written after the NYT code to mark a flush: the padding to the next byte boundary follows. */
+	static final int SYNC = 257;
+
+	/** The number of bits used to write a new symbol (or EOF) after the NYT code. */
+	static final int ESCAPE_BITS = 9;
+
+	/** The symbol value of an internal node. */
+	private static final int INTERNAL = -1;
+
+	/** The symbol value of the NYT node. */
+	private static final int NYT = -2;
+
+	/** The number of nodes when all 256 byte values have been seen. */
+	private static final int MAX_NODES = 2 * 257 - 1;
+
+	/** The node number of the root. */
+	private static final int ROOT = MAX_NODES - 1;
+
+	/** The weight of each node. */
+	private int[] weight;
+
+	/** The parent of each node; -1 for the root. */
+	private int[] parent;
+
+	/** The left (0) child of each internal node. */
+	private int[] left;
+
+	/** The right (1) child of each internal node. */
+	private int[] right;
+
+	/** The symbol of each leaf, or INTERNAL or NYT. */
+	private int[] symbol;
+
+	/** The leaf node for each byte value; -1 if the byte has not been seen. */
+	private int[] leaf;
+
+	/** The node number of the NYT node. */
+	private int nyt;
+
+	/** Scratch space for the bits of a code, from the leaf to the root. */
+	private int[] path;
+
+	/**
+	 * Instantiates a new adaptive Huffman tree, containing only the NYT node.
+	 */
+	public AdaptiveHuffmanTree() {
+		weight = new int[MAX_NODES];
+		parent = new int[MAX_NODES];
+		left = new int[MAX_NODES];
+		right = new int[MAX_NODES];
+		symbol = new int[MAX_NODES];
+		leaf = new int[256];
+		path = new int[MAX_NODES];
+		Arrays.fill(leaf, -1);
+		nyt = ROOT;
+		parent[ROOT] = -1;
+		symbol[ROOT] = NYT;
+	}
+
+	/**
+	 * Encodes one byte and updates the tree.
+	 *
+	 * @param b the byte (0 to 255)
+	 * @param bitWriter the bit writer for the compressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void encode(int b, BitWriter bitWriter) throws IOException {
+		if (leaf[b] == -1) {
+			writePath(nyt, bitWriter);
+			bitWriter.writeBits(b, ESCAPE_BITS);
+		} else {
+			writePath(leaf[b], bitWriter);
+		}
+		update(b);
+	}
+
+	/**
+	 * Encodes the end of the data marker. The tree is not updated.
+	 *
+	 * @param bitWriter the bit writer for the compressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void encodeEOF(BitWriter bitWriter) throws IOException {
+		writePath(nyt, bitWriter);
+		bitWriter.writeBits(EOF, ESCAPE_BITS);
+	}
+
+	/**
+	 * Encodes a flush marker. The tree is not updated.
+	 *
+	 * @param bitWriter the bit writer for the compressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void encodeSync(BitWriter bitWriter) throws IOException {
+		writePath(nyt, bitWriter);
+		bitWriter.writeBits(SYNC, ESCAPE_BITS);
+	}
+
+	/**
+	 * Decodes one byte and updates the tree.
+	 *
+	 * @param bitReader the bit reader for the compressed data
+	 * @return the byte (0 to 255), EOF at the end of the data, or SYNC at a flush
+	 * @throws IOException Signals that an I/O exception has occurred, or the data is corrupt
+	 */
+	int decode(BitReader bitReader) throws IOException {
+		int node = ROOT;
+		while (symbol[node] == INTERNAL) {
+			node = (bitReader.readBits(1) == 0) ? left[node] : right[node];
+		}
+		int b = symbol[node];
+		if (b == NYT) {
+			b = bitReader.readBits(ESCAPE_BITS);
+			if (b == EOF || b == SYNC) {
+				return b;
+			}
+			if (b > SYNC || leaf[b] != -1) {
+				throw new IOException("Corrupt adaptive Huffman data");
+			}
+		}
+		if (bitReader.isExhausted()) {
+			throw new IOException("Unexpected end of adaptive Huffman data");
+		}
+		update(b);
+		return b;
+	}
+
+	/**
+	 * Writes the code of a node: the path from the root to the node.
+	 *
+	 * @param node the node
+	 * @param bitWriter the bit writer for the compressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writePath(int node, BitWriter bitWriter) throws IOException {
+		int depth = 0;
+		for (int n = node; n != ROOT; n = parent[n]) {
+			path[depth++] = (right[parent[n]] == n) ? 1 : 0;
+		}
+		long bits = 0;
+		int numBits = 0;
+		for (int i = depth - 1; i >= 0; i--) {
+			bits = (bits << 1) | path[i];
+			if (++numBits == BitWriter.MAX_BITS) {
+				bitWriter.writeBits(bits, numBits);
+				bits = 0;
+				numBits = 0;
+			}
+		}
+		bitWriter.writeBits(bits, numBits);
+	}
+
+	/**
+	 * Updates the tree after a byte has been encoded or decoded. A new byte splits the
+	 * NYT node into a new NYT node and a leaf for the byte. Then, from the byte's leaf up
+	 * to the root, each node is swapped with its block leader and its weight incremented.
+	 *
+	 * @param b the byte
+	 */
+	private void update(int b) {
+		int node = leaf[b];
+		if (node == -1) {
+			int oldNyt = nyt;
+			node = oldNyt - 1;
+			nyt = oldNyt - 2;
+			symbol[oldNyt] = INTERNAL;
+			left[oldNyt] = nyt;
+			right[oldNyt] = node;
+			parent[nyt] = oldNyt;
+			parent[node] = oldNyt;
+			symbol[nyt] = NYT;
+			symbol[node] = b;
+			weight[nyt] = 0;
+			weight[node] = 0;
+			leaf[b] = node;
+		}
+		while (node != -1) {
+			int leader = node;
+			while (leader < ROOT && weight[leader + 1] == weight[node]) {
+				leader++;
+			}
+			if (leader != node && leader != parent[node]) {
+				swap(node, leader);
+				node = leader;
+			}
+			weight[node]++;
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * Swaps the subtrees at two node numbers, by exchanging the contents of the slots.
+	 *
+	 * @param a the first node
+	 * @param b the second node
+	 */
+	private void swap(int a, int b) {
+		int t = weight[a]; weight[a] = weight[b]; weight[b] = t;
+		t = left[a]; left[a] = left[b]; left[b] = t;
+		t = right[a]; right[a] = right[b]; right[b] = t;
+		t = symbol[a]; symbol[a] = symbol[b]; symbol[b] = t;
+		relink(a);
+		relink(b);
+	}
+
+	/**
+	 * Points the children (or the leaf map) back at a slot after its contents have moved.
+	 *
+	 * @param n the slot
+	 */
+	private void relink(int n) {
+		if (symbol[n] == INTERNAL) {
+			parent[left[n]] = n;
+			parent[right[n]] = n;
+		} else if (symbol[n] == NYT) {
+			nyt = n;
+		} else {
+			leaf[symbol[n]] = n;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * The Class BinaryIO.
@@ -34,6 +36,23 @@ public class BinaryIO {
 		return result;
 	}
 	
+	/**
+	 * Converts a Huffman code string of 1's and 0's to its value, right-aligned
+	 * in a long. The caller MUST guarantee that the string is no longer than
+	 * BitWriter.MAX_BITS.
+	 *
+	 * @param code the Huffman code string
+	 * @return the value of the code
+	 */
+	long convStrToCode(String code) {
+		long result = 0;
+		
+		for (int i = 0; i < code.length(); i++) {
+			result = (result << 1) | ((code.charAt(i) == '1') ? 1 : 0);
+		}
+		return result;
+	}
+	
 	/**
 	 * Convert a byte value into a string of eight 1's and 0's (MSB to LSB).
 	 *
@@ -87,6 +106,27 @@ public class BinaryIO {
 			 return binStr;
 		 }
 	 }
+
+	/**
+	 * Opens a BitWriter on the specified output stream. The BitWriter packs codes
+	 * into a 64 bit register instead of building a binary string, and produces the
+	 * same bytes as repeated calls to writeBinString().
+	 *
+	 * @param os the stream to write the packed bytes to
+	 * @return the bit writer
+	 */
+	BitWriter openBitWriter(OutputStream os) {
+		return new BitWriter(os);
+	}
+	
+	/**
+	 * Opens a BitReader on the specified input stream - the counterpart of openBitWriter.
+	 *
+	 * @param is the stream to read the packed bytes from
+	 * @return the bit reader
+	 */
+	BitReader openBitReader(InputStream is) {
+		return new BitReader(is);
+	}
 	
 }
-
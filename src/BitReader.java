@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Class BitReader. The counterpart of BitWriter - reads bits (MSB first) from
+ * the underlying stream into a 64 bit register, so that decoders can peek at several
+ * bits at once instead of converting each byte to a String of 1's and 0's.
+ *
+ * Reading past the end of the stream returns 0 bits; use isExhausted() to check
+ * whether the bits that were consumed actually came from the stream.
+ *
+ * By default the register is refilled 8 KiB at a time. Without read ahead, only the
+ * bytes holding the bits asked for are read, so the reader never waits on a pipe or
+ * socket for bytes that have not been sent, and leaves any data that follows the
+ * compressed data in the stream.
+ */
+public class BitReader {
+
+	/** The maximum number of bits that can be peeked or read in a single call. */
+	static final int MAX_BITS = 57;
+
+	/** The size of the internal byte buffer. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The stream that supplies the packed bytes. */
+	private InputStream in;
+
+	/** The bit register - valid bits are right-aligned. */
+	private long bitBuffer;
+
+	/** The number of valid bits in the bit register. */
+	private int bitCount;
+
+	/** The byte buffer. */
+	private byte[] buffer;
+
+	/** The current position in the byte buffer. */
+	private int bufPos;
+
+	/** The number of bytes in the byte buffer. */
+	private int bufLen;
+
+	/** True to fill the byte buffer and the bit register whenever they run low. */
+	private boolean readAhead;
+
+	/** Set once the underlying stream has returned end of file. */
+	private boolean eof;
+
+	/** The number of 0 bits added to the register after the end of the stream. */
+	private long paddingBits;
+
+	/**
+	 * Instantiates a new BitReader connected to the given input stream.
+	 *
+	 * @param in the stream to read the packed bytes from
+	 */
+	public BitReader(InputStream in) {
+		this(in, true);
+	}
+
+	/**
+	 * Instantiates a new BitReader connected to the given input stream.
+	 *
+	 * @param in the stream to read the packed bytes from
+	 * @param readAhead true to read ahead; false to read only the bytes that hold the bits asked for
+	 */
+	public BitReader(InputStream in, boolean readAhead) {
+		this.in = in;
+		this.readAhead = readAhead;
+		buffer = new byte[BUFFER_SIZE];
+		bitBuffer = 0;
+		bitCount = 0;
+		bufPos = 0;
+		bufLen = 0;
+		eof = false;
+		paddingBits = 0;
+	}
+
+	/**
+	 * Returns the next numBits bits without consuming them.
+	 *
+	 * @param numBits the number of bits to peek (1 to MAX_BITS)
+	 * @return the bits, right-aligned
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	int peekBits(int numBits) throws IOException {
+		if (bitCount < numBits) {
+			refill(numBits);
+		}
+		return (int) ((bitBuffer >>> (bitCount - numBits)) & ((1L << numBits) - 1));
+	}
+
+	/**
+	 * Consumes numBits bits. The bits MUST have been peeked first.
+	 *
+	 * @param numBits the number of bits to consume
+	 */
+	void skipBits(int numBits) {
+		bitCount -= numBits;
+	}
+
+	/**
+	 * Reads and consumes the next numBits bits.
+	 *
+	 * @param numBits the number of bits to read (1 to 31)
+	 * @return the bits, right-aligned
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	int readBits(int numBits) throws IOException {
+		int bits = peekBits(numBits);
+		bitCount -= numBits;
+		return bits;
+	}
+
+	/**
+	 * Discards the bits up to the next byte boundary of the underlying stream.
+	 */
+	void alignToByte() {
+		bitCount -= bitCount % 8;
+	}
+
+	/**
+	 * Checks if bits beyond the end of the stream have been consumed.
+	 *
+	 * @return true, if the stream is exhausted
+	 */
+	boolean isExhausted() {
+		return eof && (bitCount < paddingBits);
+	}
+
+	/**
+	 * Fills the bit register with whole bytes from the byte buffer, padding with
+	 * 0's once the end of the stream is reached. With read ahead the register is filled
+	 * to more than 56 bits; otherwise only to numBits, reading just the bytes needed.
+	 *
+	 * @param numBits the number of bits needed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void refill(int numBits) throws IOException {
+		int target = readAhead ? MAX_BITS : numBits;
+		while (bitCount < target) {
+			if (bufPos == bufLen && !eof) {
+				bufLen = in.read(buffer, 0, readAhead ? buffer.length : (target - bitCount + 7) / 8);
+				bufPos = 0;
+				if (bufLen <= 0) {
+					bufLen = 0;
+					eof = true;
+				}
+			}
+			if (eof) {
+				bitBuffer <<= 8;
+				paddingBits += 8;
+			} else {
+				bitBuffer = (bitBuffer << 8) | (buffer[bufPos++] & 0xFF);
+			}
+			bitCount += 8;
+		}
+	}
+}
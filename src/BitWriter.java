@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The Class BitWriter. Packs variable length codes (MSB first) into a 64 bit
+ * register and writes whole bytes to the underlying stream. This replaces building
+ * a String of 1's and 0's for every character - the output is bit-for-bit identical
+ * to the output of BinaryIO.writeBinString().
+ */
+public class BitWriter {
+
+	/** The maximum number of bits that can be written in a single call to writeBits. */
+	static final int MAX_BITS = 57;
+
+	/** The size of the internal byte buffer. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The stream that receives the packed bytes. */
+	private OutputStream out;
+
+	/** The bit register - pending bits are right-aligned. */
+	private long bitBuffer;
+
+	/** The number of pending bits in the bit register (always less than 8 between calls). */
+	private int bitCount;
+
+	/** The byte buffer - whole bytes are collected here before being written to out. */
+	private byte[] buffer;
+
+	/** The number of bytes currently in the byte buffer. */
+	private int bufPos;
+
+	/** The total number of bits written, including pending bits. */
+	private long bitsWritten;
+
+	/**
+	 * Instantiates a new BitWriter connected to the given output stream.
+	 *
+	 * @param out the stream to write the packed bytes to
+	 */
+	public BitWriter(OutputStream out) {
+		this.out = out;
+		buffer = new byte[BUFFER_SIZE];
+		bitBuffer = 0;
+		bitCount = 0;
+		bufPos = 0;
+		bitsWritten = 0;
+	}
+
+	/**
+	 * Write the low numBits bits of bits, most significant bit first.
+	 *
+	 * @param bits the code to write, right-aligned
+	 * @param numBits the number of bits to write (0 to MAX_BITS)
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void writeBits(long bits, int numBits) throws IOException {
+		bitBuffer = (bitBuffer << numBits) | (bits & ((1L << numBits) - 1));
+		bitCount += numBits;
+		bitsWritten += numBits;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			buffer[bufPos++] = (byte) (bitBuffer >>> bitCount);
+			if (bufPos == buffer.length) {
+				flushBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Writes the code of each byte in data[off] to data[off+len-1]. This is the bulk path
+	 * for the canonical encoders: the bit register and byte buffer position are kept in
+	 * local variables for the whole run, and completed bits are stored 32 at a time, 
+	 * instead of calling writeBits() (and testing for whole bytes) once per byte.
+	 * Stops at the first byte that has no code (length 0), without writing it; that byte
+	 * is found first by HuffKernels.findUncoded(), so the packing loop does not test it.
+	 *
+	 * @param data the bytes to encode
+	 * @param off the index of the first byte
+	 * @param len the number of bytes
+	 * @param codeValues the code of each byte value, right-aligned
+	 * @param codeLengths the length of each code - MUST be at most 32 bits
+	 * @return the index of the first byte with no code, or off+len if every byte was written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	int writeCodes(byte[] data, int off, int len, int[] codeValues, byte[] codeLengths) throws IOException {
+		long bits = bitBuffer;
+		int count = bitCount;
+		int pos = bufPos;
+		long written = 0;
+		int end = HuffKernels.get().findUncoded(data, off, len, codeLengths);
+		int i = off;
+		
+		for (; i < end; i++) {
+			int ord = data[i] & 0xFF;
+			int numBits = codeLengths[ord];
+			bits = (bits << numBits) | (codeValues[ord] & 0xFFFFFFFFL);
+			count += numBits;
+			written += numBits;
+			if (count >= 32) {
+				if (pos > buffer.length - 4) {
+					bufPos = pos;
+					flushBuffer();
+					pos = 0;
+				}
+				count -= 32;
+				int word = (int) (bits >>> count);
+				buffer[pos] = (byte) (word >>> 24);
+				buffer[pos + 1] = (byte) (word >>> 16);
+				buffer[pos + 2] = (byte) (word >>> 8);
+				buffer[pos + 3] = (byte) word;
+				pos += 4;
+			}
+		}
+		bitBuffer = bits;
+		bitCount = 0;
+		bufPos = pos;
+		bitsWritten += written - count;
+		if (bufPos == buffer.length) {
+			flushBuffer();
+		}
+		// restore the invariant: less than 8 pending bits
+		writeBits(bits, count);
+		return i;
+	}
+
+	/**
+	 * Write a binary string of 1's and 0's. This is the slow path, used only for
+	 * codes that are longer than MAX_BITS.
+	 *
+	 * @param binStr the binary string to write
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void writeBinString(String binStr) throws IOException {
+		for (int i = 0; i < binStr.length(); i++) {
+			writeBits((binStr.charAt(i) == '1') ? 1 : 0, 1);
+		}
+	}
+
+	/**
+	 * Pad the pending bits with 0's up to the next byte boundary.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void padToByte() throws IOException {
+		if (bitCount > 0) {
+			writeBits(0, 8 - bitCount);
+		}
+	}
+
+	/**
+	 * Pads to a byte boundary and writes all buffered bytes to the underlying stream.
+	 * The underlying stream is flushed but NOT closed.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void flush() throws IOException {
+		padToByte();
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Gets the total number of bits written so far.
+	 *
+	 * @return the bits written
+	 */
+	long getBitsWritten() {
+		return bitsWritten;
+	}
+
+	/**
+	 * Write the whole bytes in the byte buffer to the underlying stream.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void flushBuffer() throws IOException {
+		if (bufPos > 0) {
+			out.write(buffer, 0, bufPos);
+			bufPos = 0;
+		}
+	}
+}
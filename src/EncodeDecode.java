@@ -3,7 +3,12 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.function.BooleanSupplier;
 
 import myfileio.MyFileIO;
 
@@ -32,6 +37,51 @@ public class EncodeDecode {
 	
 	/**  The array for storing the frequency weights. */
 	private int[] weights;	
+	
+	/** The numeric value of each huffman code, right-aligned (valid if the length is <= BitWriter.MAX_BITS) */
+	private long[] codes;
+	
+	/** The length in bits of each huffman code */
+	private int[] codeLengths;
+	
+	/** The number of characters read from the text file at a time */
+	private static final int BUFFER_SIZE = 8192;
+	
+	/** If true, encode and decode with canonical huffman codes instead of the tree codes */
+	private boolean canonical = false;
+	
+	/** The block size for the blocked .huf container; 0 writes a single (unblocked) codestream */
+	private int blockSize = 0;
+	
+	/** The number of threads used to encode and decode the blocks of a blocked .huf container */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/** If true, .huf files are encoded in a single pass with an adaptive huffman code */
+	private boolean adaptive = false;
+	
+	/** The maximum length of the canonical codes; 0 for no limit */
+	private int maxCodeLength = 0;
+	
+	/** If true, .huf files are encoded with a built-in model instead of the file's own weights */
+	private boolean pretrained = false;
+	
+	/** The codebook of the last encode or decode */
+	private HuffCodebook codebook;
+	
+	/** The cache of built codebooks; null to rebuild the codebook every time */
+	private HuffCodebookCache codebookCache = new HuffCodebookCache();
+	
+	/** The listener for the progress of each encode and decode; null for none */
+	private HuffProgressListener progressListener;
+	
+	/** Checked while encoding or decoding; the engine stops when it returns true. Null if the engine can't be cancelled */
+	private BooleanSupplier cancelCheck;
+	
+	/** The result of the encode or decode in progress, which collects the time of each phase */
+	private HuffCompressionResult result;
+	
+	/** The metrics each encode and decode is recorded in; null for none */
+	private HuffEngineMetrics metrics = HuffEngineMetrics.getInstance();
 
 	/**
 	 * Instantiates a new EncodeDecode instance
@@ -47,6 +97,141 @@ public class EncodeDecode {
 		binUtil = new BinaryIO();
 	}
 	
+	/**
+	 * Selects canonical huffman codes. Canonical codes are derived from the code lengths of
+	 * the tree, so the encoder only needs the code values and lengths. Files encoded in 
+	 * canonical mode MUST be decoded in canonical mode.
+	 *
+	 * @param canonical true to use canonical codes, false to use the tree codes
+	 */
+	void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+	
+	/**
+	 * Selects the blocked .huf container (MODE_BLOCKED). The input is split into blocks of 
+	 * blockSize characters which are encoded in parallel with a shared codebook - see 
+	 * ParallelBlockEncoder. Only applies when encoding to a .huf file.
+	 *
+	 * @param blockSize the number of characters in each block; 0 to disable blocking
+	 * @param parallelism the number of threads used to encode and decode the blocks
+	 */
+	void setBlocked(int blockSize, int parallelism) {
+		this.blockSize = blockSize;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Selects the single pass adaptive .huf container (MODE_ADAPTIVE). The input is read 
+	 * only once, and no weights are generated or read - see AdaptiveHuffmanOutputStream.
+	 * Only applies when encoding to a .huf file.
+	 *
+	 * @param adaptive true to encode with an adaptive huffman code
+	 */
+	void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+	
+	/**
+	 * Limits the length of the canonical codes (for canonical mode and the .huf container).
+	 * Codes of at most HuffmanDecodeTable.TABLE_BITS bits are decoded with a single
+	 * table lookup. The optimal limited codes are found with the package-merge algorithm; 
+	 * the small loss in compression is reported on the console. Files encoded in canonical
+	 * mode with a limit MUST be decoded with the same limit.
+	 *
+	 * @param maxCodeLength the maximum code length (1 to 32); 0 for no limit
+	 */
+	void setMaxCodeLength(int maxCodeLength) {
+		this.maxCodeLength = maxCodeLength;
+	}
+	
+	/**
+	 * Selects the built-in models for the .huf container (MODE_MODEL). The model is picked 
+	 * from the start of the input file, so there is no weights pass and no weights file, 
+	 * and the header stores only the model ID - see HuffModelLibrary. Only applies when 
+	 * encoding to a .huf file; adaptive mode takes precedence.
+	 *
+	 * @param pretrained true to encode with a built-in model
+	 */
+	void setPretrained(boolean pretrained) {
+		this.pretrained = pretrained;
+	}
+	
+	/**
+	 * Sets the cache of built codebooks. A cache can be shared by several EncodeDecode
+	 * instances (for example, the workers of a batch).
+	 *
+	 * @param codebookCache the codebook cache; null to rebuild the codebook every time
+	 */
+	void setCodebookCache(HuffCodebookCache codebookCache) {
+		this.codebookCache = codebookCache;
+	}
+	
+	/**
+	 * Sets the listener for the progress of each encode and decode. The progress is the 
+	 * number of bytes read from the input file (the text file for an encode, the binary 
+	 * file for a decode). Blocked encodes and decodes don't report any progress.
+	 *
+	 * @param progressListener the listener; null for none
+	 */
+	void setProgressListener(HuffProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+	
+	/**
+	 * Sets the check that cancels the engine. It is called each time a chunk of the input 
+	 * file is read; once it returns true, the encode or decode stops, the partial output
+	 * file is removed and no alert is raised. Blocked encodes and decodes can't be cancelled.
+	 *
+	 * @param cancelCheck returns true to cancel the engine; null if the engine can't be cancelled
+	 */
+	void setCancelCheck(BooleanSupplier cancelCheck) {
+		this.cancelCheck = cancelCheck;
+	}
+	
+	/**
+	 * Checks if the engine was cancelled.
+	 *
+	 * @return true, if the cancel check returns true
+	 */
+	boolean isCancelled() {
+		return cancelCheck != null && cancelCheck.getAsBoolean();
+	}
+	
+	/**
+	 * Opens a buffered input stream on a file that reports its progress to the progress 
+	 * listener and stops the engine when it is cancelled - see HuffProgressInputStream.
+	 *
+	 * @param file the file
+	 * @return the buffered input stream - returns null if an error occured
+	 */
+	private BufferedInputStream openProgressInputStream(File file) {
+		FileInputStream fis = fio.openFileInputStream(file);
+		if (fis == null) {
+			return null;
+		}
+		return new BufferedInputStream(new HuffProgressInputStream(fis, file.length(), progressListener, this::isCancelled));
+	}
+	
+	/**
+	 * Sets the metrics each encode and decode is recorded in. By default, this is the
+	 * shared instance registered with the platform MBean server - see HuffEngineMetrics.
+	 *
+	 * @param metrics the metrics; null to record nothing
+	 */
+	void setMetrics(HuffEngineMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Gets the cache of built codebooks.
+	 *
+	 * @return the codebook cache; null if there is none
+	 */
+	HuffCodebookCache getCodebookCache() {
+		return codebookCache;
+	}
+	
 	/**
 	 * Encode. This function will do the following actions:
 	 *         1) Error check the inputs
@@ -58,27 +243,369 @@ public class EncodeDecode {
 	 *         
 	 *         2) set the weights in huffUtils
 	 *         3) build the Huffman tree using huffUtils;
-	 *         4) create the Huffman codes by traversing the trees.
+	 *         4) create the Huffman codes by traversing the trees (and the canonical codes,
+	 *            if canonical mode is selected).
 	 *         5) call executeEncode to perform the conversion.
 	 *
+	 * If bfName ends with ".huf", the self-describing container format is written instead
+	 * of the headerless format - see encodeContainer().
+	 * Each phase is timed, and returned with the sizes of the files in a HuffCompressionResult.
+	 *
 	 * @param fName 	the name of the input file to be encoded
 	 * @param bfName 	the name of the binary (compressed) file to be created
 	 * @param freqWts 	the name of the file to read for the frequency weights. If blank, or other error,
 	 *                  generate the frequency weights from fName.
 	 * @param optimize 	if true, ONLY add leaf nodes with non-zero weights to the priority queue
+	 * @return the sizes, ratio and phase times of the encode
+	 */
+	HuffCompressionResult encode(String fName,String bfName, String freqWts, boolean optimize) {
+		long start = System.nanoTime();
+		result = new HuffCompressionResult(true, fio.getFileHandle(fName), fio.getFileHandle(bfName));
+		jobStarted();
+		try {
+			encodeFile(fName, bfName, freqWts, optimize);
+		} catch (RuntimeException e) {
+			recordError(e.toString());
+			throw e;
+		} finally {
+			jobFinished(start);
+		}
+		return result;
+	}
+	
+	/**
+	 * Encodes the file - see encode().
+	 *
+	 * @param fName 	the name of the input file to be encoded
+	 * @param bfName 	the name of the binary (compressed) file to be created
+	 * @param freqWts 	the name of the file to read for the frequency weights
+	 * @param optimize 	if true, ONLY add leaf nodes with non-zero weights to the priority queue
 	 */
-	void encode(String fName,String bfName, String freqWts, boolean optimize) {
-		errorCheckFile(fName);
+	private void encodeFile(String fName,String bfName, String freqWts, boolean optimize) {
+		if (!checkReadable(fName)) {
+			return;
+		}
 		errorCheckFile(bfName);
+		if (bfName.endsWith(HuffFileHeader.HUF_EXT)) {
+			encodeContainer(fName, bfName, freqWts);
+			return;
+		}
 		if (fio.getFileStatus(fio.getFileHandle(freqWts), true) == fio.FILE_DOES_NOT_EXIST) {
 			fio.createEmptyFile(bfName);
+			long start = System.nanoTime();
 			gw.generateWeights(freqWts);
+			endPhase(HuffCompressionResult.WEIGHTS, start);
 		}
 		
-		weights = huffUtil.readFreqWeights(fio.getFileHandle(freqWts));
+		if (!loadCodebook(fio.getFileHandle(freqWts), optimize, canonical)) {
+			return;
+		}
+		long start = System.nanoTime();
+		executeEncode(fio.getFileHandle(fName), fio.getFileHandle(bfName));
+		endPhase(HuffCompressionResult.ENCODE, start);
+	}
+	
+	/**
+	 * Records the start of an encode or decode in the metrics.
+	 */
+	private void jobStarted() {
+		if (metrics != null) {
+			metrics.jobStarted();
+		}
+	}
+	
+	/**
+	 * Completes the result of an encode or decode, and records it in the metrics. An
+	 * encode or decode that was cancelled before it wrote its output file is an error.
+	 *
+	 * @param start the start of the encode or decode, from System.nanoTime()
+	 */
+	private void jobFinished(long start) {
+		result.finish(System.nanoTime() - start);
+		if (isCancelled() && !result.hasOutput()) {
+			result.addError("Cancelled");
+		}
+		if (metrics != null) {
+			metrics.jobFinished(result);
+		}
+	}
+	
+	/**
+	 * Raises an alert for an error that stops the encode or decode, and records it in 
+	 * the result.
+	 *
+	 * @param message the error message
+	 */
+	private void error(String message) {
+		hca.issueAlert(HuffAlerts.INPUT, "WARNING: ", message);
+		recordError(message);
+	}
+	
+	/**
+	 * Records an error that stops the encode or decode in the result, without an alert.
+	 *
+	 * @param message the error message
+	 */
+	private void recordError(String message) {
+		if (result != null) {
+			result.addError(message);
+		}
+	}
+	
+	/**
+	 * Error checks a file the engine reads. The alert for an empty file is raised (see 
+	 * errorCheckFile()), but an empty file is a valid input, so only a file that does not
+	 * exist or can't be read is an error.
+	 *
+	 * @param fileName the name of the file
+	 * @return true, if the file can be read
+	 */
+	private boolean checkReadable(String fileName) {
+		if (errorCheckFile(fileName)) {
+			return true;
+		}
+		File file = fio.getFileHandle(fileName);
+		if (file != null && file.isFile() && file.canRead()) {
+			return true;
+		}
+		recordError(((file != null) ? file.getName() : "")+": this file does not exist or is not readable.");
+		return false;
+	}
+	
+	/**
+	 * Gets the input file of the encode or decode in progress, for the JFR events.
+	 *
+	 * @return the input file; null if there is none
+	 */
+	private File currentInput() {
+		return (result != null) ? result.getInput() : null;
+	}
+	
+	/**
+	 * Adds the time since start to a phase of the result.
+	 *
+	 * @param phase the phase - see HuffCompressionResult
+	 * @param start the start of the phase, from System.nanoTime()
+	 * @return the end of the phase, to start the next one
+	 */
+	private long endPhase(String phase, long start) {
+		long end = System.nanoTime();
+		if (result != null) {
+			result.addPhase(phase, end - start);
+		}
+		return end;
+	}
+	
+	/**
+	 * Encode to the self-describing .huf container. The weights are read from freqWts if 
+	 * it exists; otherwise they are generated directly from fName (no weights file is written).
+	 * The container is byte oriented: the input is read through an InputStream and all 256
+	 * byte values can be encoded, so binary files and UTF-8 text are supported.
+	 * Only characters with non-zero weights get a code, and the canonical code lengths are 
+	 * stored in the header, so the .huf file can be decoded without the weights file.
+	 * If adaptive mode or the built-in models are selected, the weights are not needed at 
+	 * all. If GenWeights is in sampling mode, the generated weights are estimated from samples of fName, and the 
+	 * estimated penalty is reported on the console.
+	 *
+	 * @param fName 	the name of the input file to be encoded
+	 * @param bfName 	the name of the .huf file to be created
+	 * @param freqWts 	the name of the weights file; may be blank
+	 */
+	private void encodeContainer(String fName, String bfName, String freqWts) {
+		long start = System.nanoTime();
+		if (adaptive) {
+			executeAdaptiveEncode(fio.getFileHandle(fName), fio.getFileHandle(bfName));
+			endPhase(HuffCompressionResult.ENCODE, start);
+			return;
+		}
+		if (pretrained) {
+			executeModelEncode(fio.getFileHandle(fName), fio.getFileHandle(bfName));
+			return;
+		}
+		File wtsFile = fio.getFileHandle(freqWts);
+		if (wtsFile != null && fio.getFileStatus(wtsFile, true) == MyFileIO.FILE_OK) {
+			if (!loadCodebook(wtsFile, true, true)) {
+				return;
+			}
+		} else {
+			gw.generateByteWeights(fName);
+			weights = gw.getWeights().clone();
+			if (gw.isSampled()) {
+				System.out.printf("Sampled weights: an estimated %.4f%% larger than the exact weights%n", 
+						          gw.getSamplePenalty());
+			}
+			start = endPhase(HuffCompressionResult.WEIGHTS, start);
+			HuffEngineEvents.TreeBuildEvent treeEvent = new HuffEngineEvents.TreeBuildEvent();
+			treeEvent.begin();
+			huffUtil = new HuffmanCompressionUtilities();
+			huffUtil.setWeights(weights);
+			huffUtil.buildHuffmanTree(true);
+			HuffEngineEvents.commitTree(treeEvent, currentInput(), huffUtil);
+			start = endPhase(HuffCompressionResult.TREE, start);
+			HuffEngineEvents.CodeGenerationEvent codesEvent = new HuffEngineEvents.CodeGenerationEvent();
+			codesEvent.begin();
+			if (!createCodebook(true)) {
+				return;
+			}
+			codebook = new HuffCodebook(huffUtil, weights);
+			HuffEngineEvents.commitCodes(codesEvent, currentInput(), huffUtil);
+			endPhase(HuffCompressionResult.CODES, start);
+		}
+		start = System.nanoTime();
+		if (blockSize > 0) {
+			executeBlockedEncode(fio.getFileHandle(fName), fio.getFileHandle(bfName));
+		} else {
+			File inFile = fio.getFileHandle(fName);
+			executeContainerEncode(inFile, fio.getFileHandle(bfName), 
+					new HuffFileHeader(HuffFileHeader.MODE_STATIC, inFile.length(), huffUtil.getCodeLengths()));
+		}
+		endPhase(HuffCompressionResult.ENCODE, start);
+	}
+	
+	/**
+	 * Builds the codebook for a weights file: reads the weights, builds the tree and the 
+	 * tree codes and, if useCanonical is set, the canonical codes. If the codebook cache
+	 * already holds the codebook for this weights file and these options, it is reused 
+	 * and nothing is rebuilt. Each codebook gets its own HuffmanCompressionUtilities, as a
+	 * cached codebook MUST NOT be modified.
+	 *
+	 * @param wtsFile the weights file
+	 * @param optimize - exclude 0-weight characters from the codes
+	 * @param useCanonical true to create the canonical codes
+	 * @return true, if successful
+	 */
+	private boolean loadCodebook(File wtsFile, boolean optimize, boolean useCanonical) {
+		String key = null;
+		if (codebookCache != null) {
+			try {
+				key = HuffCodebookCache.weightsKey(wtsFile, optimize+","+useCanonical+","+maxCodeLength);
+			} catch (IOException e) {
+				// not cached - readWeights reports the problem with the file
+			}
+			HuffCodebook cached = (key != null) ? codebookCache.get(key) : null;
+			if (cached != null) {
+				codebook = cached;
+				huffUtil = cached.getHuffUtil();
+				weights = cached.getWeights();
+				if (result != null) {
+					result.setCodebookCached();
+				}
+				return true;
+			}
+		}
+		long start = System.nanoTime();
+		huffUtil = new HuffmanCompressionUtilities();
+		if (!readWeights(wtsFile)) {
+			return false;
+		}
+		start = endPhase(HuffCompressionResult.READ_WEIGHTS, start);
+		HuffEngineEvents.TreeBuildEvent treeEvent = new HuffEngineEvents.TreeBuildEvent();
+		treeEvent.begin();
 		huffUtil.buildHuffmanTree(optimize);
+		HuffEngineEvents.commitTree(treeEvent, currentInput(), huffUtil);
+		start = endPhase(HuffCompressionResult.TREE, start);
+		HuffEngineEvents.CodeGenerationEvent codesEvent = new HuffEngineEvents.CodeGenerationEvent();
+		codesEvent.begin();
 		huffUtil.createHuffmanCodes(huffUtil.getTreeRoot(), "", 0);
-		executeEncode(fio.getFileHandle(fName), fio.getFileHandle(bfName));
+		if (useCanonical && !createCodebook(optimize)) {
+			return false;
+		}
+		codebook = new HuffCodebook(huffUtil, weights);
+		HuffEngineEvents.commitCodes(codesEvent, currentInput(), huffUtil);
+		endPhase(HuffCompressionResult.CODES, start);
+		if (key != null) {
+			codebookCache.put(key, codebook);
+		}
+		return true;
+	}
+	
+	/**
+	 * Builds the codebook for the canonical code lengths in a .huf header, or reuses it
+	 * from the codebook cache.
+	 *
+	 * @param codeLengths the code lengths
+	 * @return true, if successful; false if the code lengths are not valid
+	 */
+	private boolean loadCodebook(byte[] codeLengths) {
+		String key = (codebookCache != null) ? HuffCodebookCache.lengthsKey(codeLengths) : null;
+		HuffCodebook cached = (key != null) ? codebookCache.get(key) : null;
+		if (cached != null) {
+			codebook = cached;
+			huffUtil = cached.getHuffUtil();
+			if (result != null) {
+				result.setCodebookCached();
+			}
+			return true;
+		}
+		long start = System.nanoTime();
+		HuffEngineEvents.CodeGenerationEvent codesEvent = new HuffEngineEvents.CodeGenerationEvent();
+		codesEvent.begin();
+		huffUtil = new HuffmanCompressionUtilities();
+		if (!huffUtil.setCodeLengths(codeLengths)) {
+			return false;
+		}
+		codebook = new HuffCodebook(huffUtil, null);
+		HuffEngineEvents.commitCodes(codesEvent, currentInput(), huffUtil);
+		endPhase(HuffCompressionResult.CODES, start);
+		if (key != null) {
+			codebookCache.put(key, codebook);
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads the weights file (CSV, or binary - see HuffWeightsFile) into huffUtil. 
+	 * Raises an alert if a binary weights file is corrupt.
+	 *
+	 * @param wtsFile the weights file
+	 * @return true, if successful
+	 */
+	private boolean readWeights(File wtsFile) {
+		weights = huffUtil.readFreqWeights(wtsFile);
+		if (weights == null) {
+			error("The weights file is corrupt - regenerate it.");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates the canonical codes from the current tree. If a maximum code length is set,
+	 * the codes are length limited and the increase in the encoded size is reported.
+	 * Raises an alert if the codes cannot be created.
+	 *
+	 * @param optimize - exclude 0-weight characters from the codes
+	 * @return true, if successful
+	 */
+	private boolean createCodebook(boolean optimize) {
+		if (maxCodeLength > 0) {
+			if (!huffUtil.createLengthLimitedCodes(maxCodeLength, optimize)) {
+				error("There are too many characters for "+
+						maxCodeLength+" bit codes.");
+				return false;
+			}
+			if (huffUtil.getLengthLimitLoss() > 0) {
+				System.out.printf("Codes limited to %d bits: %.4f%% larger than the unlimited codes%n", 
+						          maxCodeLength, huffUtil.getLengthLimitLoss());
+			}
+			return true;
+		}
+		if (!huffUtil.createCanonicalCodes()) {
+			error("Canonical codes are limited to "+
+					HuffmanCompressionUtilities.MAX_CANONICAL_BITS+" bits - try optimize or a maximum code length.");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the percentage increase in the encoded size caused by the maximum code length,
+	 * for the last encode or decode.
+	 *
+	 * @return the length limit loss, in percent; 0 if the codes were not limited
+	 */
+	double getLengthLimitLoss() {
+		return (maxCodeLength > 0) ? huffUtil.getLengthLimitLoss() : 0;
 	}
 	
 	boolean errorCheckFile(String fileName) {
@@ -103,46 +630,242 @@ public class EncodeDecode {
 	 * Execute encode. This function will write compressed binary file as part of part 3
 	 * 
 	 * This functions should:
-	 * 1) get the encodeMap from HuffUtils 
-	 * 2) initialize binStr to ""
-	 * 3) open a BufferedReader for the text file and a BufferedOutputStream for the binary file
-	 * 4) for each character in the textfile:
-	 * 	  - append the huffman code to binStr;
-	 *    - if binStr length >= 8, write the binStr to the binary file using binUtils.writeBinString();
-	 *      binStr should be set to any returned string value.
-	 * 5) when the input file is exhausted, write the EOF character, padding with 0's if needed 
-	 * 6) close the the input and output files...
+	 * 1) get the encodeMap from HuffUtils, and convert each code to its numeric value and length
+	 * 2) open a BufferedReader for the text file and a BufferedOutputStream for the binary file,
+	 *    and a BitWriter on the binary file
+	 * 3) for each block of characters in the textfile:
+	 * 	  - write the huffman code of each character to the BitWriter; whole bytes are
+	 *      written to the binary file as they are completed.
+	 * 4) when the input file is exhausted, write the EOF character, padding with 0's if needed 
+	 * 5) close the the input and output files...
+	 * The headerless format only has codes for the ASCII characters; if the input contains
+	 * any other character, the partial output file is removed and an alert is raised.
 	 *
 	 * @param inFile the File object that represents the file to be compressed
 	 * @param binFile the File object that represents the compressed output file
 	 */
 	private void executeEncode(File inFile, File binFile) {
 		encodeMap = huffUtil.getEncodeMap();
-		String binStr = "";
-		int counter;
-		BufferedReader bufferedReader = fio.openBufferedReader(inFile);
+		initCodes(canonical);
+		char[] chunk = new char[BUFFER_SIZE];
+		int numRead;
+		boolean ok = true;
+		FileInputStream fis = fio.openFileInputStream(inFile);
+		BufferedReader bufferedReader = (fis == null) ? null : new BufferedReader(new InputStreamReader(
+				new HuffProgressInputStream(fis, inFile.length(), progressListener, this::isCancelled)));
 		BufferedOutputStream bufferedOutputStream = fio.openBufferedOutputStream(binFile);
+		BitWriter bitWriter = binUtil.openBitWriter(bufferedOutputStream);
 		
 		try {
-			while ((counter = bufferedReader.read()) != -1) {
-				binStr += encodeMap[counter];
-					
-				if (binStr.length() > 8) {
-					binStr = binUtil.writeBinString(bufferedOutputStream, binStr);
+			while (ok && (numRead = bufferedReader.read(chunk)) != -1) {
+				for (int i = 0; i < numRead; i++) {
+					if (chunk[i] >= codeLengths.length) {
+						ok = false;
+						break;
+					}
+					writeCode(bitWriter, chunk[i]);
 				}
 			}
-			binStr += encodeMap[0];
-			while ((binStr.length() % 8) != 0) {
-				binStr += "0";
+			writeCode(bitWriter, 0);
+			bitWriter.flush();
+		} catch (IOException e) {
+			if (!isCancelled()) {
+				e.printStackTrace();
+				recordError(e.toString());
 			}
-			binStr = binUtil.writeBinString(bufferedOutputStream, binStr);
+		}
+		
+		fio.closeFile(bufferedReader);
+		fio.closeStream(bufferedOutputStream);
+		if (isCancelled()) {
+			fio.deleteFile(binFile.getPath());
+		} else if (!ok) {
+			fio.deleteFile(binFile.getPath());
+			error("The input contains a non-ASCII character - "+
+					"encode to a "+HuffFileHeader.HUF_EXT+" file for binary or UTF-8 data.");
+		}
+	}
+	
+	/**
+	 * Converts the encodeMap into the numeric code values and code lengths used by the
+	 * BitWriter. Characters without a code get a length of 0 (nothing is written).
+	 * For canonical codes, the values and lengths are taken directly from huffUtil.
+	 *
+	 * @param useCanonical true to use the canonical codes from huffUtil
+	 */
+	private void initCodes(boolean useCanonical) {
+		codes = new long[encodeMap.length];
+		codeLengths = new int[encodeMap.length];
+		if (useCanonical) {
+			int[] values = huffUtil.getCodeValues();
+			byte[] lengths = huffUtil.getCodeLengths();
+			for (int i = 0; i < lengths.length; i++) {
+				codes[i] = values[i] & 0xFFFFFFFFL;
+				codeLengths[i] = lengths[i];
+			}
+			return;
+		}
+		for (int i = 0; i < encodeMap.length; i++) {
+			if (encodeMap[i] != null) {
+				codeLengths[i] = encodeMap[i].length();
+				if (codeLengths[i] <= BitWriter.MAX_BITS) {
+					codes[i] = binUtil.convStrToCode(encodeMap[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes the huffman code for a single character. Codes longer than the BitWriter
+	 * register (only possible for 0-weight characters in a full tree) are written from
+	 * the encodeMap string.
+	 *
+	 * @param bitWriter the bit writer connected to the binary file
+	 * @param ord the ordinal value of the character to write
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeCode(BitWriter bitWriter, int ord) throws IOException {
+		if (codeLengths[ord] <= BitWriter.MAX_BITS) {
+			bitWriter.writeBits(codes[ord], codeLengths[ord]);
+		} else {
+			bitWriter.writeBinString(encodeMap[ord]);
+		}
+	}
+	
+	/**
+	 * Execute container encode. Writes the .huf header followed by the canonical codes
+	 * for every byte of the input file, padded with 0's to a byte boundary. There is no
+	 * EOF character - the header records the original length. If the input contains a
+	 * character without a code (the weights file does not match the input), or a read or
+	 * write fails, the partial output file is removed and the cause is reported.
+	 *
+	 * @param inFile the File object that represents the file to be compressed
+	 * @param binFile the File object that represents the .huf output file
+	 * @param header the .huf header (MODE_STATIC or MODE_MODEL) for the codes in huffUtil
+	 */
+	private void executeContainerEncode(File inFile, File binFile, HuffFileHeader header) {
+		int[] values = huffUtil.getCodeValues();
+		byte[] lengths = huffUtil.getCodeLengths();
+		byte[] chunk = new byte[BUFFER_SIZE];
+		int numRead;
+		boolean coded = true;
+		IOException ioError = null;
+		BufferedInputStream bufferedInputStream = openProgressInputStream(inFile);
+		BufferedOutputStream bufferedOutputStream = fio.openBufferedOutputStream(binFile);
+		
+		try {
+			header.write(bufferedOutputStream);
+			BitWriter bitWriter = binUtil.openBitWriter(bufferedOutputStream);
+			while (coded && (numRead = bufferedInputStream.read(chunk)) != -1) {
+				coded = (bitWriter.writeCodes(chunk, 0, numRead, values, lengths) == numRead);
+			}
+			bitWriter.flush();
+		} catch (IOException e) {
+			if (!isCancelled()) {
+				e.printStackTrace();
+			}
+			ioError = e;
+		}
+		
+		fio.closeStream(bufferedInputStream);
+		fio.closeStream(bufferedOutputStream);
+		if (!coded || ioError != null) {
+			fio.deleteFile(binFile.getPath());
+		}
+		if (isCancelled()) {
+			return;
+		}
+		if (ioError != null) {
+			error(ioError.getMessage());
+		} else if (!coded) {
+			error("The input contains a character with no code - "+
+					"check that the weights file matches the input file.");
+		}
+	}
+	
+	/**
+	 * Execute model encode. Picks the built-in model that best fits the first 
+	 * HuffModelLibrary.FINGERPRINT_SIZE bytes of the input file, and encodes the file with
+	 * its codebook in a MODE_MODEL container - see executeContainerEncode().
+	 *
+	 * @param inFile the File object that represents the file to be compressed
+	 * @param binFile the File object that represents the .huf output file
+	 */
+	private void executeModelEncode(File inFile, File binFile) {
+		byte[] fingerprint = new byte[HuffModelLibrary.FINGERPRINT_SIZE];
+		int numRead = 0;
+		BufferedInputStream bufferedInputStream = fio.openBufferedInputStream(inFile);
+		try {
+			numRead = bufferedInputStream.readNBytes(fingerprint, 0, fingerprint.length);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
+			recordError(e.toString());
+			fio.closeStream(bufferedInputStream);
+			return;
 		}
+		fio.closeStream(bufferedInputStream);
 		
-		fio.closeFile(bufferedReader);
+		int modelId = HuffModelLibrary.selectModel(fingerprint, numRead);
+		if (!loadCodebook(HuffModelLibrary.getCodeLengths(modelId))) {
+			recordError("The codebook of model "+modelId+" is not valid.");
+			return;
+		}
+		long start = System.nanoTime();
+		executeContainerEncode(inFile, binFile, new HuffFileHeader(inFile.length(), modelId));
+		endPhase(HuffCompressionResult.ENCODE, start);
+	}
+	
+	/**
+	 * Execute blocked encode. Encodes the input file to a blocked .huf container with a
+	 * ParallelBlockEncoder, using the canonical codes in huffUtil. If the encode fails 
+	 * (for example, the input contains a character with no code), the partial output file
+	 * is removed.
+	 *
+	 * @param inFile the File object that represents the file to be compressed
+	 * @param binFile the File object that represents the .huf output file
+	 */
+	private void executeBlockedEncode(File inFile, File binFile) {
+		ParallelBlockEncoder blockEncoder = new ParallelBlockEncoder(huffUtil.getCodeValues(), 
+				                                  huffUtil.getCodeLengths(), blockSize, 
+				                                  HuffWorkerPools.get(parallelism));
+		try {
+			blockEncoder.encode(inFile, binFile);
+		} catch (IOException e) {
+			fio.deleteFile(binFile.getPath());
+			error(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Execute adaptive encode. Copies the input file through an AdaptiveHuffmanOutputStream,
+	 * so the input is only read once. If the encode fails or is cancelled, the partial 
+	 * output file is removed.
+	 *
+	 * @param inFile the File object that represents the file to be compressed
+	 * @param binFile the File object that represents the .huf output file
+	 */
+	private void executeAdaptiveEncode(File inFile, File binFile) {
+		boolean ok = true;
+		BufferedInputStream bufferedInputStream = openProgressInputStream(inFile);
+		BufferedOutputStream bufferedOutputStream = fio.openBufferedOutputStream(binFile);
+		
+		try {
+			AdaptiveHuffmanOutputStream ahos = new AdaptiveHuffmanOutputStream(bufferedOutputStream);
+			copyStream(bufferedInputStream, ahos);
+			ahos.finish();
+		} catch (IOException e) {
+			if (!isCancelled()) {
+				e.printStackTrace();
+				recordError(e.toString());
+			}
+			ok = false;
+		}
+		
+		fio.closeStream(bufferedInputStream);
 		fio.closeStream(bufferedOutputStream);
+		if (!ok || isCancelled()) {
+			fio.deleteFile(binFile.getPath());
+		}
 	}
 	
 	// DO NOT CODE THIS METHOD UNTIL EXPLICITLY INSTRUCTED TO DO SO!!!
@@ -163,63 +886,230 @@ public class EncodeDecode {
 	 * @param ofName 	the name of the text file to write...
 	 * @param freqWts the freq wts
 	 * @param optimize - exclude 0-weight nodes from the tree
+	 * @return the sizes, ratio and phase times of the decode
 	 */
-	void decode(String bfName, String ofName, String freqWts,boolean optimize) {
-		errorCheckFile(bfName);
+	HuffCompressionResult decode(String bfName, String ofName, String freqWts,boolean optimize) {
+		return decode(bfName, ofName, freqWts, optimize, HuffDecoder.TABLE);
+	}
+	
+	/**
+	 * Decode, using the specified decode engine. The FSA engine has a higher setup cost
+	 * than the TABLE engine, but decodes a whole byte with each table lookup.
+	 * If the binary file is a .huf container, the codebook is rebuilt from the header
+	 * and the weights file is not used.
+	 *
+	 * @param bfName 	the name of the binary file to read
+	 * @param ofName 	the name of the text file to write...
+	 * @param freqWts the freq wts
+	 * @param optimize - exclude 0-weight nodes from the tree
+	 * @param decoder - the decode engine to use
+	 * @return the sizes, ratio and phase times of the decode
+	 */
+	HuffCompressionResult decode(String bfName, String ofName, String freqWts,boolean optimize, HuffDecoder decoder) {
+		long start = System.nanoTime();
+		result = new HuffCompressionResult(false, fio.getFileHandle(bfName), fio.getFileHandle(ofName));
+		jobStarted();
+		try {
+			decodeFile(bfName, ofName, freqWts, optimize, decoder);
+		} catch (RuntimeException e) {
+			recordError(e.toString());
+			throw e;
+		} finally {
+			jobFinished(start);
+		}
+		return result;
+	}
+	
+	/**
+	 * Decodes the file - see decode().
+	 *
+	 * @param bfName 	the name of the binary file to read
+	 * @param ofName 	the name of the text file to write...
+	 * @param freqWts the freq wts
+	 * @param optimize - exclude 0-weight nodes from the tree
+	 * @param decoder - the decode engine to use
+	 */
+	private void decodeFile(String bfName, String ofName, String freqWts,boolean optimize, HuffDecoder decoder) {
+		if (!checkReadable(bfName)) {
+			return;
+		}
 		errorCheckFile(ofName);
-		errorCheckFile(freqWts);
+		if (HuffFileHeader.isContainer(fio.getFileHandle(bfName))) {
+			decodeContainer(fio.getFileHandle(bfName), fio.getFileHandle(ofName), decoder);
+			return;
+		}
+		if (!checkReadable(freqWts)) {
+			return;
+		}
 		
-		weights = huffUtil.readFreqWeights(fio.getFileHandle(freqWts));
-		huffUtil.buildHuffmanTree(optimize);
-		huffUtil.createHuffmanCodes(huffUtil.getTreeRoot(), "", 0);
+		if (!loadCodebook(fio.getFileHandle(freqWts), optimize, canonical)) {
+			return;
+		}
+		long start = System.nanoTime();
 		try {
-			executeDecode(fio.getFileHandle(bfName), fio.getFileHandle(ofName));
+			executeDecode(fio.getFileHandle(bfName), fio.getFileHandle(ofName), decoder);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			if (isCancelled()) {
+				fio.deleteFile(ofName);
+			} else {
+				e.printStackTrace();
+				recordError(e.toString());
+			}
 		}
+		endPhase(HuffCompressionResult.DECODE, start);
 	}
 	
-	// DO NOT CODE THIS METHOD UNTIL EXPLICITLY INSTRUCTED TO DO SO!!!
 	/**
-	 * Execute decode.  - This is part of PART 5...
+	 * Execute decode.
 	 * This function performs the decode of the binary(compressed) file.
-	 * It will read each byte from the binary file and convert it to a string of 1's and 0's
-	 * This will be appended to any leftover bits from prior conversions.
-	 * Starting from the head of the string, decode occurs by traversing the Huffman Tree from the root
-	 * until a Leaf node is reached. If a leaf node is reached, the character is written to the output
-	 * file, and the corresponding # of bits is removed from the string. If the end of the bit string is reached
-	 * without reaching a leaf node, the next byte is processed, and so on until the encoded EOF
-	 * character is encountered. 
+	 * A HuffmanDecodeTable is built from the Huffman Tree, and a BitReader is opened on 
+	 * the binary file. Each lookup in the decode table peeks several bits at once and 
+	 * resolves the character and the length of its code with a single array access (longer
+	 * codes continue in a second-level table). Each decoded character is written to the 
+	 * output file until the encoded EOF character is encountered.
+	 * If the FSA decoder is selected, a HuffmanFSADecoder is built from the Huffman Tree
+	 * instead, and the binary file is decoded one byte per lookup.
 	 * After completely decoding the file, close the input file and
 	 * flushed and close the output file.
 	 *
 	 * @param binFile the file object for the binary input file
 	 * @param outFile the file object for the binary output file
+	 * @param decoder the decode engine to use
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	private void executeDecode(File binFile, File outFile) throws IOException {
-		encodeMap = huffUtil.getEncodeMap();
-		String binStr = "";
-		int counter;
-		BufferedInputStream bufferedInputStream =  fio.openBufferedInputStream(binFile);
+	private void executeDecode(File binFile, File outFile, HuffDecoder decoder) throws IOException {
+		BufferedInputStream bufferedInputStream =  openProgressInputStream(binFile);
 		BufferedOutputStream bufferedOutputStream = fio.openBufferedOutputStream(outFile);
 		
-		while ((counter = bufferedInputStream.read()) != -1) {
-			binStr += binUtil.convBinToStr(counter);
-			int decodeChar;
-			
-			while ((decodeChar = huffUtil.decodeString(binStr)) != -1) {
-				if (decodeChar == 0) {
-					fio.closeStream(bufferedOutputStream);
-					fio.closeStream(bufferedOutputStream);
-					return;
+		try {
+			if (decoder == HuffDecoder.FSA) {
+				HuffmanFSADecoder fsa = codebook.getFSADecoder();
+				fsa.decodeToEOF(bufferedInputStream, bufferedOutputStream, 0);
+			} else {
+				HuffmanDecodeTable decodeTable = codebook.getDecodeTable();
+				decodeTable.decodeToEOF(binUtil.openBitReader(bufferedInputStream), bufferedOutputStream, 0);
+			}
+		} finally {
+			fio.closeStream(bufferedInputStream);
+			fio.closeStream(bufferedOutputStream);
+		}
+	}
+	
+	/**
+	 * Decodes a .huf container: reads the header, rebuilds the canonical codebook from 
+	 * the code lengths and decodes exactly the original number of characters. Containers
+	 * encoded with a built-in model (MODE_MODEL) take the code lengths from the model.
+	 * Containers written by HuffmanOutputStream (MODE_STREAM) are decoded block by block
+	 * with a HuffmanInputStream, adaptive containers (MODE_ADAPTIVE) with an 
+	 * AdaptiveHuffmanInputStream, and blocked containers (MODE_BLOCKED) are decoded in 
+	 * parallel with the help of the block index - see decodeBlocks(). If the decode fails
+	 * (a corrupt header, or fewer characters than the original length), an alert is raised
+	 * and the partial output file is removed.
+	 *
+	 * @param binFile the file object for the .huf input file
+	 * @param outFile the file object for the decoded output file
+	 * @param decoder the decode engine to use
+	 */
+	private void decodeContainer(File binFile, File outFile, HuffDecoder decoder) {
+		long start = System.nanoTime();
+		BufferedInputStream bufferedInputStream =  openProgressInputStream(binFile);
+		BufferedOutputStream bufferedOutputStream = null;
+		boolean failed = false;
+		
+		try {
+			HuffFileHeader.readMagic(bufferedInputStream);
+			HuffFileHeader header = HuffFileHeader.read(bufferedInputStream);
+			if (header.getMode() == HuffFileHeader.MODE_BLOCKED) {
+				if (!loadCodebook(header.getCodeLengths())) {
+					throw new IOException("Unsupported or corrupt .huf header");
 				}
-				bufferedOutputStream.write(decodeChar);
-				binStr = binStr.substring(encodeMap[decodeChar].length());
+				start = System.nanoTime();
+				decodeBlocks(binFile, header, outFile, decoder);
+				return;
+			}
+			bufferedOutputStream = fio.openBufferedOutputStream(outFile);
+			if (header.getMode() == HuffFileHeader.MODE_STREAM) {
+				copyStream(new HuffmanInputStream(bufferedInputStream, true), bufferedOutputStream);
+				return;
+			}
+			if (header.getMode() == HuffFileHeader.MODE_ADAPTIVE) {
+				copyStream(new AdaptiveHuffmanInputStream(bufferedInputStream, true), bufferedOutputStream);
+				return;
+			}
+			byte[] codeLengths = (header.getMode() == HuffFileHeader.MODE_MODEL) ? 
+					HuffModelLibrary.getCodeLengths(header.getModelId()) : header.getCodeLengths();
+			if ((header.getMode() != HuffFileHeader.MODE_STATIC && header.getMode() != HuffFileHeader.MODE_MODEL) ||
+				codeLengths == null || !loadCodebook(codeLengths)) {
+				throw new IOException("Unsupported or corrupt .huf header");
+			}
+			start = System.nanoTime();
+			long decoded;
+			if (decoder == HuffDecoder.FSA) {
+				HuffmanFSADecoder fsa = codebook.getFSADecoder();
+				decoded = fsa.decodeCount(bufferedInputStream, bufferedOutputStream, header.getOriginalLength());
+			} else {
+				HuffmanDecodeTable decodeTable = codebook.getDecodeTable();
+				decoded = decodeTable.decodeCount(binUtil.openBitReader(bufferedInputStream), bufferedOutputStream, 
+						                          header.getOriginalLength());
+			}
+			if (decoded != header.getOriginalLength()) {
+				throw new IOException("Decoded "+decoded+" of "+header.getOriginalLength()+
+						              " bytes - the file is truncated or corrupt");
 			}
+		} catch (IOException e) {
+			failed = true;
+			if (!isCancelled()) {
+				error(binFile.getName()+": "+e.getMessage());
+			}
+		} finally {
+			fio.closeStream(bufferedInputStream);
+			if (bufferedOutputStream != null) {
+				fio.closeStream(bufferedOutputStream);
+			}
+			if (failed || isCancelled()) {
+				fio.deleteFile(outFile.getPath());
+			}
+			endPhase(HuffCompressionResult.DECODE, start);
+		}
+	}
+	
+	/**
+	 * Decodes a blocked .huf container with a ParallelBlockDecoder. The block index gives
+	 * the bit offset and original length of each block, so the blocks are decoded in 
+	 * parallel directly into their positions in the output file, with the codebook 
+	 * already loaded from the header. If the decode fails, the partial output file is removed.
+	 *
+	 * @param binFile the file object for the .huf input file
+	 * @param header the .huf header
+	 * @param outFile the file object for the decoded output file
+	 * @param decoder the decode engine to use
+	 * @throws IOException Signals that an I/O exception has occurred, or the file is corrupt
+	 */
+	private void decodeBlocks(File binFile, HuffFileHeader header, File outFile, HuffDecoder decoder) 
+			throws IOException {
+		HuffBlockIndex index = HuffBlockIndex.read(binFile, header);
+		ParallelBlockDecoder blockDecoder = new ParallelBlockDecoder(codebook, decoder, 
+				                                                     HuffWorkerPools.get(parallelism));
+		try {
+			blockDecoder.decode(binFile, header, index, outFile);
+		} catch (IOException e) {
+			fio.deleteFile(outFile.getPath());
+			throw e;
+		}
+	}
+	
+	/**
+	 * Copies all remaining bytes of the input stream to the output stream.
+	 *
+	 * @param in the input stream
+	 * @param out the output stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void copyStream(InputStream in, OutputStream out) throws IOException {
+		byte[] chunk = new byte[BUFFER_SIZE];
+		int numRead;
+		while ((numRead = in.read(chunk)) != -1) {
+			out.write(chunk, 0, numRead);
 		}
-		fio.closeStream(bufferedOutputStream);
-		fio.closeStream(bufferedOutputStream);
 	}
 }
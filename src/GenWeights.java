@@ -1,7 +1,17 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -15,6 +25,22 @@ public class GenWeights {
 	
 	/** Constant representing the number of ASCII characters. */
 	private final int NUM_ASCII = 128;
+	/** Constant representing the number of byte values - the alphabet of the .huf container. */
+	private final int NUM_BYTES = 256;
+	/** The number of bytes read from the input file at a time */
+	private final int BUFFER_SIZE = 8192;
+	/** The number of bytes read at a time by each parallel histogram task */
+	private final int RANGE_BUFFER_SIZE = 1 << 16;
+	/** The smallest byte range counted by one parallel histogram task */
+	private final int MIN_RANGE_SIZE = 1 << 20;
+	/** The largest byte range counted into int sub-histograms before they are added to the long counts */
+	private final long MAX_RANGE_SIZE = 1L << 30;
+	/** The largest total weight: the tree sums the weights in an int, with room for the EOF character and the counts scaled up to 1 */
+	private final long MAX_TOTAL_WEIGHT = Integer.MAX_VALUE - 2 * NUM_BYTES;
+	/** The number of bytes in each chunk read by the sampling mode */
+	private final int SAMPLE_SIZE = 1 << 16;
+	/** The weight given to a byte value that does not appear in the samples of one half */
+	private final int SAMPLE_FLOOR = 1;
 	/** Constant representing the start of the printable range of ASCII characters */
     private final int ASCII_PRINT_MIN = 32;    
 	/** Constant representing the start of the printable range of ASCII characters */
@@ -31,6 +57,18 @@ public class GenWeights {
     /** The ignore chr 13. */
     private boolean ignoreChr13 = false;
     
+    /** The number of threads used to count the input file; 1 reads the file sequentially */
+    private int parallelism = 1;
+    
+    /** The number of evenly spaced chunks read by the sampling mode; 0 reads the whole file */
+    private int numSamples = 0;
+    
+    /** True if the last byte weights were estimated from samples */
+    private boolean sampled = false;
+    
+    /** The estimated size penalty of the last sampled weights, in percent */
+    private double samplePenalty = 0;
+    
     /** Instance of the HuffCompAlerts - used as an intermediary between this 
      *  class and the GUI
      */
@@ -57,6 +95,56 @@ public class GenWeights {
 		}
 	}
 
+	/**
+	 * Selects the parallel histogram mode. The input file is split into byte ranges which 
+	 * are counted by separate threads and then merged - see countBytes().
+	 *
+	 * @param parallelism the number of threads; 1 reads the file sequentially
+	 */
+	void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Selects the sampling mode for the byte weights (generateByteWeights). Instead of 
+	 * reading the whole file, numSamples chunks of SAMPLE_SIZE bytes, evenly spaced over
+	 * the file, are counted - see sampleBytes(). Files no larger than the samples are 
+	 * still read in full.
+	 *
+	 * @param numSamples the number of chunks to read (at least 2); 0 reads the whole file
+	 */
+	void setSampling(int numSamples) {
+		this.numSamples = (numSamples > 0) ? Math.max(2, numSamples) : 0;
+	}
+	
+	/**
+	 * Checks whether the last byte weights were estimated from samples.
+	 *
+	 * @return true, if the weights were sampled
+	 */
+	boolean isSampled() {
+		return sampled;
+	}
+	
+	/**
+	 * Gets the estimated increase in the encoded size caused by sampling the last byte 
+	 * weights, compared to the weights of the whole file - see estimatePenalty().
+	 *
+	 * @return the sample penalty, in percent; 0 if the weights were not sampled
+	 */
+	double getSamplePenalty() {
+		return sampled ? samplePenalty : 0;
+	}
+
+	/**
+	 * Gets the weights array generated by the last call to generateWeights.
+	 *
+	 * @return the weights
+	 */
+	int[] getWeights() {
+		return weights;
+	}
+
 	/**
 	 * Generate character-based frequency weights. You will write this method,
 	 * using the MyFileIO fio instance to create the File object, check, open 
@@ -86,17 +174,131 @@ public class GenWeights {
 	 * Once the input file has been fully processed, you should print the weights to the console.
 	 *
 	 * @param infName - the name of the text file to read
+	 * @return true, if the file passed the checks and the weights were generated
+	 */
+	boolean generateWeights(String infName) {
+		HuffEngineEvents.WeightsEvent event = new HuffEngineEvents.WeightsEvent();
+		event.begin();
+		if (!countWeights(infName)) {
+			return false;
+		}
+		HuffEngineEvents.commitWeights(event, inf, weights);
+		return true;
+	}
+	
+	/**
+	 * Counts the character-based frequency weights - see generateWeights().
+	 *
+	 * @param infName - the name of the text file to read
+	 * @return true, if the file passed the checks and was read
 	 */
-	void generateWeights(String infName) {
+	private boolean countWeights(String infName) {
 		inf = fio.getFileHandle(infName);
 		
 		if (!errorCheckGenerateFile(inf)) {
-			return;
+			return false;
+		}
+		if (weights.length != NUM_ASCII) {
+			weights = new int[NUM_ASCII];
 		}
 		initWeights();
+		if (parallelism > 1 && readInputFileParallel(inf)) {
+			return true;
+		}
 		readInputFile(inf);
 		
-		return;
+		return true;
+	}
+	
+	/**
+	 * Generate byte-based frequency weights for the .huf container. Unlike generateWeights,
+	 * the file is read as raw bytes through an InputStream (no charset decoding), all 256 
+	 * byte values are counted and no EOF character is added - the container records the 
+	 * original length instead. The file is checked in the same way as generateWeights.
+	 *
+	 * @param infName - the name of the file to read
+	 * @return true, if the file passed the checks and the weights were generated
+	 */
+	boolean generateByteWeights(String infName) {
+		HuffEngineEvents.WeightsEvent event = new HuffEngineEvents.WeightsEvent();
+		event.begin();
+		if (!countByteWeights(infName)) {
+			return false;
+		}
+		HuffEngineEvents.commitWeights(event, inf, weights);
+		return true;
+	}
+	
+	/**
+	 * Counts the byte-based frequency weights - see generateByteWeights().
+	 *
+	 * @param infName - the name of the file to read
+	 * @return true, if the file passed the checks
+	 */
+	private boolean countByteWeights(String infName) {
+		inf = fio.getFileHandle(infName);
+		
+		if (!errorCheckGenerateFile(inf)) {
+			return false;
+		}
+		weights = new int[NUM_BYTES];
+		sampled = false;
+		if (numSamples > 0 && inf.length() > (long) numSamples * SAMPLE_SIZE) {
+			try {
+				weights = sampleBytes(inf);
+				sampled = true;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return true;
+		}
+		if (parallelism > 1) {
+			try {
+				weights = countBytes(inf);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return true;
+		}
+		BufferedInputStream bufferedInputStream = fio.openBufferedInputStream(inf);
+		try {
+			readInputStream(bufferedInputStream);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		fio.closeStream(bufferedInputStream);
+		return true;
+	}
+	
+	/**
+	 * Adds the count of each byte value in the stream to the weights. The weights array 
+	 * MUST have NUM_BYTES entries. The counts are added up in longs, and scaled down if
+	 * they are too large for the tree - see scaleCounts().
+	 *
+	 * @param in the stream to read, up to its end
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void readInputStream(InputStream in) throws IOException {
+		HuffKernels kernels = HuffKernels.get();
+		byte[] chunk = new byte[BUFFER_SIZE];
+		int[] sub = new int[kernels.getNumSubHistograms() * NUM_BYTES];
+		long[] counts = new long[NUM_BYTES];
+		long pending = 0;
+		int numRead;
+		for (int i = 0; i < NUM_BYTES; i++) {
+			counts[i] = weights[i];
+		}
+		while ((numRead = in.readNBytes(chunk, 0, chunk.length)) > 0) {
+			kernels.countChunk(chunk, numRead, sub);
+			pending += numRead;
+			if (pending >= MAX_RANGE_SIZE) {
+				mergeSubHistograms(kernels, sub, counts);
+				Arrays.fill(sub, 0);
+				pending = 0;
+			}
+		}
+		mergeSubHistograms(kernels, sub, counts);
+		weights = scaleCounts(counts);
 	}
 	
 	/**
@@ -121,6 +323,239 @@ public class GenWeights {
 		fio.closeFile(bufferedReader);
 	}
 	
+	/**
+	 * Generates the character weights with the parallel histogram. readInputFile() decodes
+	 * characters and stops at character 127; for a file containing only the characters 
+	 * 0 to 126 that is exactly a count of the bytes, plus the EOF character. 
+	 * 
+	 * @param file the file to read
+	 * @return true, if the weights were generated; false if the file contains other 
+	 *         characters, and must be read with readInputFile()
+	 */
+	private boolean readInputFileParallel(File file) {
+		int[] counts;
+		try {
+			counts = countBytes(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		for (int i = NUM_ASCII - 1; i < NUM_BYTES; i++) {
+			if (counts[i] != 0) {
+				return false;
+			}
+		}
+		System.arraycopy(counts, 0, weights, 0, NUM_ASCII);
+		weights[0]++;
+		return true;
+	}
+	
+	/**
+	 * Counts each byte value in the file, in parallel. The file is split into byte ranges
+	 * (at least MIN_RANGE_SIZE bytes, several per thread to balance the load, and at most
+	 * MAX_RANGE_SIZE bytes), and each range is counted on the shared pool (see 
+	 * HuffWorkerPools) into its own local histogram with FileChannel positional reads. 
+	 * The local histograms are then added up in longs, and scaled down if they are too 
+	 * large for the tree - see scaleCounts().
+	 *
+	 * @param file the file to read
+	 * @return the count of each byte value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	int[] countBytes(File file) throws IOException {
+		long[] counts = new long[NUM_BYTES];
+		ForkJoinPool pool = HuffWorkerPools.get(parallelism);
+		ArrayList<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			long numRanges = Math.max(1, Math.min(4L * parallelism, length / MIN_RANGE_SIZE));
+			numRanges = Math.max(numRanges, (length + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+			long rangeSize = (length + numRanges - 1) / numRanges;
+			for (long start = 0; start < length; start += rangeSize) {
+				final long from = start;
+				final long to = Math.min(length, start + rangeSize);
+				tasks.add(pool.submit(() -> countRange(channel, from, to)));
+			}
+			for (ForkJoinTask<int[]> task : tasks) {
+				int[] local = task.get();
+				for (int i = 0; i < NUM_BYTES; i++) {
+					counts[i] += local[i];
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			for (ForkJoinTask<int[]> task : tasks) {
+				task.cancel(true);
+			}
+		}
+		return scaleCounts(counts);
+	}
+	
+	/**
+	 * Converts counts to weights for the tree. The weights of the tree (and of every 
+	 * node, up to the root) are ints, so if the counts add up to more than 
+	 * MAX_TOTAL_WEIGHT, they are all divided by the same factor. A character that 
+	 * appears keeps a weight of at least 1, so it still gets a code. Counts that fit are
+	 * returned unchanged.
+	 *
+	 * @param counts the count of each byte value
+	 * @return the weights
+	 */
+	int[] scaleCounts(long[] counts) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		long divisor = Math.max(1, (total + MAX_TOTAL_WEIGHT - 1) / MAX_TOTAL_WEIGHT);
+		int[] scaled = new int[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			scaled[i] = (counts[i] == 0) ? 0 : (int) Math.max(1, counts[i] / divisor);
+		}
+		return scaled;
+	}
+	
+	/**
+	 * Estimates the count of each byte value from numSamples chunks of SAMPLE_SIZE bytes,
+	 * evenly spaced from the start to the end of the file. The even and odd numbered 
+	 * chunks are counted into separate halves; each half gives every byte value at least 
+	 * SAMPLE_FLOOR, so a byte that is missed by the samples still gets a (long) code. The
+	 * weights are the sum of the two halves, and the halves are used to estimate the 
+	 * sample penalty.
+	 *
+	 * @param file the file to read
+	 * @return the estimated count of each byte value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private int[] sampleBytes(File file) throws IOException {
+		HuffKernels kernels = HuffKernels.get();
+		int[][] sub = new int[2][kernels.getNumSubHistograms() * NUM_BYTES];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			ByteBuffer buf = ByteBuffer.allocate(SAMPLE_SIZE);
+			for (int k = 0; k < numSamples; k++) {
+				long pos = k * (length - SAMPLE_SIZE) / (numSamples - 1);
+				buf.clear();
+				int numRead;
+				do {
+					numRead = channel.read(buf, pos + buf.position());
+				} while (numRead > 0 && buf.hasRemaining());
+				kernels.countChunk(buf.array(), buf.position(), sub[k % 2]);
+			}
+		}
+		int[] even = new int[NUM_BYTES];
+		int[] odd = new int[NUM_BYTES];
+		mergeSubHistograms(kernels, sub[0], even);
+		mergeSubHistograms(kernels, sub[1], odd);
+		int[] counts = new int[NUM_BYTES];
+		for (int i = 0; i < NUM_BYTES; i++) {
+			even[i] = Math.max(SAMPLE_FLOOR, even[i]);
+			odd[i] = Math.max(SAMPLE_FLOOR, odd[i]);
+			counts[i] = even[i] + odd[i];
+		}
+		samplePenalty = estimatePenalty(even, odd);
+		return counts;
+	}
+	
+	/**
+	 * Estimates the size penalty of sampled weights by cross validation: the codes built 
+	 * from each half of the samples are applied to the other half, and compared with the 
+	 * codes built from that half itself. As each half has only half the samples, this 
+	 * slightly overstates the penalty of the codes built from all of them.
+	 *
+	 * @param even the counts of the even numbered samples
+	 * @param odd the counts of the odd numbered samples
+	 * @return the estimated penalty, in percent
+	 */
+	private double estimatePenalty(int[] even, int[] odd) {
+		byte[] evenLengths = sampleCodeLengths(even);
+		byte[] oddLengths = sampleCodeLengths(odd);
+		if (evenLengths == null || oddLengths == null) {
+			return 0;
+		}
+		long ownBits = 0;
+		long crossBits = 0;
+		for (int i = 0; i < NUM_BYTES; i++) {
+			ownBits += (long) even[i] * evenLengths[i] + (long) odd[i] * oddLengths[i];
+			crossBits += (long) even[i] * oddLengths[i] + (long) odd[i] * evenLengths[i];
+		}
+		return (ownBits > 0) ? 100.0 * (crossBits - ownBits) / ownBits : 0;
+	}
+	
+	/**
+	 * Finds the code lengths of the huffman code for the counts.
+	 *
+	 * @param counts the count of each byte value
+	 * @return the code lengths, or null if the codes cannot be created
+	 */
+	private byte[] sampleCodeLengths(int[] counts) {
+		HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+		huffUtil.setWeights(counts);
+		huffUtil.buildHuffmanTree(true);
+		if (!huffUtil.createLengthLimitedCodes(HuffmanCompressionUtilities.MAX_CANONICAL_BITS, true)) {
+			return null;
+		}
+		return huffUtil.getCodeLengths();
+	}
+	
+	/**
+	 * Counts each byte value in a range of the file - see HuffKernels.countChunk().
+	 *
+	 * @param channel the file channel
+	 * @param start the position of the first byte of the range
+	 * @param end the position just after the last byte of the range
+	 * @return the count of each byte value in the range
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private int[] countRange(FileChannel channel, long start, long end) throws IOException {
+		HuffKernels kernels = HuffKernels.get();
+		int[] sub = new int[kernels.getNumSubHistograms() * NUM_BYTES];
+		ByteBuffer buf = ByteBuffer.allocate(RANGE_BUFFER_SIZE);
+		long pos = start;
+		while (pos < end) {
+			buf.clear();
+			buf.limit((int) Math.min(RANGE_BUFFER_SIZE, end - pos));
+			int numRead = channel.read(buf, pos);
+			if (numRead < 0) {
+				break;
+			}
+			pos += numRead;
+			kernels.countChunk(buf.array(), numRead, sub);
+		}
+		int[] counts = new int[NUM_BYTES];
+		mergeSubHistograms(kernels, sub, counts);
+		return counts;
+	}
+	
+	/**
+	 * Adds the sub-histograms filled by HuffKernels.countChunk() to the counts.
+	 *
+	 * @param kernels the kernels that filled the sub-histograms
+	 * @param sub the sub-histograms
+	 * @param counts the count of each byte value
+	 */
+	private void mergeSubHistograms(HuffKernels kernels, int[] sub, int[] counts) {
+		for (int i = 0; i < NUM_BYTES; i++) {
+			counts[i] += kernels.subCount(sub, i);
+		}
+	}
+	
+	/**
+	 * Adds the sub-histograms filled by HuffKernels.countChunk() to the long counts.
+	 *
+	 * @param kernels the kernels that filled the sub-histograms
+	 * @param sub the sub-histograms
+	 * @param counts the count of each byte value
+	 */
+	private void mergeSubHistograms(HuffKernels kernels, int[] sub, long[] counts) {
+		for (int i = 0; i < NUM_BYTES; i++) {
+			counts[i] += kernels.subCount(sub, i);
+		}
+	}
+	
 	/**
 	 * Checks the file for the following requirements:
 	 * a) if the filename is empty, raise a WARNING alert with an appropriate message and
@@ -211,20 +646,31 @@ public class GenWeights {
 	}
 	 
 	 /**
+	  * Writes the weights to the file. A file with the HuffWeightsFile.WEIGHTS_EXT extension
+	  * is written in the binary weights format; any other file is written as CSV.
 	  * 
 	  * @param file the file to write
 	  */
 	 void writeOutputFile(File file) {
+		 if (HuffWeightsFile.isBinary(file)) {
+			 try {
+				 HuffWeightsFile.write(file, weights);
+			 } catch (IOException e) {
+				 e.printStackTrace();
+			 }
+			 return;
+		 }
 		 BufferedWriter bufferedWriter = fio.openBufferedWriter(file);
+		 StringBuilder csv = new StringBuilder(16 * weights.length);
 		 
 		 for (int i = 0; i < weights.length; i++) {
-			 String str = i + "," + weights[i] + ",\n";
-			 try {
-				bufferedWriter.write(str);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			 csv.append(i).append(',').append(weights[i]).append(",\n");
+		 }
+		 try {
+			 bufferedWriter.write(csv.toString());
+		 } catch (IOException e) {
+			 // TODO Auto-generated catch block
+			 e.printStackTrace();
 		 }
 		 
 		 fio.closeFile(bufferedWriter);
@@ -0,0 +1,193 @@
+/*
+ *  JUnit test for the single pass adaptive Huffman code.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Adaptive_Test {
+
+	/**
+	 * Compresses the data with an AdaptiveHuffmanOutputStream.
+	 *
+	 * @param data the data
+	 * @return the compressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (AdaptiveHuffmanOutputStream ahos = new AdaptiveHuffmanOutputStream(bos)) {
+			ahos.write(data);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Decompresses the data with an AdaptiveHuffmanInputStream.
+	 *
+	 * @param data the compressed data
+	 * @return the decompressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] decompress(byte[] data) throws IOException {
+		try (AdaptiveHuffmanInputStream ahis = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(data))) {
+			return ahis.readAllBytes();
+		}
+	}
+
+	/**
+	 * Test round trip of warAndPeace.txt, and that the adaptive code is close to the
+	 * size of the static (two pass) code.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_adaptive_WAP() throws IOException {
+		System.out.println("Test 1: Adaptive round trip of warAndPeace.txt");
+		byte[] data = Files.readAllBytes(new File("data/warAndPeace.txt").toPath());
+		byte[] comp = compress(data);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (HuffmanOutputStream hos = new HuffmanOutputStream(bos, HuffmanOutputStream.MAX_BLOCK_SIZE)) {
+			hos.write(data);
+		}
+		System.out.println("   Adaptive: "+comp.length+" bytes, static: "+bos.size()+" bytes");
+		assertTrue(comp.length < bos.size() * 1.02);
+		assertArrayEquals(data, decompress(comp));
+	}
+
+	/**
+	 * Test round trip of binary data (all 256 byte values) and of skewed data.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_adaptive_binary() throws IOException {
+		System.out.println("Test 2: Adaptive round trip of binary data");
+		Random rand = new Random(7);
+		byte[] data = new byte[200000];
+		rand.nextBytes(data);
+		assertArrayEquals(data, decompress(compress(data)));
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (rand.nextGaussian() * 3);
+		}
+		assertArrayEquals(data, decompress(compress(data)));
+	}
+
+	/**
+	 * Test the edge cases: empty stream, one byte, and a single repeated byte.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_adaptive_edge_cases() throws IOException {
+		System.out.println("Test 3: Adaptive edge cases");
+		assertArrayEquals(new byte[0], decompress(compress(new byte[0])));
+		assertArrayEquals(new byte[] {(byte) 255}, decompress(compress(new byte[] {(byte) 255})));
+		byte[] same = new byte[5000];
+		byte[] comp = compress(same);
+		assertTrue(comp.length < 700);
+		assertArrayEquals(same, decompress(comp));
+	}
+
+	/**
+	 * Test EncodeDecode in adaptive mode: no weights file is read or written.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_adaptive_encode_decode() throws IOException {
+		System.out.println("Test 4: EncodeDecode in adaptive mode");
+		File textFh = new File("data/Green Eggs and Ham.txt");
+		File encodeFh = new File("encode/Green Eggs and Ham_adaptive.huf");
+		File decodeFh = new File("decode/Green Eggs and Ham_adaptive.txt");
+		File wtsFh = new File("weights/Green Eggs and Ham_adaptive.csv");
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		enc_dec.setAdaptive(true);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), wtsFh.getPath(), true);
+		assertFalse(wtsFh.exists());
+		assertTrue(HuffFileHeader.isContainer(encodeFh));
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), wtsFh.getPath(), true);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		encodeFh.delete();
+		decodeFh.delete();
+	}
+
+	/**
+	 * Test an AdaptiveHuffmanOutputStream and an AdaptiveHuffmanInputStream over a pipe: a flushed message can be read before the next one is
+	 * written (the reader only waits for bytes that were sent), and the bytes that follow
+	 * the end of the compressed data are left in the pipe.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(5)
+	void test_adaptive_pipe() throws Exception {
+		System.out.println("Test 5: Adaptive stream over a pipe with flushes");
+		byte[] text = Files.readAllBytes(new File("data/warAndPeace.txt").toPath());
+		byte[] first = Arrays.copyOfRange(text, 0, 1000);
+		byte[] second = Arrays.copyOfRange(text, 1000, 3000);
+		byte[] tail = "tail".getBytes(StandardCharsets.US_ASCII);
+		PipedInputStream pipeIn = new PipedInputStream(1 << 16);
+		PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+		CountDownLatch firstRead = new CountDownLatch(1);
+		AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+		Thread writer = new Thread(() -> {
+			try {
+				AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(pipeOut);
+				out.write(first);
+				out.flush();
+				if (firstRead.await(10, TimeUnit.SECONDS)) {
+					out.write(second);
+					out.finish();
+				}
+				pipeOut.write(tail);
+				pipeOut.close();
+			} catch (Exception e) {
+				error.set(e);
+			}
+		});
+		writer.start();
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(pipeIn);
+			byte[] buf = new byte[8192];
+			assertEquals(first.length, in.read(buf));
+			assertArrayEquals(first, Arrays.copyOf(buf, first.length));
+			firstRead.countDown();
+			assertArrayEquals(second, in.readNBytes(second.length));
+			assertEquals(-1, in.read());
+			assertArrayEquals(tail, pipeIn.readAllBytes());
+		});
+		writer.join();
+		assertNull(error.get());
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ *  JUnit test for the batch engine.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Batch_Test {
+	private File batchDir = new File("encode/batch_test");
+
+	/**
+	 * Removes the files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		File[] files = batchDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		batchDir.delete();
+	}
+
+	/**
+	 * Creates many small text files, and the jobs that encode them to .huf files.
+	 *
+	 * @param numFiles the number of files
+	 * @return the jobs
+	 * @throws Exception the exception
+	 */
+	private List<File[]> smallFiles(int numFiles) throws Exception {
+		batchDir.mkdirs();
+		List<File[]> jobs = new ArrayList<File[]>();
+		for (int i = 0; i < numFiles; i++) {
+			File textFh = new File(batchDir, "small"+i+".txt");
+			Files.writeString(textFh.toPath(), "file "+i+": one fish two fish red fish blue fish\n".repeat(1 + i % 7));
+			jobs.add(new File[] {textFh, new File(batchDir, textFh.getName() + HuffFileHeader.HUF_EXT)});
+		}
+		return jobs;
+	}
+
+	/**
+	 * Encodes a file to a .huf file with its own EncodeDecode.
+	 *
+	 * @param input the input file
+	 * @param output the output file
+	 * @param hca the alerts
+	 * @return the result of the encode
+	 */
+	private static HuffCompressionResult encode(File input, File output, HuffCompAlerts hca) {
+		return new EncodeDecode(new GenWeights(hca), hca).encode(input.getPath(), output.getPath(), "", true);
+	}
+
+	/**
+	 * Test that the virtual thread executor is used when the runtime has virtual threads,
+	 * and that the engine falls back to platform threads otherwise.
+	 */
+	@Test
+	@Order(1)
+	void test_virtual_threads() {
+		System.out.println("Test 1: Virtual thread executor");
+		ExecutorService executor = HuffBatchEngine.newVirtualThreadExecutor();
+		if (Runtime.version().feature() >= 21) {
+			assertNotNull(executor);
+			executor.shutdown();
+			assertTrue(new HuffBatchEngine(1, true, 30).usesVirtualThreads());
+		} else {
+			assertNull(executor);
+			assertFalse(new HuffBatchEngine(1, true, 30).usesVirtualThreads());
+		}
+		assertFalse(new HuffBatchEngine(1, false, 30).usesVirtualThreads());
+	}
+
+	/**
+	 * Test a batch of many small files, and that the number of open files stays within
+	 * the limit.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(2)
+	void test_small_files() throws Exception {
+		System.out.println("Test 2: Batch of small files");
+		List<File[]> jobs = smallFiles(300);
+		HuffBatchEngine engine = new HuffBatchEngine(8, true, 4 * HuffBatchEngine.FILES_PER_JOB);
+		HuffBatchEngine.BatchResult batch = engine.run(jobs, HF_Batch_Test::encode);
+		assertTrue(batch.succeeded());
+		assertTrue(batch.peakActive.get() <= 4);
+		long inBytes = 0;
+		for (int i = 0; i < jobs.size(); i++) {
+			assertEquals(jobs.get(i)[0], batch.results[i].input);
+			inBytes += jobs.get(i)[0].length();
+		}
+		assertEquals(inBytes, batch.inBytes.sum());
+
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		File decodeFh = new File(batchDir, "decoded.txt");
+		for (int i = 0; i < jobs.size(); i += 37) {
+			enc_dec.decode(jobs.get(i)[1].getPath(), decodeFh.getPath(), "", true);
+			assertEquals(-1, Files.mismatch(jobs.get(i)[0].toPath(), decodeFh.toPath()));
+		}
+	}
+
+	/**
+	 * Test that the files that fail are aggregated in the batch result, with the alerts
+	 * raised for them, and do not stop the other files.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(3)
+	void test_failures() throws Exception {
+		System.out.println("Test 3: Batch failures");
+		List<File[]> jobs = smallFiles(20);
+		jobs.add(5, new File[] {new File(batchDir, "missing.txt"), new File(batchDir, "missing.huf")});
+		jobs.add(new File[] {jobs.get(0)[0], new File(batchDir, "throws.huf")});
+		HuffBatchEngine engine = new HuffBatchEngine(3, false, HuffBatchEngine.DEFAULT_MAX_OPEN_FILES);
+		HuffBatchEngine.BatchResult batch = engine.run(jobs, (input, output, hca) -> {
+			if (output.getName().equals("throws.huf")) {
+				throw new IllegalStateException("operation failed");
+			}
+			return encode(input, output, hca);
+		});
+		assertFalse(batch.succeeded());
+		assertEquals(2, batch.failures.size());
+		assertTrue(batch.results[5].error.contains(HuffAlerts.INPUT.name()));
+		assertEquals("operation failed", batch.results[jobs.size() - 1].error);
+		for (int i = 0; i < jobs.size() - 1; i++) {
+			assertEquals(i == 5, batch.results[i].error != null);
+		}
+	}
+
+	/**
+	 * Test that an empty file is encoded, and that the empty output of its decode is a
+	 * success, not a failure.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(4)
+	void test_empty_file() throws Exception {
+		System.out.println("Test 4: Batch of an empty file");
+		File empty = new File(batchDir, "empty.txt");
+		File encoded = new File(batchDir, "empty.huf");
+		File decoded = new File(batchDir, "empty.out");
+		batchDir.mkdirs();
+		Files.write(empty.toPath(), new byte[0]);
+		HuffBatchEngine engine = new HuffBatchEngine(1, false, HuffBatchEngine.DEFAULT_MAX_OPEN_FILES);
+		HuffBatchEngine.Result result = engine.process(empty, encoded, HF_Batch_Test::encode);
+		assertNull(result.error);
+		result = engine.process(encoded, decoded, (input, output, hca) -> 
+			new EncodeDecode(new GenWeights(hca), hca).decode(input.getPath(), output.getPath(), "", true));
+		assertNull(result.error);
+		assertTrue(decoded.isFile());
+		assertEquals(0, result.outBytes);
+		assertFalse(result.compression.isFailed());
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ *  JUnit test for the blocked .huf container and the ParallelBlockEncoder.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Block_Test {
+	HuffCompAlerts hca;
+	EncodeDecode enc_dec;
+	String dir = "data/";
+	private File encodeFh;
+	private File encodeFh2;
+	private File decodeFh;
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		if (encodeFh != null) encodeFh.delete();
+		if (encodeFh2 != null) encodeFh2.delete();
+		if (decodeFh != null) decodeFh.delete();
+	}
+
+	/**
+	 * Encodes the text file to a blocked .huf container.
+	 *
+	 * @param textFh the text file
+	 * @param encFh the .huf file
+	 * @param blockSize the block size
+	 * @param parallelism the number of threads
+	 */
+	private void encodeBlocked(File textFh, File encFh, int blockSize, int parallelism) {
+		hca = new HuffCompAlerts(null);
+		enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		enc_dec.setBlocked(blockSize, parallelism);
+		enc_dec.encode(textFh.getPath(), encFh.getPath(), "weights/", true);
+	}
+
+	/**
+	 * Encodes and decodes the text file, and verifies that the decoded file is identical.
+	 *
+	 * @param base the base name of the text file in data/
+	 * @param blockSize the block size
+	 * @param decoder the decode engine
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkRoundTrip(String base, int blockSize, HuffDecoder decoder) throws IOException {
+		System.out.println("Checking blocked round trip of "+base+" with "+blockSize+" byte blocks and "+decoder);
+		File textFh = new File(dir+base+".txt");
+		encodeFh = new File("encode/"+base+"_blocked"+HuffFileHeader.HUF_EXT);
+		decodeFh = new File("decode/"+base+"_blocked.txt");
+		encodeBlocked(textFh, encodeFh, blockSize, 4);
+		assertTrue(HuffFileHeader.isContainer(encodeFh));
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "weights/", true, decoder);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+	}
+
+	/**
+	 * Test warAndPeace.txt in many blocks, TABLE decoder.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_blocked_WAP_table() throws IOException {
+		checkRoundTrip("warAndPeace", 1 << 16, HuffDecoder.TABLE);
+	}
+
+	/**
+	 * Test warAndPeace.txt in many blocks, FSA decoder.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_blocked_WAP_fsa() throws IOException {
+		checkRoundTrip("warAndPeace", 1 << 16, HuffDecoder.FSA);
+	}
+
+	/**
+	 * Test a file that fits in a single (partial) block.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_blocked_single_block() throws IOException {
+		checkRoundTrip("Green Eggs and Ham", ParallelBlockEncoder.DEFAULT_BLOCK_SIZE, HuffDecoder.TABLE);
+	}
+
+	/**
+	 * Test that the output does not depend on the number of threads, and that the block
+	 * index matches the header.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_blocked_deterministic() throws IOException {
+		System.out.println("Checking that the blocked output does not depend on the thread count");
+		File textFh = new File(dir+"warAndPeace.txt");
+		encodeFh = new File("encode/warAndPeace_blocked1"+HuffFileHeader.HUF_EXT);
+		encodeFh2 = new File("encode/warAndPeace_blocked8"+HuffFileHeader.HUF_EXT);
+		encodeBlocked(textFh, encodeFh, 100000, 1);
+		encodeBlocked(textFh, encodeFh2, 100000, 8);
+		assertArrayEquals(Files.readAllBytes(encodeFh.toPath()), Files.readAllBytes(encodeFh2.toPath()));
+
+		try (FileInputStream fis = new FileInputStream(encodeFh)) {
+			assertTrue(HuffFileHeader.readMagic(fis));
+			HuffFileHeader header = HuffFileHeader.read(fis);
+			assertEquals(HuffFileHeader.MODE_BLOCKED, header.getMode());
+			assertEquals(100000, header.getBlockSize());
+			assertEquals(textFh.length(), header.getOriginalLength());
+			HuffBlockIndex index = HuffBlockIndex.read(encodeFh, header);
+			assertEquals((textFh.length() + 99999) / 100000, index.getNumBlocks());
+			assertEquals(0, index.getBitOffset(0));
+			for (int i = 1; i < index.getNumBlocks(); i++) {
+				assertEquals(index.getBitOffset(i - 1) + 8L * index.getCompressedLength(i - 1), index.getBitOffset(i));
+				assertEquals(100000, index.getLength(i - 1));
+			}
+		}
+	}
+
+	/**
+	 * Test that a block index that does not match the header is reported, and no output
+	 * file is written.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(5)
+	void test_blocked_corrupt() throws IOException {
+		System.out.println("Checking that a corrupt blocked file is rejected");
+		File textFh = new File(dir+"warAndPeace.txt");
+		encodeFh = new File("encode/warAndPeace_corrupt"+HuffFileHeader.HUF_EXT);
+		decodeFh = new File("decode/warAndPeace_corrupt.txt");
+		encodeBlocked(textFh, encodeFh, 1 << 16, 4);
+		byte[] data = Files.readAllBytes(encodeFh.toPath());
+		HuffBlockIndex index;
+		try (FileInputStream fis = new FileInputStream(encodeFh)) {
+			HuffFileHeader.readMagic(fis);
+			HuffFileHeader header = HuffFileHeader.read(fis);
+			index = HuffBlockIndex.read(encodeFh, header);
+		}
+		// add one to the original length of the first block
+		int entry = (int) (data.length - index.getSize());
+		data[entry + 11]++;
+		Files.write(encodeFh.toPath(), data);
+
+		hca.resetLastAlertType();
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "weights/", true);
+		assertTrue(hca.getLastAlertType().contains(HuffAlerts.INPUT.name()));
+		assertTrue(!decodeFh.exists());
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ *  JUnit test for the headless command-line driver.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_CLI_Test {
+	String dir = "data/";
+	private File encodeDir = new File("encode/cli_test");
+	private File decodeDir = new File("decode/cli_test");
+	private File wtsFh = new File("weights/cli_test.hwt");
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		for (File outDir : new File[] {encodeDir, decodeDir}) {
+			File[] files = outDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			outDir.delete();
+		}
+		wtsFh.delete();
+	}
+
+	/**
+	 * Runs a command on the worker pool.
+	 *
+	 * @param args the command line
+	 * @return true, if every file succeeded
+	 * @throws InterruptedException if interrupted
+	 */
+	private boolean run(String... args) throws InterruptedException {
+		HuffCompCLI cli = new HuffCompCLI();
+		String[] names = cli.parse(args);
+		return cli.run(cli.listJobs(new File(names[0]), new File(names[1])));
+	}
+
+	/**
+	 * Test that a directory is encoded and decoded by concurrent workers.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(1)
+	void test_batch() throws Exception {
+		System.out.println("Test 1: Batch encode and decode of a directory");
+		assertTrue(run("encode", "-j", "3", dir, encodeDir.getPath()));
+		assertTrue(run("decode", "-j", "3", encodeDir.getPath(), decodeDir.getPath()));
+		String[] names = new File(dir).list((d, name) -> name.endsWith(".txt"));
+		assertEquals(names.length, decodeDir.list().length);
+		for (String name : names) {
+			assertTrue(new File(encodeDir, name + HuffFileHeader.HUF_EXT).isFile());
+			assertEquals(-1, Files.mismatch(new File(dir, name).toPath(), new File(decodeDir, name).toPath()));
+		}
+	}
+
+	/**
+	 * Test the .bin format with a weights file written by the weights command.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(2)
+	void test_bin_weights() throws Exception {
+		System.out.println("Test 2: Weights command and the .bin format");
+		assertTrue(run("weights", dir+"The Cat in the Hat.txt", wtsFh.getPath()));
+		assertTrue(HuffWeightsFile.read(wtsFh).length > 0);
+		File binFh = new File(encodeDir, "cat.bin");
+		File textFh = new File(decodeDir, "cat.txt");
+		assertTrue(run("encode", "-bin", "-canonical", "-w", wtsFh.getPath(), dir+"The Cat in the Hat.txt", binFh.getPath()));
+		assertTrue(run("decode", "-canonical", "-w", wtsFh.getPath(), binFh.getPath(), textFh.getPath()));
+		assertEquals(-1, Files.mismatch(new File(dir+"The Cat in the Hat.txt").toPath(), textFh.toPath()));
+	}
+
+	/**
+	 * Test that an empty file is encoded and decoded in each .huf mode, and that the empty
+	 * output of the decode is not reported as a failure. The weights of an empty file fail
+	 * the input checks, so the weights command reports it as a failure.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(3)
+	void test_empty_file() throws Exception {
+		System.out.println("Test 3: Encode and decode of an empty file");
+		encodeDir.mkdirs();
+		File empty = new File(encodeDir, "empty.txt");
+		Files.write(empty.toPath(), new byte[0]);
+		File hufFh = new File(encodeDir, "empty.txt.huf");
+		File textFh = new File(decodeDir, "empty.txt");
+		for (String[] mode : new String[][] {{}, {"-adaptive"}, {"-model"}, {"-blocked", "1000"}}) {
+			List<String> encode = new ArrayList<String>(Arrays.asList("encode"));
+			encode.addAll(Arrays.asList(mode));
+			encode.addAll(Arrays.asList(empty.getPath(), hufFh.getPath()));
+			assertTrue(run(encode.toArray(new String[0])), encode.toString());
+			assertTrue(run("decode", hufFh.getPath(), textFh.getPath()), encode.toString());
+			assertTrue(textFh.isFile());
+			assertEquals(0, textFh.length());
+		}
+		// an empty file has no weights, so the weights command fails and writes nothing
+		assertFalse(run("weights", empty.getPath(), wtsFh.getPath()));
+		assertFalse(wtsFh.exists());
+	}
+
+	/**
+	 * Test that a file that cannot be processed is reported as failed, and that
+	 * command line errors are rejected.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_errors() throws IOException {
+		System.out.println("Test 4: Failures and usage errors");
+		HuffCompCLI cli = new HuffCompCLI();
+		cli.parse(new String[] {"encode", "-bin", dir+"simple.txt", "encode/cli_test.bin"});
+		HuffBatchEngine engine = cli.newEngine();
+		HuffBatchEngine.FileOperation operation = (input, output, hca) -> cli.process(input, output, hca, 1);
+		HuffBatchEngine.Result result = engine.process(new File(dir+"simple.txt"), new File("encode/cli_test.bin"), operation);
+		assertTrue(result.error.contains("-w"));
+		result = engine.process(new File(dir+"missing.txt"), new File("encode/cli_test.bin"), operation);
+		assertFalse(result.error == null);
+
+		assertThrows(IllegalArgumentException.class, () -> new HuffCompCLI().parse(new String[] {"compress", "a", "b"}));
+		assertThrows(IllegalArgumentException.class, () -> new HuffCompCLI().parse(new String[] {"encode", "a"}));
+		assertThrows(IllegalArgumentException.class, () -> new HuffCompCLI().parse(new String[] {"encode", "-j", "0", "a", "b"}));
+		assertThrows(IllegalArgumentException.class, () -> new HuffCompCLI().parse(new String[] {"encode", "-x", "a", "b"}));
+		assertThrows(IllegalArgumentException.class,
+				     () -> new HuffCompCLI().parse(new String[] {"encode", "-w", "weights/missing.csv", "a", "b"}));
+
+		List<File[]> jobs = cli.listJobs(new File(dir), encodeDir);
+		for (File[] job : jobs) {
+			assertFalse(job[0].getName().startsWith("."));
+		}
+		assertEquals("x.txt.bin", cli.outputName("x.txt"));
+		cli.parse(new String[] {"decode", "a", "b"});
+		assertEquals("x.txt", cli.outputName("x.txt.huf"));
+		assertNull(cli.outputName("x.txt"));
+	}
+}
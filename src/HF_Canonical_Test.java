@@ -0,0 +1,248 @@
+/*
+ *  JUnit test for the canonical Huffman codes.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Canonical_Test {
+	HuffmanCompressionUtilities huffUtil;
+	GenWeights gw;
+	HuffCompAlerts hca;
+	EncodeDecode enc_dec;
+	String dir = "data/";
+	private File weightsFh;
+	private File encodeFh;
+	private File decodeFh;
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		if (weightsFh != null) weightsFh.delete();
+		if (encodeFh != null) encodeFh.delete();
+		if (decodeFh != null) decodeFh.delete();
+	}
+
+	/**
+	 * Builds the optimized Huffman tree for the specified text file.
+	 *
+	 * @param fname the name of the text file in data/
+	 */
+	private void buildTree(String fname) {
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		huffUtil = new HuffmanCompressionUtilities();
+		huffUtil.setWeights(gw.readInputFileAndReturnWeights(dir+fname));
+		huffUtil.buildHuffmanTree(true);
+		huffUtil.createHuffmanCodes(huffUtil.getTreeRoot(), "", 0);
+	}
+
+	/**
+	 * Test that the canonical codes have the same lengths as the tree codes,
+	 * are assigned in canonical order and that the encodeMap matches the code values.
+	 */
+	@Test
+	@Order(1)
+	void test_canonical_lengths_WAP() {
+		System.out.println("Test 1: Checking canonical code lengths and order");
+		buildTree("warAndPeace.txt");
+		String[] treeMap = huffUtil.getEncodeMap().clone();
+		assertTrue(huffUtil.createCanonicalCodes());
+		int[] values = huffUtil.getCodeValues();
+		byte[] lengths = huffUtil.getCodeLengths();
+		String[] canonMap = huffUtil.getEncodeMap();
+		long lastAligned = -1;
+		int lastLength = 0;
+
+		for (int i = 0; i < treeMap.length; i++) {
+			if (treeMap[i] == null) {
+				assertEquals(0, lengths[i]);
+				continue;
+			}
+			assertEquals(treeMap[i].length(), lengths[i]);
+			assertEquals(Integer.toBinaryString(values[i] | (1 << lengths[i])).substring(1), canonMap[i]);
+		}
+		// canonical codes of the same length are consecutive, in increasing ordinal order
+		for (int len = 1; len <= HuffmanCompressionUtilities.MAX_CANONICAL_BITS; len++) {
+			for (int i = 0; i < lengths.length; i++) {
+				if (lengths[i] != len) continue;
+				long aligned = ((long) values[i]) << (HuffmanCompressionUtilities.MAX_CANONICAL_BITS - len);
+				assertTrue(aligned > lastAligned || lastLength == 0);
+				lastAligned = aligned;
+				lastLength = len;
+			}
+		}
+	}
+
+	/**
+	 * Test that the codebook can be rebuilt from the code lengths alone.
+	 */
+	@Test
+	@Order(2)
+	void test_canonical_from_lengths() {
+		System.out.println("Test 2: Rebuilding the canonical codebook from the code lengths");
+		buildTree("Green Eggs and Ham.txt");
+		assertTrue(huffUtil.createCanonicalCodes());
+		int[] values = huffUtil.getCodeValues().clone();
+		byte[] lengths = huffUtil.getCodeLengths().clone();
+
+		HuffmanCompressionUtilities rebuilt = new HuffmanCompressionUtilities();
+		assertTrue(rebuilt.setCodeLengths(lengths.clone()));
+		assertArrayEquals(values, rebuilt.getCodeValues());
+		assertArrayEquals(lengths, rebuilt.getCodeLengths());
+		for (int i = 0; i < lengths.length; i++) {
+			if (lengths[i] != 0) {
+				assertEquals(i, rebuilt.decodeString(rebuilt.getEncodeMap()[i]));
+			}
+		}
+
+		// the lengths are copied, not shared with the caller
+		byte[] copy = lengths.clone();
+		assertTrue(rebuilt.setCodeLengths(copy));
+		copy[0]++;
+		assertArrayEquals(lengths, rebuilt.getCodeLengths());
+	}
+
+	/**
+	 * Test that a file encoded with canonical codes decodes to the original text.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_canonical_encode_decode_HPATS() throws IOException {
+		System.out.println("Test 3: Canonical encode and decode");
+		String base = "Harry Potter and the Sorcerer";
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		enc_dec = new EncodeDecode(gw, hca);
+		enc_dec.setCanonical(true);
+		weightsFh = new File("weights/"+base+"_canon.csv");
+		encodeFh = new File("encode/"+base+"_canon.bin");
+		decodeFh = new File("decode/"+base+"_canon.txt");
+		gw.readInputFileAndReturnWeights(dir+base+".txt");
+		gw.writeOutputFile(weightsFh);
+
+		enc_dec.encode(dir+base+".txt", encodeFh.getPath(), weightsFh.getPath(), true);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), weightsFh.getPath(), true);
+		assertTrue(encodeFh.length() > 0);
+		assertEquals(-1, Files.mismatch(new File(dir+base+".txt").toPath(), decodeFh.toPath()));
+	}
+
+	/**
+	 * Test that package-merge gives a complete code within the length limit, and that
+	 * the loss against the unlimited codes is small.
+	 */
+	@Test
+	@Order(4)
+	void test_length_limited_WAP() {
+		System.out.println("Test 4: Length limited codes");
+		buildTree("warAndPeace.txt");
+		double lastLoss = 100;
+		for (int maxBits : new int[] {8, 11, 15}) {
+			assertTrue(huffUtil.createLengthLimitedCodes(maxBits, true));
+			byte[] lengths = huffUtil.getCodeLengths();
+			double kraft = 0;
+			for (int i = 0; i < lengths.length; i++) {
+				assertTrue(lengths[i] <= maxBits);
+				if (lengths[i] != 0) kraft += Math.pow(2, -lengths[i]);
+			}
+			assertEquals(1.0, kraft, 1e-12);
+			System.out.println("   "+maxBits+" bits: loss = "+huffUtil.getLengthLimitLoss()+"%");
+			assertTrue(huffUtil.getLengthLimitLoss() >= 0 && huffUtil.getLengthLimitLoss() < lastLoss);
+			lastLoss = huffUtil.getLengthLimitLoss();
+			huffUtil.buildHuffmanTree(true);
+		}
+		// every character with a non-zero weight needs a code: 2^6 < number of characters
+		assertTrue(!huffUtil.createLengthLimitedCodes(6, true));
+	}
+
+	/**
+	 * Test the package-merge lengths against a known optimal length-limited code.
+	 */
+	@Test
+	@Order(5)
+	void test_length_limited_known() {
+		System.out.println("Test 5: Package-merge against a known code");
+		huffUtil = new HuffmanCompressionUtilities();
+		int[] weights = new int[128];
+		int[] fib = {1, 1, 2, 3, 5, 8, 13, 21};
+		for (int i = 0; i < fib.length; i++) {
+			weights[65 + i] = fib[i];
+		}
+		huffUtil.setWeights(weights);
+		huffUtil.buildHuffmanTree(true);
+		assertTrue(huffUtil.createLengthLimitedCodes(4, true));
+		// weights 1,1,2,3,5,8,13,21 limited to 4 bits: lengths 4,4,4,4,3,3,2,2 - cost 135 (unlimited: 132)
+		byte[] lengths = huffUtil.getCodeLengths();
+		long cost = 0;
+		for (int i = 0; i < fib.length; i++) {
+			cost += (long) fib[i] * lengths[65 + i];
+		}
+		assertEquals(135, cost);
+		assertEquals(100.0 * 3 / 132, huffUtil.getLengthLimitLoss(), 1e-9);
+	}
+
+	/**
+	 * Test that a full (unoptimized) tree, whose codes are far too long for the canonical
+	 * code tables, can be encoded and decoded with a maximum code length.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(6)
+	void test_length_limited_encode_decode() throws IOException {
+		System.out.println("Test 6: Length limited encode and decode of a full tree");
+		String base = "warAndPeace";
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		enc_dec = new EncodeDecode(gw, hca);
+		enc_dec.setCanonical(true);
+		enc_dec.setMaxCodeLength(12);
+		weightsFh = new File("weights/"+base+"_limit.csv");
+		encodeFh = new File("encode/"+base+"_limit.bin");
+		decodeFh = new File("decode/"+base+"_limit.txt");
+		gw.readInputFileAndReturnWeights(dir+base+".txt");
+		gw.writeOutputFile(weightsFh);
+
+		enc_dec.encode(dir+base+".txt", encodeFh.getPath(), weightsFh.getPath(), false);
+		assertTrue(enc_dec.getLengthLimitLoss() > 0);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), weightsFh.getPath(), false);
+		assertEquals(-1, Files.mismatch(new File(dir+base+".txt").toPath(), decodeFh.toPath()));
+	}
+
+	/**
+	 * Test that code lengths which break the Kraft inequality are rejected: an
+	 * oversubscribed set (not a prefix code) and an incomplete one, while a single
+	 * character and an empty alphabet are accepted.
+	 */
+	@Test
+	@Order(7)
+	void test_kraft_inequality() {
+		System.out.println("Test 7: Code lengths are checked against the Kraft inequality");
+		HuffmanCompressionUtilities rebuilt = new HuffmanCompressionUtilities();
+		assertTrue(rebuilt.setCodeLengths(new byte[] {1, 2, 3, 3}));
+		assertFalse(rebuilt.setCodeLengths(new byte[] {1, 1, 2}));
+		assertFalse(rebuilt.setCodeLengths(new byte[] {1, 2, 3}));
+		assertFalse(rebuilt.setCodeLengths(new byte[] {2, 2, 2, 0}));
+		assertTrue(rebuilt.setCodeLengths(new byte[] {0, 1, 0}));
+		assertTrue(rebuilt.setCodeLengths(new byte[4]));
+		assertArrayEquals(new byte[4], rebuilt.getCodeLengths());
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ *  JUnit test for the codebook cache.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Codebook_Test {
+	String dir = "data/";
+	private File textFh = new File(dir+"Green Eggs and Ham.txt");
+	private File wtsFh = new File("weights/codebook_test.csv");
+	private File encodeFh = new File("encode/codebook_test.bin");
+	private File decodeFh = new File("decode/codebook_test.txt");
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		wtsFh.delete();
+		encodeFh.delete();
+		decodeFh.delete();
+	}
+
+	/**
+	 * Creates an EncodeDecode that uses the codebook cache.
+	 *
+	 * @param cache the codebook cache
+	 * @return the EncodeDecode
+	 */
+	private EncodeDecode newEncodeDecode(HuffCodebookCache cache) {
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		enc_dec.setCodebookCache(cache);
+		return enc_dec;
+	}
+
+	/**
+	 * Writes the weights of a text file in data/ to the weights file.
+	 *
+	 * @param fname the name of the text file
+	 */
+	private void writeWeights(String fname) {
+		GenWeights gw = new GenWeights(new HuffCompAlerts(null));
+		gw.generateWeights(dir+fname);
+		gw.writeOutputFile(wtsFh);
+	}
+
+	/**
+	 * Test that repeated decodes with the same weights file build the codebook once,
+	 * including across EncodeDecode instances that share the cache.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_cache_hits() throws IOException {
+		System.out.println("Test 1: Codebook cache hits");
+		writeWeights(textFh.getName());
+		HuffCodebookCache cache = new HuffCodebookCache();
+		EncodeDecode enc_dec = newEncodeDecode(cache);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), wtsFh.getPath(), true);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		for (int i = 0; i < 5; i++) {
+			EncodeDecode dec = (i % 2 == 0) ? enc_dec : newEncodeDecode(cache);
+			dec.decode(encodeFh.getPath(), decodeFh.getPath(), wtsFh.getPath(), true,
+					   (i < 3) ? HuffDecoder.TABLE : HuffDecoder.FSA);
+			assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		}
+		assertEquals(5, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+
+		// canonical codes are a different codebook
+		enc_dec.setCanonical(true);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), wtsFh.getPath(), true);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), wtsFh.getPath(), true);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getMisses());
+	}
+
+	/**
+	 * Test that a weights file that is rewritten with different weights is not served
+	 * from the cache.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_cache_invalidation() throws IOException {
+		System.out.println("Test 2: Codebook cache invalidation");
+		HuffCodebookCache cache = new HuffCodebookCache();
+		EncodeDecode enc_dec = newEncodeDecode(cache);
+		writeWeights("simple.txt");
+		enc_dec.encode(dir+"simple.txt", encodeFh.getPath(), wtsFh.getPath(), true);
+		long lastModified = wtsFh.lastModified();
+		writeWeights(textFh.getName());
+		wtsFh.setLastModified(lastModified);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), wtsFh.getPath(), true);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), wtsFh.getPath(), true);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.getHits());
+	}
+
+	/**
+	 * Test that .huf files with the same code lengths share one codebook.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_cache_container() throws IOException {
+		System.out.println("Test 3: Codebook cache for .huf headers");
+		File hufFh = new File("encode/codebook_test.huf");
+		HuffCodebookCache cache = new HuffCodebookCache();
+		EncodeDecode enc_dec = newEncodeDecode(cache);
+		enc_dec.encode(textFh.getPath(), hufFh.getPath(), "", true);
+		for (int i = 0; i < 3; i++) {
+			enc_dec.decode(hufFh.getPath(), decodeFh.getPath(), "", true);
+			assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+		hufFh.delete();
+	}
+
+	/**
+	 * Test that the least recently used codebooks are evicted to stay within the
+	 * maximum footprint, and that the most recently used codebook is kept.
+	 */
+	@Test
+	@Order(4)
+	void test_cache_eviction() {
+		System.out.println("Test 4: Codebook cache eviction");
+		HuffCodebook[] codebooks = new HuffCodebook[4];
+		for (int i = 0; i < codebooks.length; i++) {
+			HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+			byte[] lengths = new byte[256];
+			lengths[i] = 1;
+			lengths[255] = 1;
+			assertTrue(huffUtil.setCodeLengths(lengths));
+			codebooks[i] = new HuffCodebook(huffUtil, null);
+		}
+		long footprint = codebooks[0].getFootprint();
+		HuffCodebookCache cache = new HuffCodebookCache(2 * footprint);
+		cache.put("a", codebooks[0]);
+		cache.put("b", codebooks[1]);
+		assertSame(codebooks[0], cache.get("a"));
+		cache.put("c", codebooks[2]);
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// building a decode table grows the footprint; the most recent codebook is kept
+		codebooks[3].getDecodeTable();
+		cache.put("d", codebooks[3]);
+		assertEquals(1, cache.size());
+		assertSame(codebooks[3], cache.get("d"));
+		assertEquals(3, cache.getEvictions());
+	}
+}
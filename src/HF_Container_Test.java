@@ -0,0 +1,217 @@
+/*
+ *  JUnit test for the self-describing .huf container.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Container_Test {
+	GenWeights gw;
+	HuffCompAlerts hca;
+	EncodeDecode enc_dec;
+	String dir = "data/";
+	private File encodeFh;
+	private File decodeFh;
+	private File inputFh;
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		if (encodeFh != null) encodeFh.delete();
+		if (decodeFh != null) decodeFh.delete();
+		if (inputFh != null) inputFh.delete();
+	}
+
+	/**
+	 * Encodes the text file to a .huf container without a weights file, then decodes it
+	 * (again without a weights file) and verifies that the decoded file is identical.
+	 *
+	 * @param base the base name of the text file in data/
+	 * @param decoder the decode engine
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkRoundTrip(String base, HuffDecoder decoder) throws IOException {
+		System.out.println("Checking .huf container round trip of "+base+" with "+decoder);
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		enc_dec = new EncodeDecode(gw, hca);
+		File textFh = new File(dir+base+".txt");
+		encodeFh = new File("encode/"+base+HuffFileHeader.HUF_EXT);
+		decodeFh = new File("decode/"+base+"_huf.txt");
+
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), "weights/", true);
+		assertTrue(HuffFileHeader.isContainer(encodeFh));
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "weights/", true, decoder);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+	}
+
+	/**
+	 * Test the container with simple.txt.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_container_simple() throws IOException {
+		checkRoundTrip("simple", HuffDecoder.TABLE);
+	}
+
+	/**
+	 * Test the container with warAndPeace.txt, TABLE decoder.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_container_WAP_table() throws IOException {
+		checkRoundTrip("warAndPeace", HuffDecoder.TABLE);
+	}
+
+	/**
+	 * Test the container with Green Eggs and Ham.txt, FSA decoder.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_container_GEAH_fsa() throws IOException {
+		checkRoundTrip("Green Eggs and Ham", HuffDecoder.FSA);
+	}
+
+	/**
+	 * Test that the header records the original length and the code lengths.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_container_header() throws IOException {
+		System.out.println("Checking .huf container header");
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		enc_dec = new EncodeDecode(gw, hca);
+		File textFh = new File(dir+"The Cat in the Hat.txt");
+		encodeFh = new File("encode/The Cat in the Hat"+HuffFileHeader.HUF_EXT);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), "weights/", true);
+
+		try (FileInputStream fis = new FileInputStream(encodeFh)) {
+			assertTrue(HuffFileHeader.readMagic(fis));
+			HuffFileHeader header = HuffFileHeader.read(fis);
+			assertEquals(HuffFileHeader.VERSION, header.getVersion());
+			assertEquals(HuffFileHeader.MODE_STATIC, header.getMode());
+			assertEquals(textFh.length(), header.getOriginalLength());
+			assertEquals(maxWeightChar(gw.getWeights()), shortestCodeChar(header.getCodeLengths()));
+		}
+	}
+
+	/**
+	 * Encodes the input file to a .huf container and decodes it, with each decode engine,
+	 * and verifies that the decoded file is identical.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkByteRoundTrip() throws IOException {
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		enc_dec = new EncodeDecode(gw, hca);
+		encodeFh = new File("encode/"+inputFh.getName()+HuffFileHeader.HUF_EXT);
+		decodeFh = new File("decode/"+inputFh.getName());
+		enc_dec.encode(inputFh.getPath(), encodeFh.getPath(), "weights/", true);
+		assertEquals(HuffmanCompressionUtilities.NUM_BYTES, gw.getWeights().length);
+		for (HuffDecoder decoder : HuffDecoder.values()) {
+			enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "weights/", true, decoder);
+			assertEquals(-1, Files.mismatch(inputFh.toPath(), decodeFh.toPath()));
+		}
+	}
+
+	/**
+	 * Test the container with binary data that uses all 256 byte values.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(5)
+	void test_container_binary() throws IOException {
+		System.out.println("Checking .huf container round trip of binary data");
+		byte[] data = new byte[300000];
+		Random rand = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (rand.nextGaussian() * 40);
+		}
+		inputFh = new File("encode/binary_input.dat");
+		Files.write(inputFh.toPath(), data);
+		checkByteRoundTrip();
+	}
+
+	/**
+	 * Test the container with UTF-8 text, and that the headerless format rejects it.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(6)
+	void test_container_utf8() throws IOException {
+		System.out.println("Checking .huf container round trip of UTF-8 text");
+		String text = Files.readString(new File(dir+"Green Eggs and Ham.txt").toPath());
+		text = text.replace("Sam", "S\u00e4m").replace("ham", "h\u00e4m \u2713");
+		inputFh = new File("encode/utf8_input.txt");
+		Files.write(inputFh.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		checkByteRoundTrip();
+
+		File binFh = new File("encode/utf8_input.bin");
+		File wtsFh = new File("weights/utf8_input.csv");
+		gw.generateWeights(dir+"Green Eggs and Ham.txt");
+		gw.saveWeightsToFile(wtsFh.getPath());
+		hca.resetLastAlertType();
+		enc_dec.encode(inputFh.getPath(), binFh.getPath(), wtsFh.getPath(), true);
+		wtsFh.delete();
+		assertTrue(hca.getLastAlertType().contains(HuffAlerts.INPUT.name()));
+		assertFalse(binFh.exists());
+	}
+
+	/**
+	 * Returns the character with the largest weight.
+	 *
+	 * @param weights the weights
+	 * @return the character with the largest weight
+	 */
+	private int maxWeightChar(int[] weights) {
+		int best = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] > weights[best]) best = i;
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the character with the shortest (non-zero) code.
+	 *
+	 * @param lengths the code lengths
+	 * @return the character with the shortest code
+	 */
+	private int shortestCodeChar(byte[] lengths) {
+		int best = -1;
+		for (int i = 0; i < lengths.length; i++) {
+			if (lengths[i] != 0 && (best == -1 || lengths[i] < lengths[best])) best = i;
+		}
+		return best;
+	}
+}
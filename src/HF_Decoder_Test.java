@@ -0,0 +1,130 @@
+/*
+ *  JUnit test for the TABLE and FSA decode engines.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Decoder_Test {
+	GenWeights gw;
+	HuffCompAlerts hca;
+	EncodeDecode enc_dec;
+	String dir = "data/";
+	private File textFh;
+	private File weightsFh;
+	private File encodeFh;
+	private File decodeFh;
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		if (weightsFh != null) weightsFh.delete();
+		if (encodeFh != null) encodeFh.delete();
+		if (decodeFh != null) decodeFh.delete();
+	}
+
+	/**
+	 * Encodes the text file, then decodes it with the specified decoder and verifies that the
+	 * decoded file is identical to the original.
+	 *
+	 * @param base the base name of the text file in data/
+	 * @param optimize the optimize flag
+	 * @param decoder the decode engine
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void checkRoundTrip(String base, boolean optimize, HuffDecoder decoder) throws IOException {
+		System.out.println("Checking "+decoder+" decode of "+base+" (optimize = "+optimize+")");
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		enc_dec = new EncodeDecode(gw, hca);
+		textFh = new File(dir+base+".txt");
+		weightsFh = new File("weights/"+base+"_dec.csv");
+		encodeFh = new File("encode/"+base+"_dec.bin");
+		decodeFh = new File("decode/"+base+"_dec.txt");
+		gw.readInputFileAndReturnWeights(textFh.getPath());
+		gw.writeOutputFile(weightsFh);
+
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), weightsFh.getPath(), optimize);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), weightsFh.getPath(), optimize, decoder);
+		assertTrue(decodeFh.exists());
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+	}
+
+	/**
+	 * Test the TABLE decoder with a full tree - codes are far longer than the table bits.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_table_simple_full() throws IOException {
+		checkRoundTrip("simple", false, HuffDecoder.TABLE);
+	}
+
+	/**
+	 * Test the TABLE decoder with an optimized tree.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_table_WAP_optimize() throws IOException {
+		checkRoundTrip("warAndPeace", true, HuffDecoder.TABLE);
+	}
+
+	/**
+	 * Test the FSA decoder with a full tree.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_fsa_TCITH_full() throws IOException {
+		checkRoundTrip("The Cat in the Hat", false, HuffDecoder.FSA);
+	}
+
+	/**
+	 * Test the FSA decoder with an optimized tree.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_fsa_WAP_optimize() throws IOException {
+		checkRoundTrip("warAndPeace", true, HuffDecoder.FSA);
+	}
+
+	/**
+	 * Test that the FSA has one state per internal node of the tree.
+	 */
+	@Test
+	@Order(5)
+	void test_fsa_states() {
+		HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+		hca = new HuffCompAlerts(null);
+		gw = new GenWeights(hca);
+		int[] weights = gw.readInputFileAndReturnWeights(dir+"Green Eggs and Ham.txt");
+		int leaves = 0;
+		for (int w : weights) {
+			if (w != 0) leaves++;
+		}
+		huffUtil.setWeights(weights);
+		huffUtil.buildHuffmanTree(true);
+		HuffmanFSADecoder fsa = new HuffmanFSADecoder(huffUtil.getTreeRoot());
+		assertEquals(leaves - 1, fsa.getNumStates());
+	}
+}
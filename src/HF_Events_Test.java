@@ -0,0 +1,132 @@
+/*
+ *  JUnit test for the JDK Flight Recorder events of the engine.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Events_Test {
+	HuffCompAlerts hca = new HuffCompAlerts(null);
+	GenWeights gw = new GenWeights(hca);
+	EncodeDecode enc = new EncodeDecode(gw, hca);
+	String src = "data/Harry Potter and the Sorcerer.txt";
+	String[] outputs = {"encode/events.huf", "decode/events.txt", "encode/events.jfr"};
+
+	@AfterEach
+	void cleanup() {
+		for (String fname : outputs) {
+			new File(fname).delete();
+		}
+	}
+
+	/**
+	 * Records a blocked encode and decode with generated weights.
+	 *
+	 * @return the events of the engine, in the order they started
+	 * @throws Exception the exception
+	 */
+	private List<RecordedEvent> record() throws Exception {
+		Path jfr = new File("encode/events.jfr").toPath();
+		try (Recording recording = new Recording()) {
+			for (String name : new String[] {"WeightsGeneration", "TreeBuild", "CodeGeneration", "BlockEncode",
+					                         "BlockDecode"}) {
+				recording.enable("huffman."+name).withThreshold(Duration.ZERO);
+			}
+			recording.start();
+			enc.setBlocked(100000, 2);
+			enc.encode(src, "encode/events.huf", "", true);
+			enc.decode("encode/events.huf", "decode/events.txt", "", true);
+			recording.stop();
+			recording.dump(jfr);
+		}
+		return RecordingFile.readAllEvents(jfr).stream()
+				.filter(e -> e.getEventType().getName().startsWith("huffman."))
+				.sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Test that each phase is recorded once, and each block once for the encode and the
+	 * decode, with the file name, byte counts, symbol count and maximum code length.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(1)
+	void test_events() throws Exception {
+		System.out.println("Test 1: JFR events of a blocked encode and decode");
+		List<RecordedEvent> events = record();
+		long length = new File(src).length();
+		int numBlocks = (int) ((length + 99999) / 100000);
+
+		List<RecordedEvent> weights = byType(events, "huffman.WeightsGeneration");
+		assertEquals(1, weights.size());
+		assertEquals("Harry Potter and the Sorcerer.txt", weights.get(0).getString("fileName"));
+		assertEquals(length, weights.get(0).getLong("bytesIn"));
+		int symbols = weights.get(0).getInt("symbolCount");
+		assertTrue(symbols > 50 && symbols < 128);
+
+		List<RecordedEvent> trees = byType(events, "huffman.TreeBuild");
+		assertEquals(1, trees.size());
+		assertEquals(symbols, trees.get(0).getInt("symbolCount"));
+		assertTrue(trees.get(0).getInt("maxCodeLength") > 6);
+
+		// the codes of the encode, then those rebuilt from the header by the decode
+		List<RecordedEvent> codes = byType(events, "huffman.CodeGeneration");
+		assertEquals(2, codes.size());
+		for (RecordedEvent code : codes) {
+			assertEquals(symbols, code.getInt("symbolCount"));
+			assertEquals(trees.get(0).getInt("maxCodeLength"), code.getInt("maxCodeLength"));
+		}
+		assertEquals("events.huf", codes.get(1).getString("fileName"));
+
+		long encodedBytes = 0;
+		for (String type : new String[] {"huffman.BlockEncode", "huffman.BlockDecode"}) {
+			List<RecordedEvent> blocks = byType(events, type);
+			assertEquals(numBlocks, blocks.size());
+			long original = 0;
+			long compressed = 0;
+			for (RecordedEvent block : blocks) {
+				boolean encode = type.equals("huffman.BlockEncode");
+				original += block.getLong(encode ? "bytesIn" : "bytesOut");
+				compressed += block.getLong(encode ? "bytesOut" : "bytesIn");
+				assertEquals(block.getLong(encode ? "bytesIn" : "bytesOut"), block.getInt("symbolCount"));
+				assertEquals(codes.get(0).getInt("maxCodeLength"), block.getInt("maxCodeLength"));
+			}
+			assertEquals(length, original);
+			if (encodedBytes > 0) {
+				assertEquals(encodedBytes, compressed);
+			}
+			encodedBytes = compressed;
+			assertEquals(numBlocks * (numBlocks - 1) / 2,
+					     blocks.stream().mapToInt(block -> block.getInt("block")).sum());
+		}
+	}
+
+	/**
+	 * Gets the events of one type.
+	 *
+	 * @param events the events
+	 * @param type the event type
+	 * @return the events of the type
+	 */
+	private List<RecordedEvent> byType(List<RecordedEvent> events, String type) {
+		return events.stream().filter(e -> e.getEventType().getName().equals(type)).collect(Collectors.toList());
+	}
+}
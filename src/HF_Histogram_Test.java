@@ -0,0 +1,264 @@
+/*
+ *  JUnit test for the parallel and sampled histograms in GenWeights.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Histogram_Test {
+	String dir = "data/";
+
+	/**
+	 * Generates the character weights of a file, sequentially or in parallel.
+	 *
+	 * @param fname the name of the file
+	 * @param parallelism the number of threads
+	 * @return the weights
+	 */
+	private int[] charWeights(String fname, int parallelism) {
+		GenWeights gw = new GenWeights(new HuffCompAlerts(null));
+		gw.setParallelism(parallelism);
+		gw.generateWeights(fname);
+		return gw.getWeights().clone();
+	}
+
+	/**
+	 * Generates the byte weights of a file, sequentially or in parallel.
+	 *
+	 * @param fname the name of the file
+	 * @param parallelism the number of threads
+	 * @return the weights
+	 */
+	private int[] byteWeights(String fname, int parallelism) {
+		GenWeights gw = new GenWeights(new HuffCompAlerts(null));
+		gw.setParallelism(parallelism);
+		gw.generateByteWeights(fname);
+		return gw.getWeights().clone();
+	}
+
+	/**
+	 * Test that the parallel character weights match the sequential weights for every
+	 * text file in data/.
+	 */
+	@Test
+	@Order(1)
+	void test_parallel_char_weights() {
+		System.out.println("Test 1: Parallel character weights");
+		for (String name : new File(dir).list()) {
+			if (!name.endsWith(".txt")) continue;
+			System.out.println("   "+name);
+			assertArrayEquals(charWeights(dir+name, 1), charWeights(dir+name, 4));
+		}
+	}
+
+	/**
+	 * Test that the parallel byte weights match the sequential weights for binary data
+	 * spanning several byte ranges, and for a file that is not a multiple of 4 bytes long.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_parallel_byte_weights() throws IOException {
+		System.out.println("Test 2: Parallel byte weights");
+		File binFh = new File("encode/histogram_input.dat");
+		byte[] data = new byte[5 * (1 << 20) + 3];
+		new Random(12).nextBytes(data);
+		Files.write(binFh.toPath(), data);
+		for (int parallelism : new int[] {2, 3, 8}) {
+			assertArrayEquals(byteWeights(binFh.getPath(), 1), byteWeights(binFh.getPath(), parallelism));
+		}
+		binFh.delete();
+	}
+
+	/**
+	 * Test that a text file with non-ASCII characters falls back to the sequential reader.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_parallel_fallback() throws IOException {
+		System.out.println("Test 3: Parallel character weights of a non-ASCII file");
+		File txtFh = new File("encode/histogram_input.txt");
+		Files.writeString(txtFh.toPath(), "abc\u00e9def\u007fghi");
+		assertArrayEquals(charWeights(txtFh.getPath(), 1), charWeights(txtFh.getPath(), 4));
+		txtFh.delete();
+	}
+
+	/**
+	 * Test the sampled byte weights of warAndPeace.txt: every byte value gets a weight, 
+	 * the estimated penalty is small, and the real penalty (measured with the exact 
+	 * weights) is of the same order.
+	 */
+	@Test
+	@Order(4)
+	void test_sampled_weights() {
+		System.out.println("Test 4: Sampled byte weights");
+		String fname = dir+"warAndPeace.txt";
+		GenWeights gw = new GenWeights(new HuffCompAlerts(null));
+		gw.setSampling(16);
+		gw.generateByteWeights(fname);
+		assertTrue(gw.isSampled());
+		int[] sampled = gw.getWeights().clone();
+		int[] exact = byteWeights(fname, 1);
+		long total = 0;
+		for (int i = 0; i < sampled.length; i++) {
+			assertTrue(sampled[i] > 0);
+			total += sampled[i];
+		}
+		assertTrue(total < new File(fname).length() / 2);
+
+		byte[] sampledLengths = codeLengths(sampled);
+		byte[] exactLengths = codeLengths(exact);
+		long sampledBits = 0;
+		long exactBits = 0;
+		for (int i = 0; i < exact.length; i++) {
+			sampledBits += (long) exact[i] * sampledLengths[i];
+			exactBits += (long) exact[i] * exactLengths[i];
+		}
+		double penalty = 100.0 * (sampledBits - exactBits) / exactBits;
+		System.out.printf("   Estimated penalty: %.4f%%, real penalty: %.4f%%%n", gw.getSamplePenalty(), penalty);
+		assertTrue(penalty >= 0 && penalty < 1);
+		assertTrue(gw.getSamplePenalty() >= 0 && gw.getSamplePenalty() < 1);
+
+		gw.setSampling(1000);
+		gw.generateByteWeights(fname);
+		assertFalse(gw.isSampled());
+		assertArrayEquals(exact, gw.getWeights());
+	}
+
+	/**
+	 * Test a sampled .huf encode of a file with a byte value that is not in any sample.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(5)
+	void test_sampled_encode_decode() throws IOException {
+		System.out.println("Test 5: Sampled .huf encode and decode");
+		File textFh = new File("encode/histogram_sampled.txt");
+		File encodeFh = new File("encode/histogram_sampled.huf");
+		File decodeFh = new File("decode/histogram_sampled.txt");
+		byte[] data = Files.readAllBytes(new File(dir+"warAndPeace.txt").toPath());
+		data[data.length / 8] = (byte) 0xFF;
+		Files.write(textFh.toPath(), data);
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		GenWeights gw = new GenWeights(hca);
+		gw.setSampling(4);
+		EncodeDecode enc_dec = new EncodeDecode(gw, hca);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), "", true);
+		assertTrue(gw.isSampled());
+		assertEquals(2, gw.getWeights()[0xFF]);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "", true);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		textFh.delete();
+		encodeFh.delete();
+		decodeFh.delete();
+	}
+
+	/**
+	 * Test that counts too large for the int weights of the tree are scaled down to a
+	 * total that fits, keeping every character that appears, and that counts that fit are
+	 * not changed.
+	 */
+	@Test
+	@Order(6)
+	void test_scale_counts() {
+		System.out.println("Test 6: Byte counts beyond 2^31 are scaled to int weights");
+		GenWeights gw = new GenWeights(new HuffCompAlerts(null));
+		long[] counts = new long[256];
+		counts['a'] = 5_000_000_000L;
+		counts['b'] = 1_000_000_000L;
+		counts['c'] = 3;
+		int[] weights = gw.scaleCounts(counts);
+		long total = 0;
+		for (int weight : weights) {
+			assertTrue(weight >= 0);
+			total += weight;
+		}
+		assertTrue(total <= Integer.MAX_VALUE - 256);
+		assertEquals(5.0, (double) weights['a'] / weights['b'], 1e-6);
+		assertEquals(1, weights['c']);
+		assertEquals(0, weights['d']);
+		codeLengths(weights);
+
+		counts = new long[256];
+		counts['a'] = Integer.MAX_VALUE / 4;
+		counts['b'] = 7;
+		weights = gw.scaleCounts(counts);
+		assertEquals(Integer.MAX_VALUE / 4, weights['a']);
+		assertEquals(7, weights['b']);
+	}
+
+	/**
+	 * Test that the kernels used by the engine (the Vector API kernels, when the JVM runs
+	 * with --add-modules jdk.incubator.vector) count and find uncoded bytes exactly like
+	 * the scalar kernels, at every chunk length around the vector width.
+	 */
+	@Test
+	@Order(7)
+	void test_kernels() {
+		System.out.println("Test 7: The "+HuffKernels.get().getName()+" kernels match the scalar kernels");
+		HuffKernels scalar = HuffKernels.scalar();
+		HuffKernels kernels = HuffKernels.get();
+		Random random = new Random(13);
+		byte[] data = new byte[1000];
+		random.nextBytes(data);
+		for (int len = 0; len <= 100; len++) {
+			int[] expected = new int[scalar.getNumSubHistograms() * 256];
+			int[] actual = new int[kernels.getNumSubHistograms() * 256];
+			scalar.countChunk(data, len, expected);
+			kernels.countChunk(data, len, actual);
+			for (int v = 0; v < 256; v++) {
+				assertEquals(scalar.subCount(expected, v), kernels.subCount(actual, v));
+			}
+		}
+
+		byte[] codeLengths = new byte[256];
+		for (int v = 0; v < 256; v++) {
+			codeLengths[v] = (byte) (1 + v % 8);
+		}
+		assertEquals(data.length, kernels.findUncoded(data, 0, data.length, codeLengths));
+		for (int pos : new int[] {0, 1, 15, 16, 17, 63, 500, 999}) {
+			byte[] copy = data.clone();
+			copy[pos] = (byte) 200;
+			codeLengths[200] = 0;
+			for (int off : new int[] {0, 1, 7}) {
+				int len = copy.length - off;
+				int expected = scalar.findUncoded(copy, off, len, codeLengths);
+				assertEquals(expected, kernels.findUncoded(copy, off, len, codeLengths));
+				byte[] ascii = Arrays.copyOf(codeLengths, 128);
+				assertEquals(scalar.findUncoded(copy, off, len, ascii), kernels.findUncoded(copy, off, len, ascii));
+			}
+			codeLengths[200] = 1;
+		}
+	}
+
+	/**
+	 * Finds the huffman code lengths for the weights.
+	 *
+	 * @param weights the weights
+	 * @return the code lengths
+	 */
+	private byte[] codeLengths(int[] weights) {
+		HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+		huffUtil.setWeights(weights.clone());
+		huffUtil.buildHuffmanTree(true);
+		assertTrue(huffUtil.createCanonicalCodes());
+		return huffUtil.getCodeLengths();
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ *  JUnit test for the JMX engine metrics.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Metrics_Test {
+	HuffCompAlerts hca = new HuffCompAlerts(null);
+	GenWeights gw = new GenWeights(hca);
+	EncodeDecode enc = new EncodeDecode(gw, hca);
+	String src = "data/The Cat in the Hat.txt";
+	String[] outputs = {"encode/metrics.huf", "decode/metrics.txt", "encode/truncated.huf", "encode/empty.txt",
+			            "encode/empty.huf", "decode/empty.txt"};
+
+	@AfterEach
+	void cleanup() {
+		for (String fname : outputs) {
+			new File(fname).delete();
+		}
+	}
+
+	/**
+	 * Test the counters, ratio, cache hit rate and latency histograms after a few encodes
+	 * and decodes, and a cancelled decode.
+	 */
+	@Test
+	@Order(1)
+	void test_counters() {
+		System.out.println("Test 1: Engine metrics counters");
+		HuffEngineMetrics metrics = new HuffEngineMetrics();
+		enc.setMetrics(metrics);
+		long original = new File(src).length();
+		for (int i = 0; i < 3; i++) {
+			enc.encode(src, "encode/metrics.huf", "", true);
+			enc.decode("encode/metrics.huf", "decode/metrics.txt", "", true);
+		}
+		long compressed = new File("encode/metrics.huf").length();
+		assertEquals(3, metrics.getFilesEncoded());
+		assertEquals(3, metrics.getFilesDecoded());
+		assertEquals(0, metrics.getActiveJobs());
+		assertEquals(0, metrics.getFailures());
+		assertEquals(6 * (original + compressed), metrics.getBytesIn() + metrics.getBytesOut());
+		assertEquals((double) original / compressed, metrics.getAverageRatio(), 1e-9);
+		// the encodes build their codebook, the first decode builds the header's, and the others reuse it
+		assertEquals(2.0 / 6, metrics.getCacheHitRate(), 1e-9);
+		assertEquals(3, Arrays.stream(metrics.getEncodeLatencyHistogram()).sum());
+		assertEquals(3, Arrays.stream(metrics.getDecodeLatencyHistogram()).sum());
+		assertTrue(metrics.getDecodeLatencyP50() > 0);
+		assertTrue(metrics.getDecodeLatencyP50() <= metrics.getDecodeLatencyP99());
+
+		enc.setCancelCheck(() -> true);
+		enc.decode("encode/metrics.huf", "decode/metrics.txt", "", true);
+		assertEquals(1, metrics.getFailures());
+		assertEquals(3, metrics.getFilesDecoded());
+	}
+
+	/**
+	 * Test that failures are taken from the errors of the engine: a truncated .huf file
+	 * fails even though part of its output was written, and an empty file encodes and
+	 * decodes to an empty output without a failure.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(2)
+	void test_failures() throws Exception {
+		System.out.println("Test 2: Engine metrics failures");
+		HuffEngineMetrics metrics = new HuffEngineMetrics();
+		enc.setMetrics(metrics);
+		enc.encode(src, "encode/metrics.huf", "", true);
+		byte[] encoded = Files.readAllBytes(Paths.get("encode/metrics.huf"));
+		Files.write(Paths.get("encode/truncated.huf"), Arrays.copyOf(encoded, encoded.length / 2));
+		HuffCompressionResult result = enc.decode("encode/truncated.huf", "decode/metrics.txt", "", true);
+		assertTrue(result.isFailed());
+		assertEquals(1, metrics.getFailures());
+		assertEquals(0, metrics.getFilesDecoded());
+
+		Files.write(Paths.get("encode/empty.txt"), new byte[0]);
+		assertFalse(enc.encode("encode/empty.txt", "encode/empty.huf", "", true).isFailed());
+		result = enc.decode("encode/empty.huf", "decode/empty.txt", "", true);
+		assertFalse(result.isFailed());
+		assertEquals(0, result.getOutputBytes());
+		assertEquals(1, metrics.getFailures());
+		assertEquals(1, metrics.getFilesDecoded());
+		metrics.reset();
+		assertEquals(0, metrics.getBytesIn());
+		assertEquals(0, metrics.getFailures());
+		assertArrayEquals(new long[HuffEngineMetrics.NUM_BUCKETS], metrics.getEncodeLatencyHistogram());
+	}
+
+	/**
+	 * Test the latency buckets and percentiles, and that the shared instance is registered
+	 * with the platform MBean server and follows the engine.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(3)
+	void test_mbean() throws Exception {
+		System.out.println("Test 3: Engine metrics MBean");
+		assertEquals(0, HuffEngineMetrics.bucket(999));
+		assertEquals(1, HuffEngineMetrics.bucket(1000));
+		assertEquals(11, HuffEngineMetrics.bucket(1_500_000));
+		assertEquals(HuffEngineMetrics.NUM_BUCKETS - 1, HuffEngineMetrics.bucket(Long.MAX_VALUE));
+		long[] histogram = new long[HuffEngineMetrics.NUM_BUCKETS];
+		histogram[3] = 98;
+		histogram[10] = 2;
+		assertEquals(0.008, HuffEngineMetrics.percentile(histogram, 50), 1e-9);
+		assertEquals(1.024, HuffEngineMetrics.percentile(histogram, 99), 1e-9);
+
+		HuffEngineMetrics.getInstance();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(HuffEngineMetrics.OBJECT_NAME);
+		assertTrue(server.isRegistered(name));
+		long encoded = (Long) server.getAttribute(name, "FilesEncoded");
+		enc.encode(src, "encode/metrics.huf", "", true);
+		assertEquals(encoded + 1, (Long) server.getAttribute(name, "FilesEncoded"));
+		assertEquals(HuffEngineMetrics.NUM_BUCKETS, ((long[]) server.getAttribute(name, "EncodeLatencyHistogram")).length);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ *  JUnit test for the built-in static models.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Model_Test {
+	String dir = "data/";
+	private File encodeFh = new File("encode/model_test.huf");
+	private File staticFh = new File("encode/model_test_static.huf");
+	private File decodeFh = new File("decode/model_test.txt");
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		encodeFh.delete();
+		staticFh.delete();
+		decodeFh.delete();
+	}
+
+	/**
+	 * Creates an EncodeDecode that encodes with the built-in models.
+	 *
+	 * @param hca the HuffCompAlerts
+	 * @return the EncodeDecode
+	 */
+	private EncodeDecode newEncodeDecode(HuffCompAlerts hca) {
+		EncodeDecode enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		enc_dec.setPretrained(true);
+		return enc_dec;
+	}
+
+	/**
+	 * Test that every model is a complete prefix code for all 256 byte values, and that
+	 * the models match the models trained from data/.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_models() throws IOException {
+		System.out.println("Test 1: Built-in models");
+		assertEquals(2, HuffModelLibrary.getNumModels());
+		assertNull(HuffModelLibrary.getCodeLengths(0));
+		assertNull(HuffModelLibrary.getCodeLengths(HuffModelLibrary.getNumModels() + 1));
+		String[][] training = {null, {"warAndPeace.txt", "Harry Potter and the Sorcerer.txt"},
+				{"Green Eggs and Ham.txt", "The Cat in the Hat.txt", "simple.txt", "simpler.txt"}};
+		for (int modelId = 1; modelId <= HuffModelLibrary.getNumModels(); modelId++) {
+			byte[] lengths = HuffModelLibrary.getCodeLengths(modelId);
+			assertEquals(256, lengths.length);
+			double kraft = 0;
+			for (byte length : lengths) {
+				assertTrue(length > 0 && length <= 24);
+				kraft += Math.pow(2, -length);
+			}
+			assertEquals(1.0, kraft, 1e-9);
+			File[] files = new File[training[modelId].length];
+			for (int i = 0; i < files.length; i++) {
+				files[i] = new File(dir+training[modelId][i]);
+			}
+			assertArrayEquals(HuffModelLibrary.train(files), lengths);
+		}
+	}
+
+	/**
+	 * Test that the fingerprint picks the expected model.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_select_model() throws IOException {
+		System.out.println("Test 2: Model selection");
+		String[] names = {"warAndPeace.txt", "Harry Potter and the Sorcerer.txt", "The Cat in the Hat.txt", "simple.txt"};
+		int[] expected = {HuffModelLibrary.PROSE, HuffModelLibrary.PROSE, HuffModelLibrary.VERSE, HuffModelLibrary.VERSE};
+		for (int i = 0; i < names.length; i++) {
+			byte[] data = Files.readAllBytes(new File(dir+names[i]).toPath());
+			int length = Math.min(data.length, HuffModelLibrary.FINGERPRINT_SIZE);
+			assertEquals(expected[i], HuffModelLibrary.selectModel(data, length), names[i]);
+		}
+	}
+
+	/**
+	 * Test round trip of every text file with the built-in models, and that the small files
+	 * are smaller than with their own (MODE_STATIC) codebook.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_model_encode_decode() throws IOException {
+		System.out.println("Test 3: Encode and decode with the built-in models");
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = newEncodeDecode(hca);
+		EncodeDecode static_enc = new EncodeDecode(new GenWeights(hca), hca);
+		for (String name : new File(dir).list()) {
+			if (!name.endsWith(".txt")) continue;
+			File textFh = new File(dir+name);
+			enc_dec.encode(textFh.getPath(), encodeFh.getPath(), "", true);
+			static_enc.encode(textFh.getPath(), staticFh.getPath(), "", true);
+			System.out.println("   "+name+": model "+encodeFh.length()+" bytes, static "+staticFh.length()+" bytes");
+			enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "", true);
+			assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+			if (textFh.length() < 10000) {
+				assertTrue(encodeFh.length() < staticFh.length());
+			}
+		}
+	}
+
+	/**
+	 * Test round trip of binary data - every byte value has a code in every model.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_model_binary() throws IOException {
+		System.out.println("Test 4: Binary data with the built-in models");
+		File binFh = new File("encode/model_test.dat");
+		byte[] data = new byte[20000];
+		new Random(17).nextBytes(data);
+		Files.write(binFh.toPath(), data);
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = newEncodeDecode(hca);
+		enc_dec.encode(binFh.getPath(), encodeFh.getPath(), "", true);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "", true);
+		assertEquals(-1, Files.mismatch(binFh.toPath(), decodeFh.toPath()));
+		binFh.delete();
+	}
+
+	/**
+	 * Test the MODE_MODEL header, and that a file with an unknown model ID is rejected.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(5)
+	void test_model_header() throws IOException {
+		System.out.println("Test 5: MODE_MODEL header");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		HuffFileHeader header = new HuffFileHeader(123456789L, HuffModelLibrary.VERSE);
+		header.write(bos);
+		assertEquals(header.getSize(), bos.size());
+		ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+		assertTrue(HuffFileHeader.readMagic(bis));
+		HuffFileHeader read = HuffFileHeader.read(bis);
+		assertEquals(HuffFileHeader.MODE_MODEL, read.getMode());
+		assertEquals(123456789L, read.getOriginalLength());
+		assertEquals(HuffModelLibrary.VERSE, read.getModelId());
+
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = newEncodeDecode(hca);
+		enc_dec.encode(dir+"simple.txt", encodeFh.getPath(), "", true);
+		byte[] data = Files.readAllBytes(encodeFh.toPath());
+		data[15] = 99;
+		Files.write(encodeFh.toPath(), data);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "", true);
+		assertTrue(hca.getLastAlertType().contains(HuffAlerts.INPUT.name()));
+		assertFalse(decodeFh.exists() && decodeFh.length() > 0);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ *  JUnit test for the progress reporting and cancelling of EncodeDecode.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Progress_Test {
+	HuffCompAlerts hca = new HuffCompAlerts(null);
+	GenWeights gw = new GenWeights(hca);
+	EncodeDecode enc = new EncodeDecode(gw, hca);
+	String src = "data/warAndPeace.txt";
+	String[] outputs = {"weights/progress.csv", "encode/progress.bin", "encode/progress.huf",
+			            "encode/progress2.bin", "encode/progress2.huf", "decode/progress.txt"};
+
+	@BeforeEach
+	void saveWeights() {
+		gw.generateWeights(src);
+		gw.saveWeightsToFile("weights/progress.csv");
+	}
+
+	@AfterEach
+	void cleanup() {
+		for (String fname : outputs) {
+			new File(fname).delete();
+		}
+	}
+
+	/**
+	 * Test that the listener follows an encode and a decode up to the size of the input,
+	 * in increasing steps, and that the outputs are unchanged.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_progress() throws IOException {
+		System.out.println("Test 1: Progress of the encode and decode");
+		AtomicLong last = new AtomicLong();
+		AtomicLong lastTotal = new AtomicLong();
+		enc.setProgressListener((done, total) -> {
+			assertTrue(done > last.get());
+			last.set(done);
+			lastTotal.set(total);
+		});
+		for (String bin : new String[] {"encode/progress.bin", "encode/progress.huf"}) {
+			last.set(0);
+			enc.encode(src, bin, "weights/progress.csv", true);
+			assertEquals(new File(src).length(), last.get());
+			assertEquals(new File(src).length(), lastTotal.get());
+
+			last.set(0);
+			enc.decode(bin, "decode/progress.txt", "weights/progress.csv", true);
+			assertEquals(new File(bin).length(), last.get());
+			assertEquals(new File(bin).length(), lastTotal.get());
+			assertArrayEquals(Files.readAllBytes(new File(src).toPath()),
+					          Files.readAllBytes(new File("decode/progress.txt").toPath()));
+			new File("decode/progress.txt").delete();
+		}
+	}
+
+	/**
+	 * Test that cancelling an encode or a decode part way stops the engine, removes the
+	 * partial output file and raises no alert.
+	 */
+	@Test
+	@Order(2)
+	void test_cancel() {
+		System.out.println("Test 2: Cancel the encode and decode");
+		enc.encode(src, "encode/progress.bin", "weights/progress.csv", true);
+		enc.encode(src, "encode/progress.huf", "weights/progress.csv", true);
+
+		AtomicBoolean cancelled = new AtomicBoolean();
+		enc.setCancelCheck(cancelled::get);
+		enc.setProgressListener((done, total) -> cancelled.set(done > total / 4));
+		hca.resetLastAlertType();
+		for (String bin : new String[] {"encode/progress.bin", "encode/progress.huf"}) {
+			cancelled.set(false);
+			enc.decode(bin, "decode/progress.txt", "weights/progress.csv", true);
+			assertTrue(cancelled.get());
+			assertFalse(new File("decode/progress.txt").exists());
+		}
+		String[] encoded = {"encode/progress2.bin", "encode/progress2.huf"};
+		for (String bin : encoded) {
+			cancelled.set(false);
+			enc.encode(src, bin, "weights/progress.csv", true);
+			assertTrue(cancelled.get());
+			assertFalse(new File(bin).exists());
+		}
+		enc.setAdaptive(true);
+		cancelled.set(false);
+		enc.encode(src, encoded[1], "", true);
+		assertTrue(cancelled.get());
+		assertFalse(new File(encoded[1]).exists());
+		// only the alerts for the output files that don't exist yet
+		assertEquals(5, hca.getLastAlertType().size());
+	}
+}
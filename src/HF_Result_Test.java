@@ -0,0 +1,86 @@
+/*
+ *  JUnit test for the HuffCompressionResult returned by EncodeDecode.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Result_Test {
+	HuffCompAlerts hca = new HuffCompAlerts(null);
+	GenWeights gw = new GenWeights(hca);
+	EncodeDecode enc = new EncodeDecode(gw, hca);
+	String src = "data/Harry Potter and the Sorcerer.txt";
+	String[] outputs = {"weights/result.csv", "encode/result.bin", "encode/result.huf", "decode/result.txt"};
+
+	@AfterEach
+	void cleanup() {
+		for (String fname : outputs) {
+			new File(fname).delete();
+		}
+	}
+
+	/**
+	 * Test the phases, sizes, ratio and bits per symbol of a .bin encode and decode.
+	 */
+	@Test
+	@Order(1)
+	void test_bin_result() {
+		System.out.println("Test 1: Result of a .bin encode and decode");
+		gw.generateWeights(src);
+		gw.saveWeightsToFile("weights/result.csv");
+		HuffCompressionResult encoded = enc.encode(src, "encode/result.bin", "weights/result.csv", true);
+		System.out.println(encoded);
+		assertTrue(encoded.isEncode());
+		assertTrue(encoded.hasOutput());
+		assertFalse(encoded.isCodebookCached());
+		assertEquals(List.of(HuffCompressionResult.READ_WEIGHTS, HuffCompressionResult.TREE,
+				             HuffCompressionResult.CODES, HuffCompressionResult.ENCODE),
+				     List.copyOf(encoded.getPhases().keySet()));
+		assertEquals(new File(src).length(), encoded.getInputBytes());
+		assertEquals(new File("encode/result.bin").length(), encoded.getOutputBytes());
+		assertEquals(8.0 * encoded.getOutputBytes() / encoded.getInputBytes(), encoded.getBitsPerSymbol(), 1e-9);
+		assertTrue(encoded.getRatio() > 1.5);
+		long phaseNanos = encoded.getPhases().values().stream().mapToLong(Long::longValue).sum();
+		assertTrue(phaseNanos > 0 && phaseNanos <= encoded.getTotalNanos());
+
+		// the second use of the weights file reuses the cached codebook
+		HuffCompressionResult decoded = enc.decode("encode/result.bin", "decode/result.txt", "weights/result.csv", true);
+		assertFalse(decoded.isEncode());
+		assertTrue(decoded.isCodebookCached());
+		assertEquals(List.of(HuffCompressionResult.DECODE), List.copyOf(decoded.getPhases().keySet()));
+		assertEquals(encoded.getInputBytes(), decoded.getOriginalBytes());
+		assertEquals(encoded.getBitsPerSymbol(), decoded.getBitsPerSymbol(), 1e-9);
+		assertTrue(decoded.formatPhases().contains("cached codebook"));
+	}
+
+	/**
+	 * Test the phases of a .huf encode with generated weights, and of the decode that
+	 * rebuilds the codes from the header.
+	 */
+	@Test
+	@Order(2)
+	void test_huf_result() {
+		System.out.println("Test 2: Result of a .huf encode and decode");
+		enc.setCodebookCache(null);
+		HuffCompressionResult encoded = enc.encode(src, "encode/result.huf", "", true);
+		assertEquals(List.of(HuffCompressionResult.WEIGHTS, HuffCompressionResult.TREE,
+				             HuffCompressionResult.CODES, HuffCompressionResult.ENCODE),
+				     List.copyOf(encoded.getPhases().keySet()));
+		HuffCompressionResult decoded = enc.decode("encode/result.huf", "decode/result.txt", "", true);
+		assertEquals(List.of(HuffCompressionResult.CODES, HuffCompressionResult.DECODE),
+				     List.copyOf(decoded.getPhases().keySet()));
+		assertEquals(new File(src).length(), decoded.getOutputBytes());
+		assertTrue(Arrays.stream(decoded.toString().split("\n")).anyMatch(line -> line.contains("total")));
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ *  JUnit test for the compression server and client.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Server_Test {
+	String dir = "data/";
+
+	/**
+	 * Reads a file in data/.
+	 *
+	 * @param fname the name of the file
+	 * @return the contents
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] readData(String fname) throws IOException {
+		return Files.readAllBytes(new File(dir+fname).toPath());
+	}
+
+	/**
+	 * Starts a server on an ephemeral loopback port.
+	 *
+	 * @param workers the number of workers
+	 * @param queueSize the queue size
+	 * @param maxInFlight the in flight limit
+	 * @return the server
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private HuffCompServer startServer(int workers, int queueSize, int maxInFlight) throws IOException {
+		HuffCompServer server = new HuffCompServer(HuffCompServer.parseAddress("0"), workers, queueSize, maxInFlight);
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Test compress and decompress round trips over TCP, with each compress mode, and the
+	 * errors for a corrupt payload and an unknown operation.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(1)
+	void test_round_trip() throws Exception {
+		System.out.println("Test 1: Compress and decompress over TCP");
+		try (HuffCompServer server = startServer(2, 4, 4);
+			 HuffCompClient client = new HuffCompClient(server.getLocalAddress())) {
+			assertTrue(server.getLocalAddress() instanceof InetSocketAddress);
+			for (String fname : new String[] {"The Cat in the Hat.txt", "simple.txt", "warAndPeace.txt"}) {
+				byte[] data = readData(fname);
+				for (byte flags : new byte[] {0, HuffCompServer.FLAG_MODEL, HuffCompServer.FLAG_ADAPTIVE}) {
+					byte[] compressed = client.compress(data, flags);
+					assertArrayEquals(data, client.decompress(compressed));
+				}
+			}
+
+			byte[] compressed = client.compress(readData("The Cat in the Hat.txt"), (byte) 0);
+			IOException e = assertThrows(IOException.class,
+					() -> client.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+			assertTrue(e.getMessage().contains("Decoded"));
+			client.send(99, (byte) 7, (byte) 0, new byte[10]);
+			HuffCompClient.Response response = client.receive();
+			assertFalse(response.isOk());
+			assertEquals(99, response.id);
+			assertTrue(response.getError().contains("Unknown operation"));
+			byte[] adaptive = client.compress(readData("The Cat in the Hat.txt"), HuffCompServer.FLAG_ADAPTIVE);
+			assertThrows(IOException.class, () -> client.decompress(Arrays.copyOf(adaptive, adaptive.length / 2)));
+			assertEquals(3, server.getErrors());
+
+			// the connection still works after the errors
+			assertArrayEquals(readData("simpler.txt"), client.decompress(client.compress(readData("simpler.txt"), (byte) 0)));
+		}
+	}
+
+	/**
+	 * Test pipelined requests on several connections, with a queue and in flight limit
+	 * small enough that the server has to apply backpressure.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(2)
+	void test_pipelining() throws Exception {
+		System.out.println("Test 2: Pipelined requests with backpressure");
+		byte[][] texts = {readData("simple.txt"), readData("Green Eggs and Ham.txt"), readData("The Cat in the Hat.txt")};
+		try (HuffCompServer server = startServer(1, 1, 2)) {
+			SocketAddress address = server.getLocalAddress();
+			int numRequests = 30;
+			HuffCompClient[] clients = new HuffCompClient[3];
+			for (int c = 0; c < clients.length; c++) {
+				clients[c] = new HuffCompClient(address);
+				for (int id = 0; id < numRequests; id++) {
+					clients[c].send(id, HuffCompServer.OP_COMPRESS, (byte) 0, texts[(id + c) % texts.length]);
+				}
+			}
+			for (int c = 0; c < clients.length; c++) {
+				byte[][] compressed = new byte[numRequests][];
+				for (int i = 0; i < numRequests; i++) {
+					HuffCompClient.Response response = clients[c].receive();
+					assertTrue(response.isOk());
+					assertEquals(null, compressed[response.id]);
+					compressed[response.id] = response.payload;
+				}
+				for (int id = 0; id < numRequests; id++) {
+					assertArrayEquals(texts[(id + c) % texts.length], clients[c].decompress(compressed[id]));
+				}
+				clients[c].close();
+			}
+			assertEquals(2L * clients.length * numRequests, server.getRequests());
+			assertEquals(0, server.getErrors());
+		}
+
+		// the load generator's connection loop
+		try (HuffCompServer server = startServer(2, 2, 4)) {
+			long[] latencies = new long[50];
+			HuffCompClient client = new HuffCompClient(server.getLocalAddress());
+			byte[] compressed = client.compress(texts[1], (byte) 0);
+			client.close();
+			HuffCompClient.runConnection(server.getLocalAddress(), latencies.length, 8, (byte) 0,
+					new byte[][] {texts[1], compressed}, new byte[] {HuffCompServer.OP_COMPRESS, HuffCompServer.OP_DECOMPRESS},
+					latencies);
+			Arrays.sort(latencies);
+			assertTrue(latencies[0] > 0);
+			assertTrue(HuffCompClient.percentile(latencies, 50) <= HuffCompClient.percentile(latencies, 99));
+		}
+	}
+
+	/**
+	 * Test a Unix-domain socket, and that a frame larger than MAX_PAYLOAD is rejected and
+	 * the connection closed.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(3)
+	void test_unix_socket() throws Exception {
+		System.out.println("Test 3: Unix-domain socket");
+		File socketFh = new File("encode/server_test.sock");
+		socketFh.delete();
+		SocketAddress address = HuffCompServer.parseAddress("unix:"+socketFh.getPath());
+		assertTrue(address instanceof UnixDomainSocketAddress);
+		try (HuffCompServer server = new HuffCompServer(address, 1)) {
+			server.start();
+			byte[] data = readData("Green Eggs and Ham.txt");
+			try (HuffCompClient client = new HuffCompClient(address)) {
+				assertArrayEquals(data, client.decompress(client.compress(data, HuffCompServer.FLAG_MODEL)));
+			}
+			try (SocketChannel channel = HuffCompServer.openChannel(address)) {
+				channel.connect(address);
+				ByteBuffer frame = ByteBuffer.allocate(HuffCompServer.REQUEST_HEADER_SIZE);
+				frame.put(HuffCompServer.OP_COMPRESS).put((byte) 0).putInt(5).putInt(HuffCompServer.MAX_PAYLOAD + 1);
+				frame.flip();
+				channel.write(frame);
+				ByteBuffer response = ByteBuffer.allocate(1024);
+				while (channel.read(response) >= 0) {
+					// read until the server closes the connection
+				}
+				assertEquals(HuffCompServer.STATUS_ERROR, response.get(0));
+				assertEquals(5, response.getInt(1));
+			}
+		}
+		assertFalse(socketFh.exists());
+	}
+
+	/**
+	 * Test an empty payload in each compress mode, a .huf file encoded by EncodeDecode, and
+	 * the error for a payload that is not a .huf container.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(4)
+	void test_payloads() throws Exception {
+		System.out.println("Test 4: Empty, file encoded and invalid payloads");
+		try (HuffCompServer server = startServer(1, 1, 1);
+			 HuffCompClient client = new HuffCompClient(server.getLocalAddress())) {
+			for (byte flags : new byte[] {0, HuffCompServer.FLAG_MODEL, HuffCompServer.FLAG_ADAPTIVE}) {
+				byte[] compressed = client.compress(new byte[0], flags);
+				assertArrayEquals(new byte[0], client.decompress(compressed));
+			}
+
+			HuffCompAlerts hca = new HuffCompAlerts(null);
+			File hufFh = new File("encode/server_test.huf");
+			new EncodeDecode(new GenWeights(hca), hca).encode(dir+"Green Eggs and Ham.txt", hufFh.getPath(), "", true);
+			try {
+				assertArrayEquals(readData("Green Eggs and Ham.txt"), client.decompress(Files.readAllBytes(hufFh.toPath())));
+			} finally {
+				hufFh.delete();
+			}
+
+			IOException e = assertThrows(IOException.class, () -> client.decompress(readData("simple.txt")));
+			assertTrue(e.getMessage().contains("Not a "+HuffFileHeader.HUF_EXT+" payload"));
+			assertEquals(1, server.getErrors());
+		}
+	}
+
+	/**
+	 * Test that each request is recorded in the engine metrics, and that a decompress whose
+	 * result would be larger than MAX_RESULT fails, from the header of a model container
+	 * and from the data of a stream container.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(5)
+	void test_limits_and_metrics() throws Exception {
+		System.out.println("Test 5: Result limit and engine metrics");
+		HuffEngineMetrics metrics = new HuffEngineMetrics();
+		try (HuffCompServer server = startServer(1, 1, 1);
+			 HuffCompClient client = new HuffCompClient(server.getLocalAddress())) {
+			server.setMetrics(metrics);
+			byte[] data = readData("The Cat in the Hat.txt");
+			byte[] compressed = client.compress(data, HuffCompServer.FLAG_MODEL);
+			assertArrayEquals(data, client.decompress(compressed));
+			assertEquals(1, metrics.getFilesEncoded());
+			assertEquals(1, metrics.getFilesDecoded());
+			assertEquals(2L * (data.length + compressed.length), metrics.getBytesIn() + metrics.getBytesOut());
+			assertEquals(0.5, metrics.getCacheHitRate(), 1e-9);
+
+			ByteArrayOutputStream model = new ByteArrayOutputStream();
+			new HuffFileHeader(HuffCompServer.MAX_RESULT + 1L, HuffModelLibrary.selectModel(data, data.length)).write(model);
+			model.write(new byte[16]);
+			IOException e = assertThrows(IOException.class, () -> client.decompress(model.toByteArray()));
+			assertTrue(e.getMessage().contains("larger than"));
+
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			try (HuffmanOutputStream hos = new HuffmanOutputStream(stream, HuffmanOutputStream.MAX_BLOCK_SIZE)) {
+				byte[] zeros = new byte[HuffmanOutputStream.MAX_BLOCK_SIZE];
+				for (int i = 0; i <= HuffCompServer.MAX_RESULT / zeros.length; i++) {
+					hos.write(zeros);
+				}
+			}
+			e = assertThrows(IOException.class, () -> client.decompress(stream.toByteArray()));
+			assertTrue(e.getMessage().contains("larger than"));
+			assertEquals(2, metrics.getFailures());
+			assertEquals(0, metrics.getActiveJobs());
+		}
+	}
+}
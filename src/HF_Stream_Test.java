@@ -0,0 +1,260 @@
+/*
+ *  JUnit test for HuffmanOutputStream and HuffmanInputStream.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_Stream_Test {
+
+	/**
+	 * Compresses the data with a HuffmanOutputStream.
+	 *
+	 * @param data the data
+	 * @param blockSize the block size
+	 * @return the compressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] compress(byte[] data, int blockSize) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (HuffmanOutputStream hos = new HuffmanOutputStream(bos, blockSize)) {
+			hos.write(data);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Decompresses the data with a HuffmanInputStream.
+	 *
+	 * @param data the compressed data
+	 * @return the decompressed data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] decompress(byte[] data) throws IOException {
+		try (HuffmanInputStream his = new HuffmanInputStream(new ByteArrayInputStream(data))) {
+			return his.readAllBytes();
+		}
+	}
+
+	/**
+	 * Test round trip of a text file with the default block size.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(1)
+	void test_stream_WAP() throws IOException {
+		System.out.println("Test 1: Stream round trip of warAndPeace.txt");
+		byte[] data = Files.readAllBytes(new File("data/warAndPeace.txt").toPath());
+		byte[] comp = compress(data, HuffmanOutputStream.DEFAULT_BLOCK_SIZE);
+		System.out.println("   Compressed "+data.length+" bytes to "+comp.length);
+		assertTrue(comp.length < data.length * 0.6);
+		assertArrayEquals(data, decompress(comp));
+	}
+
+	/**
+	 * Test round trip of binary data (all 256 byte values) with small blocks.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_stream_binary() throws IOException {
+		System.out.println("Test 2: Stream round trip of binary data");
+		byte[] data = new byte[100000];
+		new Random(42).nextBytes(data);
+		assertArrayEquals(data, decompress(compress(data, 4096)));
+	}
+
+	/**
+	 * Test the edge cases: empty stream, one byte, and a block with a single character.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_stream_edge_cases() throws IOException {
+		System.out.println("Test 3: Stream edge cases");
+		assertArrayEquals(new byte[0], decompress(compress(new byte[0], 16)));
+		assertArrayEquals(new byte[] {7}, decompress(compress(new byte[] {7}, 16)));
+		byte[] same = new byte[1000];
+		assertArrayEquals(same, decompress(compress(same, 100)));
+	}
+
+	/**
+	 * Test that byte-at-a-time reads and writes match bulk reads and writes.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_stream_single_bytes() throws IOException {
+		System.out.println("Test 4: Stream single byte reads and writes");
+		byte[] data = Files.readAllBytes(new File("data/The Cat in the Hat.txt").toPath());
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		HuffmanOutputStream hos = new HuffmanOutputStream(bos, 1000);
+		for (byte b : data) {
+			hos.write(b);
+		}
+		hos.finish();
+		assertArrayEquals(compress(data, 1000), bos.toByteArray());
+
+		HuffmanInputStream his = new HuffmanInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		for (byte b : data) {
+			assertEquals(b & 0xFF, his.read());
+		}
+		assertEquals(-1, his.read());
+		his.close();
+	}
+
+	/**
+	 * Test that EncodeDecode.decode can decode a stream written to a .huf file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(5)
+	void test_stream_decode_file() throws IOException {
+		System.out.println("Test 5: EncodeDecode.decode of a stream .huf file");
+		File textFh = new File("data/Green Eggs and Ham.txt");
+		File encodeFh = new File("encode/Green Eggs and Ham_stream.huf");
+		File decodeFh = new File("decode/Green Eggs and Ham_stream.txt");
+		try (HuffmanOutputStream hos = new HuffmanOutputStream(new FileOutputStream(encodeFh), 512)) {
+			hos.write(Files.readAllBytes(textFh.toPath()));
+		}
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), "weights/", true);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+		encodeFh.delete();
+		decodeFh.delete();
+	}
+
+	/**
+	 * Test that the bulk code packer (BitWriter.writeCodes) writes the same bits as
+	 * writeBits, for codes up to 32 bits long, and stops at the first byte with no code.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(6)
+	void test_write_codes() throws IOException {
+		System.out.println("Test 6: Bulk code packing");
+		Random rand = new Random(13);
+		int[] values = new int[256];
+		byte[] lengths = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			lengths[i] = (byte) (1 + rand.nextInt(32));
+			values[i] = (int) (rand.nextLong() & ((1L << lengths[i]) - 1));
+		}
+		byte[] data = new byte[100003];
+		rand.nextBytes(data);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		BitWriter bitWriter = new BitWriter(expected);
+		for (byte b : data) {
+			bitWriter.writeBits(values[b & 0xFF], lengths[b & 0xFF]);
+		}
+		bitWriter.flush();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		bitWriter = new BitWriter(actual);
+		assertEquals(3, bitWriter.writeCodes(data, 0, 3, values, lengths));
+		assertEquals(data.length, bitWriter.writeCodes(data, 3, data.length - 3, values, lengths));
+		bitWriter.flush();
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+		// 8 bit codes that exactly fill the BitWriter's 8192 byte buffer
+		int bufferSize = 8192;
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			values[i] = i;
+			bytes[i] = 8;
+		}
+		actual = new ByteArrayOutputStream();
+		bitWriter = new BitWriter(actual);
+		assertEquals(bufferSize, bitWriter.writeCodes(data, 0, bufferSize, values, bytes));
+		bitWriter.writeBits(5, 3);
+		bitWriter.flush();
+		assertEquals(bufferSize + 1, actual.size());
+		assertEquals(data[bufferSize - 1], actual.toByteArray()[bufferSize - 1]);
+
+		lengths[data[500] & 0xFF] = 0;
+		bitWriter = new BitWriter(new ByteArrayOutputStream());
+		int stop = bitWriter.writeCodes(data, 0, data.length, values, lengths);
+		assertTrue(stop <= 500);
+		assertEquals(0, lengths[data[stop] & 0xFF]);
+	}
+
+	/**
+	 * Test a HuffmanOutputStream and a HuffmanInputStream over a pipe: a flushed message can be read before the next one is
+	 * written (the reader only waits for bytes that were sent), and the bytes that follow
+	 * the end of the compressed data are left in the pipe.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@Order(7)
+	void test_stream_pipe() throws Exception {
+		System.out.println("Test 7: Stream over a pipe with flushes");
+		byte[] text = Files.readAllBytes(new File("data/warAndPeace.txt").toPath());
+		byte[] first = Arrays.copyOfRange(text, 0, 1000);
+		byte[] second = Arrays.copyOfRange(text, 1000, 3000);
+		byte[] tail = "tail".getBytes(StandardCharsets.US_ASCII);
+		PipedInputStream pipeIn = new PipedInputStream(1 << 16);
+		PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+		CountDownLatch firstRead = new CountDownLatch(1);
+		AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+		Thread writer = new Thread(() -> {
+			try {
+				HuffmanOutputStream out = new HuffmanOutputStream(pipeOut, 4096);
+				out.write(first);
+				out.flush();
+				if (firstRead.await(10, TimeUnit.SECONDS)) {
+					out.write(second);
+					out.finish();
+				}
+				pipeOut.write(tail);
+				pipeOut.close();
+			} catch (Exception e) {
+				error.set(e);
+			}
+		});
+		writer.start();
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			HuffmanInputStream in = new HuffmanInputStream(pipeIn);
+			byte[] buf = new byte[8192];
+			assertEquals(first.length, in.read(buf));
+			assertArrayEquals(first, Arrays.copyOf(buf, first.length));
+			firstRead.countDown();
+			assertArrayEquals(second, in.readNBytes(second.length));
+			assertEquals(-1, in.read());
+			assertArrayEquals(tail, pipeIn.readAllBytes());
+		});
+		writer.join();
+		assertNull(error.get());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ *  JUnit test for the binary weights file.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+@TestMethodOrder(OrderAnnotation.class)
+class HF_WeightsFile_Test {
+	String dir = "data/";
+	private File csvFh = new File("weights/weightsfile_test.csv");
+	private File binFh = new File("weights/weightsfile_test.hwt");
+	private File encodeFh = new File("encode/weightsfile_test.bin");
+	private File decodeFh = new File("decode/weightsfile_test.txt");
+
+	/**
+	 * Removes the output files created by each test.
+	 *
+	 * @throws Exception the exception
+	 */
+	@AfterEach
+	void tearDown() throws Exception {
+		csvFh.delete();
+		binFh.delete();
+		encodeFh.delete();
+		decodeFh.delete();
+	}
+
+	/**
+	 * Generates the character weights of a file in data/ and writes them to the weights file.
+	 *
+	 * @param fname the name of the text file in data/
+	 * @param outf the weights file to write
+	 * @return the GenWeights instance
+	 */
+	private GenWeights writeWeights(String fname, File outf) {
+		GenWeights gw = new GenWeights(new HuffCompAlerts(null));
+		gw.generateWeights(dir+fname);
+		gw.writeOutputFile(outf);
+		return gw;
+	}
+
+	/**
+	 * Test that the binary weights file reads back the same weights as the CSV file, and is
+	 * much smaller.
+	 */
+	@Test
+	@Order(1)
+	void test_binary_matches_csv() {
+		System.out.println("Test 1: Binary weights file matches the CSV weights file");
+		HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+		for (String name : new File(dir).list()) {
+			if (!name.endsWith(".txt")) continue;
+			GenWeights gw = writeWeights(name, csvFh);
+			gw.writeOutputFile(binFh);
+			int[] csv = huffUtil.readFreqWeights(csvFh).clone();
+			int[] bin = huffUtil.readFreqWeights(binFh).clone();
+			assertArrayEquals(gw.getWeights(), csv);
+			assertArrayEquals(csv, bin);
+			System.out.println("   "+name+": CSV "+csvFh.length()+" bytes, binary "+binFh.length()+" bytes");
+			assertTrue(binFh.length() * 3 < csvFh.length());
+		}
+	}
+
+	/**
+	 * Test the edge cases of the varint weights: 0, the largest int, and the byte alphabet.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(2)
+	void test_varint_weights() throws IOException {
+		System.out.println("Test 2: Varint weights");
+		int[] weights = new int[256];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = (i % 2 == 0) ? (Integer.MAX_VALUE >>> (i % 31)) : i;
+		}
+		weights[0] = 0;
+		weights[255] = Integer.MAX_VALUE;
+		assertArrayEquals(weights, HuffWeightsFile.fromBytes(HuffWeightsFile.toBytes(weights)));
+		assertArrayEquals(new int[0], HuffWeightsFile.fromBytes(HuffWeightsFile.toBytes(new int[0])));
+	}
+
+	/**
+	 * Test that corrupt or truncated binary weights files are rejected.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(3)
+	void test_corrupt_binary() throws IOException {
+		System.out.println("Test 3: Corrupt binary weights files");
+		byte[] data = HuffWeightsFile.toBytes(new int[] {5, 300, 70000, 0});
+		for (int i = 0; i < data.length; i++) {
+			byte[] bad = data.clone();
+			bad[i] ^= 0x10;
+			assertThrows(IOException.class, () -> HuffWeightsFile.fromBytes(bad));
+		}
+		for (int len = 0; len < data.length; len++) {
+			byte[] bad = new byte[len];
+			System.arraycopy(data, 0, bad, 0, len);
+			assertThrows(IOException.class, () -> HuffWeightsFile.fromBytes(bad));
+		}
+
+		Files.write(binFh.toPath(), new byte[] {'1', ',', '2', ',', '\n'});
+		assertNull(new HuffmanCompressionUtilities().readFreqWeights(binFh));
+	}
+
+	/**
+	 * Test that encoding with the binary weights file gives the same .bin file as the CSV
+	 * weights file, that it decodes, and that a corrupt binary weights file is reported.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	@Order(4)
+	void test_encode_decode_binary() throws IOException {
+		System.out.println("Test 4: Encode and decode with a binary weights file");
+		File textFh = new File(dir+"Green Eggs and Ham.txt");
+		GenWeights gw = writeWeights(textFh.getName(), csvFh);
+		gw.writeOutputFile(binFh);
+		HuffCompAlerts hca = new HuffCompAlerts(null);
+		EncodeDecode enc_dec = new EncodeDecode(new GenWeights(hca), hca);
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), csvFh.getPath(), true);
+		byte[] csvEncoded = Files.readAllBytes(encodeFh.toPath());
+		enc_dec.encode(textFh.getPath(), encodeFh.getPath(), binFh.getPath(), true);
+		assertArrayEquals(csvEncoded, Files.readAllBytes(encodeFh.toPath()));
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), binFh.getPath(), true);
+		assertEquals(-1, Files.mismatch(textFh.toPath(), decodeFh.toPath()));
+
+		decodeFh.delete();
+		hca.resetLastAlertType();
+		byte[] data = Files.readAllBytes(binFh.toPath());
+		data[data.length / 2] ^= 1;
+		Files.write(binFh.toPath(), data);
+		enc_dec.decode(encodeFh.getPath(), decodeFh.getPath(), binFh.getPath(), true);
+		assertTrue(hca.getLastAlertType().contains(HuffAlerts.INPUT.name()));
+		assertFalse(decodeFh.exists());
+	}
+}
@@ -0,0 +1,317 @@
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class HuffBatchEngine. Runs one operation (weights, encode or decode) on every file
+ * of a batch, concurrently. Batches of many small files are dominated by the latency of
+ * opening, checking and closing files rather than by the CPU, so the engine can run every
+ * file on its own virtual thread (Java 21 and later): a thread blocked on the file system
+ * then costs almost nothing, and the number of files in flight is no longer limited by
+ * the size of a thread pool. The virtual thread executor is looked up by reflection, so
+ * the engine still compiles and runs on Java 17, where it falls back to a fixed pool of
+ * platform threads.
+ *
+ * As the number of threads is no longer a limit, a semaphore limits the number of open
+ * files: each file holds FILES_PER_JOB permits (the input, the output and the weights
+ * file) while it is processed.
+ *
+ * The outcome of each file is recorded in a BatchResult. A file fails if the operation
+ * throws, if the engine records an error in its HuffCompressionResult, or if no output
+ * file is written - an empty output file is a success (the decode of an empty original).
+ * The alerts raised by the engine for a file are collected (see CollectingAlerts), not
+ * shown, and only become part of the error if the file fails.
+ */
+public class HuffBatchEngine {
+
+	/** The number of open file permits held by each file while it is processed. */
+	static final int FILES_PER_JOB = 3;
+
+	/** The default maximum number of open files. */
+	static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+	/**
+	 * The Interface FileOperation. The work done for one file.
+	 */
+	interface FileOperation {
+
+		/**
+		 * Processes one file.
+		 *
+		 * @param input the input file
+		 * @param output the output file
+		 * @param hca the alerts for this file
+		 * @return the result of the engine; null if the operation does not use the engine
+		 * @throws Exception if the file cannot be processed
+		 */
+		HuffCompressionResult apply(File input, File output, HuffCompAlerts hca) throws Exception;
+	}
+
+	/**
+	 * The Class CollectingAlerts. Collects the alerts of one file instead of showing them,
+	 * so the alerts of concurrent files are not interleaved and only the alerts of a file
+	 * that failed are reported.
+	 */
+	static class CollectingAlerts extends HuffCompAlerts {
+
+		/** The alerts, as "type: hdr message". */
+		private List<String> messages = new ArrayList<String>();
+
+		/**
+		 * Instantiates a new collector.
+		 */
+		CollectingAlerts() {
+			super(null);
+		}
+
+		@Override
+		boolean issueAlert(HuffAlerts alert, String hdr, String message) {
+			messages.add(alert.name()+": "+hdr+message);
+			return true;
+		}
+
+		/**
+		 * Gets the collected alerts.
+		 *
+		 * @return the alerts
+		 */
+		List<String> getMessages() {
+			return messages;
+		}
+	}
+
+	/**
+	 * The Class Result. The outcome of one file.
+	 */
+	static class Result {
+
+		/** The input file. */
+		File input;
+
+		/** The output file. */
+		File output;
+
+		/** The size of the input file. */
+		long inBytes;
+
+		/** The size of the output file. */
+		long outBytes;
+
+		/** The time taken, in nanoseconds. */
+		long nanos;
+
+		/** The error, or null if the file succeeded. */
+		String error;
+
+		/** The alerts raised for the file, including those of a file that succeeded. */
+		List<String> alerts;
+
+		/** The result of the engine, or null if the operation does not use the engine. */
+		HuffCompressionResult compression;
+	}
+
+	/**
+	 * The Class BatchResult. The outcome of a batch. The totals are updated concurrently
+	 * as the files complete.
+	 */
+	static class BatchResult {
+
+		/** The result of each file, in the order of the jobs. */
+		final Result[] results;
+
+		/** The results of the files that failed, in the order they completed. */
+		final ConcurrentLinkedQueue<Result> failures = new ConcurrentLinkedQueue<Result>();
+
+		/** The total size of the input files that succeeded. */
+		final LongAdder inBytes = new LongAdder();
+
+		/** The total size of the output files that succeeded. */
+		final LongAdder outBytes = new LongAdder();
+
+		/** The largest number of files processed at the same time. */
+		final AtomicInteger peakActive = new AtomicInteger();
+
+		/** The time taken by the batch, in nanoseconds. */
+		long nanos;
+
+		/**
+		 * Instantiates a new batch result.
+		 *
+		 * @param numJobs the number of files
+		 */
+		BatchResult(int numJobs) {
+			results = new Result[numJobs];
+		}
+
+		/**
+		 * Checks whether every file succeeded.
+		 *
+		 * @return true, if no file failed
+		 */
+		boolean succeeded() {
+			return failures.isEmpty();
+		}
+	}
+
+	/** The number of platform threads, if virtual threads are not used. */
+	private int workers;
+
+	/** If true, run each file on its own virtual thread, when available. */
+	private boolean virtualThreads;
+
+	/** The maximum number of open files. */
+	private int maxOpenFiles;
+
+	/**
+	 * Instantiates a new batch engine.
+	 *
+	 * @param workers the number of platform threads, if virtual threads are not used or not available
+	 * @param virtualThreads true to run each file on its own virtual thread
+	 * @param maxOpenFiles the maximum number of open files (at least FILES_PER_JOB)
+	 */
+	public HuffBatchEngine(int workers, boolean virtualThreads, int maxOpenFiles) {
+		this.workers = Math.max(1, workers);
+		this.virtualThreads = virtualThreads;
+		this.maxOpenFiles = Math.max(FILES_PER_JOB, maxOpenFiles);
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.
+	 *
+	 * @return the executor, or null if this Java runtime has no virtual threads
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether the engine runs the files on virtual threads.
+	 *
+	 * @return true, if virtual threads are selected and available
+	 */
+	boolean usesVirtualThreads() {
+		if (!virtualThreads) {
+			return false;
+		}
+		ExecutorService executor = newVirtualThreadExecutor();
+		if (executor == null) {
+			return false;
+		}
+		executor.shutdown();
+		return true;
+	}
+
+	/**
+	 * Gets the number of files that can be processed at the same time.
+	 *
+	 * @return the maximum number of files in flight
+	 */
+	int getMaxActive() {
+		return maxOpenFiles / FILES_PER_JOB;
+	}
+
+	/**
+	 * Runs the operation on every file, and waits for all of them to complete.
+	 *
+	 * @param jobs the input and output of each file
+	 * @param operation the operation
+	 * @return the result of the batch
+	 * @throws InterruptedException if interrupted while waiting for the files
+	 */
+	BatchResult run(List<File[]> jobs, FileOperation operation) throws InterruptedException {
+		BatchResult batch = new BatchResult(jobs.size());
+		Semaphore openFiles = new Semaphore(getMaxActive() * FILES_PER_JOB);
+		AtomicInteger active = new AtomicInteger();
+		ExecutorService executor = virtualThreads ? newVirtualThreadExecutor() : null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, jobs.size())));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < jobs.size(); i++) {
+			int index = i;
+			File[] job = jobs.get(i);
+			executor.execute(() -> {
+				openFiles.acquireUninterruptibly(FILES_PER_JOB);
+				try {
+					batch.peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+					Result result = process(job[0], job[1], operation);
+					batch.results[index] = result;
+					if (result.error != null) {
+						batch.failures.add(result);
+					} else {
+						batch.inBytes.add(result.inBytes);
+						batch.outBytes.add(result.outBytes);
+					}
+				} finally {
+					active.decrementAndGet();
+					openFiles.release(FILES_PER_JOB);
+				}
+			});
+		}
+		executor.shutdown();
+		while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+			// wait for the remaining files
+		}
+		batch.nanos = System.nanoTime() - start;
+		return batch;
+	}
+
+	/**
+	 * Processes one file. The file fails if the operation throws, if the engine recorded
+	 * an error, or if the output file was not written. The error is the alerts raised for
+	 * the file, then the exception or the engine's errors that were not alerted.
+	 *
+	 * @param input the input file
+	 * @param output the output file
+	 * @param operation the operation
+	 * @return the result
+	 */
+	Result process(File input, File output, FileOperation operation) {
+		Result result = new Result();
+		result.input = input;
+		result.output = output;
+		result.inBytes = input.length();
+		CollectingAlerts hca = new CollectingAlerts();
+		output.delete();
+		long start = System.nanoTime();
+		String exception = null;
+		try {
+			result.compression = operation.apply(input, output, hca);
+		} catch (Exception e) {
+			exception = (e.getMessage() != null) ? e.getMessage() : e.toString();
+		}
+		result.nanos = System.nanoTime() - start;
+		result.outBytes = output.length();
+		result.alerts = hca.getMessages();
+		boolean engineFailed = result.compression != null && result.compression.isFailed();
+		if (exception != null || engineFailed || !output.isFile()) {
+			List<String> errors = new ArrayList<String>(hca.getMessages());
+			if (exception != null) {
+				errors.add(exception);
+			} else if (engineFailed) {
+				for (String error : result.compression.getErrors()) {
+					if (!errors.stream().anyMatch(alert -> alert.endsWith(error))) {
+						errors.add(error);
+					}
+				}
+			} else {
+				errors.add("no output was written");
+			}
+			result.error = String.join("; ", errors);
+		}
+		return result;
+	}
+}
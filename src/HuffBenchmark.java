@@ -0,0 +1,327 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * The Class HuffBenchmark. The performance harness: times the weights, tree build, code
+ * generation, BinaryIO conversions, bit packing, and the encode and decode paths over
+ * the files in data/ (or the files on the command line), so engine changes can be
+ * accepted or rejected with numbers. The HF_*_Test classes only check correctness.
+ *
+ * Each benchmark is reported twice:
+ *   first - the first run of the benchmark. Only the first benchmark of the JVM is truly
+ *           cold; the later ones start with the classes loaded, and the JIT may already
+ *           have compiled the code they share with the earlier benchmarks, so this is
+ *           a first run figure, not a cold start.
+ *   warm  - the mean of the measured runs, after the warmup runs
+ * with the throughput in MB/s of input (where the benchmark has an input file), the time
+ * per operation, and the bytes allocated per operation by the benchmark thread (from the
+ * JVM's per-thread allocation counter; threads of the parallel engines are not counted).
+ *
+ * The encode and decode benchmarks run without the codebook cache, so every run builds
+ * the tree and codes of its file, as an engine would for a new file. The byte weights and
+ * the bulk packer are run with the scalar kernels and, if they are available, with the
+ * Vector API kernels, followed by the speedup of the Vector API kernels (see HuffKernels).
+ *
+ * Run from the project root:
+ *   java -cp bin HuffBenchmark [warmup runs] [measured runs] [file ...]
+ * or, with src-vector compiled into bin, to also run the Vector API kernels:
+ *   java --add-modules jdk.incubator.vector -cp bin HuffBenchmark [warmup runs] [measured runs] [file ...]
+ */
+public class HuffBenchmark {
+
+	/** The default number of warmup runs. */
+	private static final int DEFAULT_WARMUP = 5;
+
+	/** The default number of measured runs. */
+	private static final int DEFAULT_ITERATIONS = 10;
+
+	/** The number of bytes in a megabyte, for MB/s. */
+	private static final double MB = 1 << 20;
+
+	/**
+	 * The Interface Benchmark. One operation to be timed.
+	 */
+	interface Benchmark {
+
+		/**
+		 * Runs the operation once.
+		 *
+		 * @throws Exception if the operation fails
+		 */
+		void run() throws Exception;
+	}
+
+	/** The thread bean, if it can count allocated bytes; null otherwise. */
+	private com.sun.management.ThreadMXBean allocBean;
+
+	/** The number of warmup runs. */
+	private int warmup;
+
+	/** The number of measured runs. */
+	private int iterations;
+
+	/** The directory for the encoded and decoded files. */
+	private File workDir;
+
+	/**
+	 * Instantiates a new benchmark harness.
+	 *
+	 * @param warmup the number of warmup runs
+	 * @param iterations the number of measured runs
+	 * @param workDir the directory for the encoded and decoded files
+	 */
+	public HuffBenchmark(int warmup, int iterations, File workDir) {
+		this.warmup = warmup;
+		this.iterations = Math.max(1, iterations);
+		this.workDir = workDir;
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			allocBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!allocBean.isThreadAllocatedMemorySupported()) {
+				allocBean = null;
+			} else {
+				allocBean.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bytes allocated by the current thread so far.
+	 *
+	 * @return the allocated bytes, or 0 if allocation cannot be measured
+	 */
+	private long allocatedBytes() {
+		return (allocBean != null) ? allocBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	/**
+	 * Times a benchmark - one first run, then the warmup runs and the measured runs - and
+	 * prints a line of results.
+	 *
+	 * @param name the name of the benchmark
+	 * @param fileName the name of the input file, for the report
+	 * @param inputBytes the number of input bytes processed by each run; 0 if MB/s does not apply
+	 * @param benchmark the operation
+	 * @return the mean time of the measured runs, in nanoseconds
+	 * @throws Exception if the operation fails
+	 */
+	double measure(String name, String fileName, long inputBytes, Benchmark benchmark) throws Exception {
+		long start = System.nanoTime();
+		benchmark.run();
+		long firstNanos = System.nanoTime() - start;
+
+		for (int i = 0; i < warmup; i++) {
+			benchmark.run();
+		}
+		long alloc = allocatedBytes();
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			benchmark.run();
+		}
+		double warmNanos = (double) (System.nanoTime() - start) / iterations;
+		double warmAlloc = (double) (allocatedBytes() - alloc) / iterations;
+
+		System.out.printf("%-16s %-36s %10s %10s %12.1f %12.1f %14s%n", name, fileName,
+				          throughput(inputBytes, firstNanos), throughput(inputBytes, warmNanos),
+				          firstNanos / 1000.0, warmNanos / 1000.0,
+				          (allocBean != null) ? String.format("%.0f", warmAlloc) : "n/a");
+		return warmNanos;
+	}
+
+	/**
+	 * Runs a benchmark with the scalar kernels and, if they are available, with the Vector
+	 * API kernels (see HuffKernels), and reports the speedup of the Vector API kernels.
+	 * The engine's kernels are restored afterwards.
+	 *
+	 * @param name the name of the benchmark; the name of the kernels is appended
+	 * @param fileName the name of the input file, for the report
+	 * @param inputBytes the number of input bytes processed by each run
+	 * @param benchmark the operation
+	 * @return the mean time of the measured runs with the scalar kernels, in nanoseconds
+	 * @throws Exception if the operation fails
+	 */
+	double measureKernels(String name, String fileName, long inputBytes, Benchmark benchmark) throws Exception {
+		HuffKernels active = HuffKernels.get();
+		try {
+			HuffKernels.setActive(HuffKernels.scalar());
+			double scalar = measure(name + " " + HuffKernels.scalar().getName(), fileName, inputBytes, benchmark);
+			HuffKernels vector = HuffKernels.vector();
+			if (vector != null) {
+				HuffKernels.setActive(vector);
+				double simd = measure(name + " " + vector.getName(), fileName, inputBytes, benchmark);
+				System.out.printf("%-16s %-36s %10s %10.2fx%n", name + " simd", fileName, "", scalar / simd);
+			}
+			return scalar;
+		} finally {
+			HuffKernels.setActive(active);
+		}
+	}
+
+	/**
+	 * Formats the throughput in MB/s.
+	 *
+	 * @param inputBytes the number of input bytes per run
+	 * @param nanos the time per run
+	 * @return the throughput, or "-" if it does not apply
+	 */
+	private static String throughput(long inputBytes, double nanos) {
+		if (inputBytes <= 0 || nanos <= 0) {
+			return "-";
+		}
+		return String.format("%.1f", inputBytes / MB / (nanos / 1e9));
+	}
+
+	/**
+	 * Runs every benchmark on one input file.
+	 *
+	 * @param file the input file
+	 * @throws Exception if a benchmark fails
+	 */
+	void benchmarkFile(File file) throws Exception {
+		String name = file.getName();
+		String path = file.getPath();
+		byte[] data = Files.readAllBytes(file.toPath());
+		long length = data.length;
+		HuffCompAlerts hca = new HuffCompAlerts(null) {
+			@Override
+			boolean issueAlert(HuffAlerts alert, String hdr, String message) {
+				return true;
+			}
+		};
+		boolean ascii = true;
+		for (byte b : data) {
+			ascii &= (b >= 0 && b < 127);
+		}
+
+		// weights
+		GenWeights gw = new GenWeights(hca);
+		measure("weights", name, length, () -> gw.generateWeights(path));
+		measureKernels("byte wts", name, length, () -> gw.generateByteWeights(path));
+		int[] weights = gw.getWeights().clone();
+
+		// tree build and code generation
+		HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+		measure("tree build", name, 0, () -> {
+			huffUtil.setWeights(weights);
+			huffUtil.buildHuffmanTree(true);
+		});
+		measure("tree codes", name, 0, () -> huffUtil.createHuffmanCodes(huffUtil.getTreeRoot(), "", 0));
+		measure("canonical", name, 0, () -> huffUtil.createCanonicalCodes());
+
+		// BinaryIO conversions of every byte of the file
+		BinaryIO binUtil = new BinaryIO();
+		int[] sink = new int[1];
+		measure("binaryio", name, length, () -> {
+			int sum = 0;
+			for (byte b : data) {
+				sum += binUtil.convStrToBin(binUtil.convBinToStr(b & 0xFF));
+			}
+			sink[0] = sum;
+		});
+
+		// bit packing: one writeBits call per byte, and the bulk packer (writeCodes) with each kernel
+		int[] values = huffUtil.getCodeValues();
+		byte[] lengths = huffUtil.getCodeLengths();
+		double perByte = measure("pack bits", name, length, () -> {
+			BitWriter bitWriter = new BitWriter(OutputStream.nullOutputStream());
+			for (byte b : data) {
+				bitWriter.writeBits(values[b & 0xFF], lengths[b & 0xFF]);
+			}
+			bitWriter.flush();
+		});
+		double bulk = measureKernels("pack", name, length, () -> {
+			BitWriter bitWriter = new BitWriter(OutputStream.nullOutputStream());
+			bitWriter.writeCodes(data, 0, data.length, values, lengths);
+			bitWriter.flush();
+		});
+		System.out.printf("%-16s %-36s %10s %10.2fx%n", "pack speedup", name, "", perByte / bulk);
+
+		// encode and decode
+		File wtsFile = new File(workDir, "bench.csv");
+		File binFile = new File(workDir, "bench.bin");
+		File hufFile = new File(workDir, "bench.huf");
+		File outFile = new File(workDir, "bench.out");
+		EncodeDecode encDec = new EncodeDecode(new GenWeights(hca), hca);
+		encDec.setCodebookCache(null);
+		if (ascii) {
+			gw.generateWeights(path);
+			gw.writeOutputFile(wtsFile);
+			measure("encode bin", name, length,
+					() -> encDec.encode(path, binFile.getPath(), wtsFile.getPath(), true));
+			measure("decode table", name, length,
+					() -> encDec.decode(binFile.getPath(), outFile.getPath(), wtsFile.getPath(), true, HuffDecoder.TABLE));
+			verify(file, outFile);
+			measure("decode fsa", name, length,
+					() -> encDec.decode(binFile.getPath(), outFile.getPath(), wtsFile.getPath(), true, HuffDecoder.FSA));
+			verify(file, outFile);
+		}
+		measure("encode huf", name, length, () -> encDec.encode(path, hufFile.getPath(), "", true));
+		measure("decode huf", name, length, () -> encDec.decode(hufFile.getPath(), outFile.getPath(), "", true));
+		verify(file, outFile);
+		encDec.setBlocked(ParallelBlockEncoder.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+		measure("encode blocked", name, length, () -> encDec.encode(path, hufFile.getPath(), "", true));
+		measure("decode blocked", name, length, () -> encDec.decode(hufFile.getPath(), outFile.getPath(), "", true));
+		verify(file, outFile);
+		encDec.setBlocked(0, 1);
+		encDec.setAdaptive(true);
+		measure("encode adapt", name, length, () -> encDec.encode(path, hufFile.getPath(), "", true));
+		measure("decode adapt", name, length, () -> encDec.decode(hufFile.getPath(), outFile.getPath(), "", true));
+		verify(file, outFile);
+
+		for (File f : new File[] {wtsFile, binFile, hufFile, outFile}) {
+			f.delete();
+		}
+	}
+
+	/**
+	 * Checks that the decoded file matches the original file, so a broken engine cannot
+	 * post a good number.
+	 *
+	 * @param original the original file
+	 * @param decoded the decoded file
+	 * @throws IOException if the files differ
+	 */
+	private static void verify(File original, File decoded) throws IOException {
+		if (Files.mismatch(original.toPath(), decoded.toPath()) != -1) {
+			throw new IOException("Decoded "+decoded+" does not match "+original);
+		}
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args [warmup runs] [measured runs] [file ...]; the files default to data/*.txt
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int warmup = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_WARMUP;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+		File[] files;
+		if (args.length > 2) {
+			files = new File[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				files[i - 2] = new File(args[i]);
+			}
+		} else {
+			files = new File("data").listFiles((dir, name) -> name.endsWith(".txt"));
+			Arrays.sort(files);
+		}
+
+		File workDir = Files.createTempDirectory("huffbench").toFile();
+		HuffBenchmark bench = new HuffBenchmark(warmup, iterations, workDir);
+		System.out.printf("warmup runs: %d, measured runs: %d, processors: %d%n", warmup, iterations,
+				          Runtime.getRuntime().availableProcessors());
+		System.out.printf("%-16s %-36s %10s %10s %12s %12s %14s%n", "benchmark", "file", "first MB/s",
+				          "warm MB/s", "first us/op", "warm us/op", "alloc B/op");
+		try {
+			for (File file : files) {
+				bench.benchmarkFile(file);
+			}
+		} finally {
+			workDir.delete();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * The Class HuffBlockIndex. The trailer of a blocked .huf container (MODE_BLOCKED). It
+ * records where the codes of every block start and how many characters each block
+ * decodes to, so any block can be decoded without decoding the blocks before it - and
+ * all of the blocks can be decoded in parallel (see ParallelBlockDecoder).
+ *
+ * Layout (big endian), at the very end of the file:
+ *   per block:
+ *     bit offset         8 bytes  start of the block's codes, from the end of the header
+ *     original length    4 bytes  number of characters in the block
+ *   number of blocks     4 bytes
+ */
+public class HuffBlockIndex {
+
+	/** The size in bytes of each block entry. */
+	private static final int ENTRY_SIZE = 12;
+
+	/** The bit offset of each block, from the end of the header. */
+	private long[] bitOffsets;
+
+	/** The number of characters in each block. */
+	private int[] lengths;
+
+	/** The number of blocks added so far. */
+	private int numAdded;
+
+	/** The total number of bits in all of the blocks. */
+	private long totalBits;
+
+	/**
+	 * Instantiates a new, empty block index.
+	 *
+	 * @param numBlocks the number of blocks
+	 */
+	public HuffBlockIndex(int numBlocks) {
+		bitOffsets = new long[numBlocks];
+		lengths = new int[numBlocks];
+		numAdded = 0;
+		totalBits = 0;
+	}
+
+	/**
+	 * Gets the number of blocks.
+	 *
+	 * @return the number of blocks
+	 */
+	int getNumBlocks() {
+		return lengths.length;
+	}
+
+	/**
+	 * Gets the bit offset of a block, from the end of the header.
+	 *
+	 * @param block the block number
+	 * @return the bit offset
+	 */
+	long getBitOffset(int block) {
+		return bitOffsets[block];
+	}
+
+	/**
+	 * Gets the number of characters in a block.
+	 *
+	 * @param block the block number
+	 * @return the number of characters
+	 */
+	int getLength(int block) {
+		return lengths[block];
+	}
+
+	/**
+	 * Gets the compressed length of a block in bytes. Blocks are padded to a byte boundary.
+	 *
+	 * @param block the block number
+	 * @return the compressed length in bytes
+	 */
+	int getCompressedLength(int block) {
+		long end = (block + 1 < bitOffsets.length) ? bitOffsets[block + 1] : totalBits;
+		return (int) ((end - bitOffsets[block]) / 8);
+	}
+
+	/**
+	 * Adds the next block. Blocks MUST be added in order.
+	 *
+	 * @param compressedLength the compressed length of the block in bytes
+	 * @param length the number of characters in the block
+	 */
+	void addBlock(int compressedLength, int length) {
+		bitOffsets[numAdded] = totalBits;
+		lengths[numAdded] = length;
+		totalBits += 8L * compressedLength;
+		numAdded++;
+	}
+
+	/**
+	 * Gets the size of the index in bytes.
+	 *
+	 * @return the index size
+	 */
+	long getSize() {
+		return (long) ENTRY_SIZE * lengths.length + 4;
+	}
+
+	/**
+	 * Writes the index to the output stream.
+	 *
+	 * @param os the output stream, positioned just after the last block
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void write(OutputStream os) throws IOException {
+		DataOutputStream dos = new DataOutputStream(os);
+		for (int i = 0; i < lengths.length; i++) {
+			dos.writeLong(bitOffsets[i]);
+			dos.writeInt(lengths[i]);
+		}
+		dos.writeInt(lengths.length);
+		dos.flush();
+	}
+
+	/**
+	 * Reads the index from the end of a blocked .huf file, and checks that the offsets
+	 * and lengths are consistent with the file and the header.
+	 *
+	 * @param file the .huf file
+	 * @param header the .huf header of the file
+	 * @return the block index
+	 * @throws IOException Signals that an I/O exception has occurred, or the index is corrupt
+	 */
+	static HuffBlockIndex read(File file, HuffFileHeader header) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long dataLength = raf.length() - header.getSize() - 4;
+			if (dataLength < 0) {
+				throw new IOException("Corrupt .huf file - missing block index");
+			}
+			raf.seek(raf.length() - 4);
+			int numBlocks = raf.readInt();
+			if (numBlocks != header.getNumBlocks() || (long) ENTRY_SIZE * numBlocks > dataLength) {
+				throw new IOException("Corrupt .huf file - block index does not match the header");
+			}
+			HuffBlockIndex index = new HuffBlockIndex(numBlocks);
+			index.totalBits = 8 * (dataLength - (long) ENTRY_SIZE * numBlocks);
+			raf.seek(raf.length() - index.getSize());
+			long original = 0;
+			for (int i = 0; i < numBlocks; i++) {
+				index.bitOffsets[i] = raf.readLong();
+				index.lengths[i] = raf.readInt();
+				long prev = (i == 0) ? 0 : index.bitOffsets[i - 1];
+				if (index.bitOffsets[i] < prev || index.bitOffsets[i] % 8 != 0 || index.bitOffsets[i] > index.totalBits ||
+					index.lengths[i] <= 0 || index.lengths[i] > header.getBlockSize()) {
+					throw new IOException("Corrupt .huf file - bad block index entry "+i);
+				}
+				original += index.lengths[i];
+			}
+			if ((numBlocks > 0 && index.bitOffsets[0] != 0) || original != header.getOriginalLength()) {
+				throw new IOException("Corrupt .huf file - block index does not match the header");
+			}
+			index.numAdded = numBlocks;
+			return index;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * The Class HuffCodebook. A fully built Huffman model: the HuffmanCompressionUtilities
+ * holding the weights, tree, codes and canonical codes, plus the decode table and FSA
+ * decoder, which are built the first time they are needed. A codebook is immutable once
+ * it has been built, so it can be shared through a HuffCodebookCache - the decode engines
+ * only read the tree.
+ */
+public class HuffCodebook {
+
+	/** The approximate footprint of each character of the alphabet: weight, codes and tree nodes. */
+	private static final int SYMBOL_FOOTPRINT = 160;
+
+	/** The built model - MUST NOT be modified once the codebook is created. */
+	private final HuffmanCompressionUtilities huffUtil;
+
+	/** The weights the model was built from; null if it was built from code lengths. */
+	private final int[] weights;
+
+	/** The decode table, built on first use. */
+	private HuffmanDecodeTable decodeTable;
+
+	/** The FSA decoder, built on first use. */
+	private HuffmanFSADecoder fsa;
+
+	/**
+	 * Instantiates a new codebook.
+	 *
+	 * @param huffUtil the built model
+	 * @param weights the weights the model was built from; null if it was built from code lengths
+	 */
+	public HuffCodebook(HuffmanCompressionUtilities huffUtil, int[] weights) {
+		this.huffUtil = huffUtil;
+		this.weights = weights;
+	}
+
+	/**
+	 * Gets the built model.
+	 *
+	 * @return the huffman compression utilities
+	 */
+	HuffmanCompressionUtilities getHuffUtil() {
+		return huffUtil;
+	}
+
+	/**
+	 * Gets the weights the model was built from.
+	 *
+	 * @return the weights; null if the model was built from code lengths
+	 */
+	int[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Gets the decode table for the tree, building it the first time.
+	 *
+	 * @return the decode table
+	 */
+	synchronized HuffmanDecodeTable getDecodeTable() {
+		if (decodeTable == null) {
+			decodeTable = new HuffmanDecodeTable(huffUtil.getTreeRoot());
+		}
+		return decodeTable;
+	}
+
+	/**
+	 * Gets the FSA decoder for the tree, building it the first time.
+	 *
+	 * @return the FSA decoder
+	 */
+	synchronized HuffmanFSADecoder getFSADecoder() {
+		if (fsa == null) {
+			fsa = new HuffmanFSADecoder(huffUtil.getTreeRoot());
+		}
+		return fsa;
+	}
+
+	/**
+	 * Gets the approximate memory footprint of the codebook in bytes, including the
+	 * decoders built so far.
+	 *
+	 * @return the footprint
+	 */
+	synchronized long getFootprint() {
+		byte[] lengths = huffUtil.getCodeLengths();
+		int alphabet = (weights != null) ? weights.length : (lengths != null) ? lengths.length : 0;
+		long footprint = (long) SYMBOL_FOOTPRINT * alphabet;
+		if (decodeTable != null) {
+			footprint += decodeTable.getFootprint();
+		}
+		if (fsa != null) {
+			footprint += fsa.getFootprint();
+		}
+		return footprint;
+	}
+}
@@ -0,0 +1,189 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The Class HuffCodebookCache. A bounded, least recently used cache of built codebooks
+ * (see HuffCodebook), so that a batch of files encoded or decoded with the same weights
+ * file reads the weights, builds the tree and the codes, and builds the decode tables
+ * only once.
+ *
+ * A weights file is identified by its path, size, modification time and a CRC32 of its
+ * contents, so a weights file that is rewritten is never served from the cache. The
+ * options that change the codebook (optimize, canonical, maximum code length) are part
+ * of the key. Codebooks rebuilt from the code lengths in a .huf header are keyed by the
+ * code lengths themselves.
+ *
+ * The cache is bounded by the total footprint of the codebooks. Decode tables are built
+ * lazily after a codebook is added, so the total is checked on every get and put; the
+ * most recently used codebook is never evicted. All methods are thread safe.
+ */
+public class HuffCodebookCache {
+
+	/** The default maximum total footprint in bytes. */
+	static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+	/** The maximum total footprint in bytes. */
+	private final long maxBytes;
+
+	/** The codebooks, in access order - the eldest is the least recently used. */
+	private final LinkedHashMap<String, HuffCodebook> codebooks;
+
+	/** The number of lookups that found a codebook. */
+	private long hits;
+
+	/** The number of lookups that did not find a codebook. */
+	private long misses;
+
+	/** The number of codebooks evicted to stay within maxBytes. */
+	private long evictions;
+
+	/**
+	 * Instantiates a new codebook cache with the default maximum footprint.
+	 */
+	public HuffCodebookCache() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Instantiates a new codebook cache.
+	 *
+	 * @param maxBytes the maximum total footprint of the cached codebooks, in bytes
+	 */
+	public HuffCodebookCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		codebooks = new LinkedHashMap<String, HuffCodebook>(16, 0.75f, true);
+	}
+
+	/**
+	 * Creates the key for a codebook built from a weights file.
+	 *
+	 * @param wtsFile the weights file
+	 * @param options the options used to build the codebook
+	 * @return the key
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static String weightsKey(File wtsFile, String options) throws IOException {
+		byte[] data = Files.readAllBytes(wtsFile.toPath());
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return "weights|"+wtsFile.getCanonicalPath()+"|"+data.length+"|"+wtsFile.lastModified()+"|"+
+			   Long.toHexString(crc.getValue())+"|"+options;
+	}
+
+	/**
+	 * Creates the key for a codebook rebuilt from canonical code lengths.
+	 *
+	 * @param codeLengths the code lengths
+	 * @return the key
+	 */
+	static String lengthsKey(byte[] codeLengths) {
+		StringBuilder key = new StringBuilder(8 + 2 * codeLengths.length).append("lengths|");
+		for (byte length : codeLengths) {
+			key.append(Character.forDigit(length >>> 4, 16)).append(Character.forDigit(length & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Gets a codebook, and marks it as the most recently used.
+	 *
+	 * @param key the key
+	 * @return the codebook, or null if it is not in the cache
+	 */
+	synchronized HuffCodebook get(String key) {
+		HuffCodebook codebook = codebooks.get(key);
+		if (codebook == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		trim();
+		return codebook;
+	}
+
+	/**
+	 * Adds a codebook as the most recently used, evicting the least recently used
+	 * codebooks if the cache is full.
+	 *
+	 * @param key the key
+	 * @param codebook the codebook
+	 */
+	synchronized void put(String key, HuffCodebook codebook) {
+		codebooks.put(key, codebook);
+		trim();
+	}
+
+	/**
+	 * Evicts the least recently used codebooks until the total footprint is within
+	 * maxBytes, keeping at least the most recently used codebook.
+	 */
+	private void trim() {
+		long total = getFootprint();
+		Iterator<HuffCodebook> it = codebooks.values().iterator();
+		while (total > maxBytes && codebooks.size() > 1) {
+			total -= it.next().getFootprint();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes all codebooks. The counters are not reset.
+	 */
+	synchronized void clear() {
+		codebooks.clear();
+	}
+
+	/**
+	 * Gets the number of cached codebooks.
+	 *
+	 * @return the number of codebooks
+	 */
+	synchronized int size() {
+		return codebooks.size();
+	}
+
+	/**
+	 * Gets the total footprint of the cached codebooks.
+	 *
+	 * @return the footprint in bytes
+	 */
+	synchronized long getFootprint() {
+		long total = 0;
+		for (HuffCodebook codebook : codebooks.values()) {
+			total += codebook.getFootprint();
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the number of lookups that found a codebook.
+	 *
+	 * @return the hits
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups that did not find a codebook.
+	 *
+	 * @return the misses
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of codebooks evicted to stay within the maximum footprint.
+	 *
+	 * @return the evictions
+	 */
+	synchronized long getEvictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,376 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Class HuffCompCLI. The headless driver for servers and scripts: generates weights,
+ * encodes and decodes single files or every file in a directory, without JavaFX and
+ * without the fixed data/, encode/ and weights/ directories of HuffCompGUI.
+ *
+ * Usage: java -cp bin HuffCompCLI (encode | decode | weights) [options] input output
+ *
+ * If input is a directory, every file in it (except hidden files) is processed, and
+ * output is the directory the results are written to (it is created if needed):
+ *   encode  - name becomes name.huf (name.bin with -bin)
+ *   decode  - name.huf and name.bin become name
+ *   weights - name becomes name.csv (name.hwt with -hwt)
+ * The files are processed concurrently by HuffBatchEngine, on a pool of workers or, with
+ * -virtual, on a virtual thread each. Each file has its own EncodeDecode and GenWeights;
+ * the files share one codebook cache, so a batch encoded or decoded with one weights
+ * file builds its codebook once.
+ *
+ * Options:
+ *   -w file     the weights file (required for the .bin format)
+ *   -j n        the number of workers (default: the number of processors)
+ *   -bin        encode to the headerless .bin format instead of the .huf container
+ *   -hwt        write the weights in the binary .hwt format instead of CSV
+ *   -bytes      weights of all 256 byte values instead of the 128 ASCII characters
+ *   -canonical  canonical codes for the .bin format
+ *   -adaptive   single pass adaptive .huf container
+ *   -model      .huf container with a built-in model
+ *   -blocked n  blocked .huf container with blocks of n bytes
+ *   -sample k   estimate the .huf weights from k samples of each file
+ *   -virtual    run each file on its own virtual thread (Java 21 and later)
+ *   -files n    the maximum number of open files (default: 256)
+ *   -q          only report the totals and the files that failed
+ *
+ * A line with the sizes, the time and the throughput is reported for each file, followed
+ * for an encode or decode by the time of each phase of the engine and the bits per
+ * symbol (see HuffCompressionResult), then the totals. The exit status is 0 if every file succeeded, 1 if any file failed, and
+ * 2 for a usage error.
+ */
+public class HuffCompCLI {
+
+	/** The extension of the headerless encoded format. */
+	static final String BIN_EXT = ".bin";
+
+	/** The extension of CSV weights files. */
+	static final String CSV_EXT = ".csv";
+
+	/** The number of bytes in a megabyte, for MB/s. */
+	private static final double MB = 1 << 20;
+
+	/** The usage message. */
+	private static final String USAGE =
+		"Usage: HuffCompCLI (encode | decode | weights) [options] input output\n"+
+		"  input and output are files, or directories to process every file in input\n"+
+		"  -w file     the weights file (required for the .bin format)\n"+
+		"  -j n        the number of workers (default: the number of processors)\n"+
+		"  -bin        encode to the headerless .bin format instead of .huf\n"+
+		"  -hwt        write the weights in the binary .hwt format instead of CSV\n"+
+		"  -bytes      weights of all 256 byte values instead of the 128 ASCII characters\n"+
+		"  -canonical  canonical codes for the .bin format\n"+
+		"  -adaptive   single pass adaptive .huf container\n"+
+		"  -model      .huf container with a built-in model\n"+
+		"  -blocked n  blocked .huf container with blocks of n bytes\n"+
+		"  -sample k   estimate the .huf weights from k samples of each file\n"+
+		"  -virtual    run each file on its own virtual thread (Java 21 and later)\n"+
+		"  -files n    the maximum number of open files (default: "+HuffBatchEngine.DEFAULT_MAX_OPEN_FILES+")\n"+
+		"  -q          only report the totals and the files that failed";
+
+	/** The command: encode, decode or weights. */
+	private String command;
+
+	/** The weights file; null if none. */
+	private String weightsFile;
+
+	/** The number of workers. */
+	private int workers = Runtime.getRuntime().availableProcessors();
+
+	/** If true, encode to the .bin format. */
+	private boolean bin;
+
+	/** If true, write .hwt weights files. */
+	private boolean hwt;
+
+	/** If true, generate the weights of all byte values. */
+	private boolean byteWeights;
+
+	/** If true, use canonical codes for the .bin format. */
+	private boolean canonical;
+
+	/** If true, encode with an adaptive code. */
+	private boolean adaptive;
+
+	/** If true, encode with a built-in model. */
+	private boolean pretrained;
+
+	/** The block size of the blocked container; 0 for none. */
+	private int blockSize;
+
+	/** The number of samples for the weights; 0 to read the whole file. */
+	private int numSamples;
+
+	/** If true, run each file on its own virtual thread. */
+	private boolean virtualThreads;
+
+	/** The maximum number of open files. */
+	private int maxOpenFiles = HuffBatchEngine.DEFAULT_MAX_OPEN_FILES;
+
+	/** If true, only report the totals and the failures. */
+	private boolean quiet;
+
+	/** The codebook cache shared by the workers. */
+	private HuffCodebookCache codebookCache = new HuffCodebookCache();
+
+	/**
+	 * Parses the command line.
+	 *
+	 * @param args the arguments
+	 * @return the input and output names
+	 * @throws IllegalArgumentException if the command line is not valid
+	 */
+	String[] parse(String[] args) {
+		if (args.length < 1 || !Arrays.asList("encode", "decode", "weights").contains(args[0])) {
+			throw new IllegalArgumentException("Unknown command");
+		}
+		command = args[0];
+		List<String> names = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "-w": weightsFile = value(args, ++i); break;
+			case "-j": workers = number(args, ++i); break;
+			case "-bin": bin = true; break;
+			case "-hwt": hwt = true; break;
+			case "-bytes": byteWeights = true; break;
+			case "-canonical": canonical = true; break;
+			case "-adaptive": adaptive = true; break;
+			case "-model": pretrained = true; break;
+			case "-blocked": blockSize = number(args, ++i); break;
+			case "-sample": numSamples = number(args, ++i); break;
+			case "-virtual": virtualThreads = true; break;
+			case "-files": maxOpenFiles = number(args, ++i); break;
+			case "-q": quiet = true; break;
+			default:
+				if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option "+args[i]);
+				}
+				names.add(args[i]);
+			}
+		}
+		if (names.size() != 2) {
+			throw new IllegalArgumentException("Expected an input and an output");
+		}
+		if (weightsFile != null && !new File(weightsFile).isFile()) {
+			throw new IllegalArgumentException("The weights file "+weightsFile+" does not exist");
+		}
+		return names.toArray(new String[2]);
+	}
+
+	/**
+	 * Gets the value of an option.
+	 *
+	 * @param args the arguments
+	 * @param i the index of the value
+	 * @return the value
+	 */
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value for "+args[i - 1]);
+		}
+		return args[i];
+	}
+
+	/**
+	 * Gets the value of an option that takes a positive number.
+	 *
+	 * @param args the arguments
+	 * @param i the index of the value
+	 * @return the number
+	 */
+	private static int number(String[] args, int i) {
+		String value = value(args, i);
+		try {
+			int n = Integer.parseInt(value);
+			if (n > 0) {
+				return n;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Expected a positive number for "+args[i - 1]+": "+value);
+	}
+
+	/**
+	 * Pairs each input file with its output file.
+	 *
+	 * @param input the input file or directory
+	 * @param output the output file or directory
+	 * @return the input and output of each file
+	 */
+	List<File[]> listJobs(File input, File output) {
+		List<File[]> jobs = new ArrayList<File[]>();
+		if (!input.isDirectory()) {
+			if (output.getAbsoluteFile().getParentFile() != null) {
+				output.getAbsoluteFile().getParentFile().mkdirs();
+			}
+			jobs.add(new File[] {input, output});
+			return jobs;
+		}
+		File[] files = input.listFiles(file -> file.isFile() && !file.isHidden());
+		Arrays.sort(files);
+		output.mkdirs();
+		for (File file : files) {
+			String name = outputName(file.getName());
+			if (name != null) {
+				jobs.add(new File[] {file, new File(output, name)});
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Gets the name of the output file of a file in a directory.
+	 *
+	 * @param name the name of the input file
+	 * @return the name of the output file, or null if the file is skipped
+	 */
+	String outputName(String name) {
+		switch (command) {
+		case "encode":
+			return name + (bin ? BIN_EXT : HuffFileHeader.HUF_EXT);
+		case "decode":
+			if (name.endsWith(HuffFileHeader.HUF_EXT) || name.endsWith(BIN_EXT)) {
+				return name.substring(0, name.lastIndexOf('.'));
+			}
+			return null;
+		default:
+			return name + (hwt ? HuffWeightsFile.WEIGHTS_EXT : CSV_EXT);
+		}
+	}
+
+	/**
+	 * Processes one file, with its own EncodeDecode and GenWeights.
+	 *
+	 * @param input the input file
+	 * @param output the output file
+	 * @param hca the alerts for this file
+	 * @param parallelism the number of threads for the parallel parts of the engine
+	 * @return the result of the encode or decode; null for weights
+	 * @throws IOException if the file cannot be processed with these options
+	 */
+	HuffCompressionResult process(File input, File output, HuffCompAlerts hca, int parallelism) throws IOException {
+		if (!input.isFile() || !input.canRead()) {
+			throw new IOException("cannot read the input file");
+		}
+		boolean legacy = command.equals("encode") ? bin : input.getName().endsWith(BIN_EXT);
+		if (legacy && weightsFile == null && !command.equals("weights")) {
+			throw new IOException("the "+BIN_EXT+" format needs a weights file (-w)");
+		}
+
+		GenWeights gw = new GenWeights(hca);
+		gw.setParallelism(parallelism);
+		gw.setSampling(numSamples);
+		EncodeDecode encDec = new EncodeDecode(gw, hca);
+		encDec.setCodebookCache(codebookCache);
+		encDec.setCanonical(canonical);
+		encDec.setAdaptive(adaptive);
+		encDec.setPretrained(pretrained);
+		encDec.setBlocked(blockSize, parallelism);
+		String wts = (weightsFile != null) ? weightsFile : "";
+
+		switch (command) {
+		case "encode":
+			return encDec.encode(input.getPath(), output.getPath(), wts, true);
+		case "decode":
+			return encDec.decode(input.getPath(), output.getPath(), wts, true);
+		default:
+			boolean counted = byteWeights ? gw.generateByteWeights(input.getPath()) : gw.generateWeights(input.getPath());
+			if (counted) {
+				gw.writeOutputFile(output);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the batch engine for the options.
+	 *
+	 * @return the batch engine
+	 */
+	HuffBatchEngine newEngine() {
+		return new HuffBatchEngine(workers, virtualThreads, maxOpenFiles);
+	}
+
+	/**
+	 * Processes every job with the batch engine, and reports the results.
+	 *
+	 * @param jobs the input and output of each file
+	 * @return true, if every file succeeded
+	 * @throws InterruptedException if interrupted while waiting for the files
+	 */
+	boolean run(List<File[]> jobs) throws InterruptedException {
+		HuffBatchEngine engine = newEngine();
+		boolean virtual = engine.usesVirtualThreads();
+		int active = virtual ? engine.getMaxActive() : Math.max(1, Math.min(workers, jobs.size()));
+		int parallelism = virtual ? 1 : Math.max(1, Runtime.getRuntime().availableProcessors() / active);
+		if (virtualThreads && !virtual) {
+			System.err.println("WARNING: virtual threads need Java 21 or later - running "+active+" workers instead");
+		}
+		HuffBatchEngine.BatchResult batch = engine.run(jobs, (input, output, hca) -> process(input, output, hca, parallelism));
+
+		for (HuffBatchEngine.Result result : batch.results) {
+			if (result.error != null) {
+				System.err.println("FAILED "+result.input+": "+result.error);
+			} else if (!quiet) {
+				System.out.printf("%-40s %12d -> %12d %7.1f%% %10.1f ms %8.1f MB/s%n", result.input.getName(),
+						          result.inBytes, result.outBytes, percent(result.outBytes, result.inBytes),
+						          result.nanos / 1e6, result.inBytes / MB / (result.nanos / 1e9));
+				HuffCompressionResult compression = result.compression;
+				if (compression != null) {
+					System.out.printf("    %s; %.3f bits/symbol%n", compression.formatPhases(), 
+							          compression.getBitsPerSymbol());
+				}
+			}
+		}
+		long inBytes = batch.inBytes.sum();
+		long outBytes = batch.outBytes.sum();
+		double seconds = batch.nanos / 1e9;
+		System.out.printf("%d files, %d failed, %s: %d -> %d bytes (%.1f%%) in %.3f s, %.1f MB/s, %.0f files/s%n",
+				          jobs.size(), batch.failures.size(),
+				          virtual ? "virtual threads" : active+" workers",
+				          inBytes, outBytes, percent(outBytes, inBytes), seconds, inBytes / MB / seconds,
+				          jobs.size() / seconds);
+		System.out.printf("codebook cache: %d hits, %d misses%n", codebookCache.getHits(), codebookCache.getMisses());
+		return batch.succeeded();
+	}
+
+	/**
+	 * Gets a size as a percentage of another.
+	 *
+	 * @param part the size
+	 * @param whole the size it is compared to
+	 * @return the percentage; 0 if whole is 0
+	 */
+	private static double percent(long part, long whole) {
+		return (whole > 0) ? 100.0 * part / whole : 0;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the command line - see the class comment
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		HuffCompCLI cli = new HuffCompCLI();
+		String[] names;
+		try {
+			names = cli.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+		File input = new File(names[0]);
+		if (!input.exists()) {
+			System.err.println(input+" does not exist");
+			System.exit(2);
+		}
+		List<File[]> jobs = cli.listJobs(input, new File(names[1]));
+		System.exit(cli.run(jobs) ? 0 : 1);
+	}
+}
@@ -0,0 +1,335 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The Class HuffCompClient. The client of HuffCompServer: sends framed compress and
+ * decompress requests over a blocking TCP or Unix-domain socket channel. Requests can
+ * be pipelined with send() and receive(); compress() and decompress() send one request
+ * and wait for its response.
+ *
+ * The main method is a load generator: each connection keeps a number of requests in
+ * flight (the pipeline depth), alternating compress requests for the files with
+ * decompress requests for their compressed forms, and the latency percentiles and the
+ * throughput are reported at the end.
+ *
+ * Run: java -cp bin HuffCompClient [-c connections] [-n requests] [-d depth] [-model] address file ...
+ */
+public class HuffCompClient implements Closeable {
+
+	/**
+	 * The Class Response. A response from the server.
+	 */
+	static class Response {
+
+		/** The status. */
+		byte status;
+
+		/** The request ID. */
+		int id;
+
+		/** The payload: the result, or the error message. */
+		byte[] payload;
+
+		/**
+		 * Checks whether the request succeeded.
+		 *
+		 * @return true, if the status is STATUS_OK
+		 */
+		boolean isOk() {
+			return status == HuffCompServer.STATUS_OK;
+		}
+
+		/**
+		 * Gets the error message of a failed request.
+		 *
+		 * @return the error message
+		 */
+		String getError() {
+			return new String(payload, StandardCharsets.UTF_8);
+		}
+	}
+
+	/** The channel, in blocking mode. */
+	private SocketChannel channel;
+
+	/** The header of the response being read. */
+	private ByteBuffer header = ByteBuffer.allocate(HuffCompServer.RESPONSE_HEADER_SIZE);
+
+	/** The ID of the next request sent by compress() or decompress(). */
+	private int nextId;
+
+	/**
+	 * Connects to a server.
+	 *
+	 * @param address the address of the server
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public HuffCompClient(SocketAddress address) throws IOException {
+		channel = HuffCompServer.openChannel(address);
+		channel.connect(address);
+	}
+
+	/**
+	 * Sends a request, without waiting for the response.
+	 *
+	 * @param id the request ID
+	 * @param op the operation
+	 * @param flags the flags
+	 * @param payload the payload
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void send(int id, byte op, byte flags, byte[] payload) throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(HuffCompServer.REQUEST_HEADER_SIZE + payload.length);
+		frame.put(op).put(flags).putInt(id).putInt(payload.length).put(payload);
+		frame.flip();
+		while (frame.hasRemaining()) {
+			channel.write(frame);
+		}
+	}
+
+	/**
+	 * Waits for the next response.
+	 *
+	 * @return the response
+	 * @throws IOException if the connection is closed or fails
+	 */
+	Response receive() throws IOException {
+		header.clear();
+		readFully(header);
+		Response response = new Response();
+		response.status = header.get(0);
+		response.id = header.getInt(1);
+		ByteBuffer payload = ByteBuffer.allocate(header.getInt(5));
+		readFully(payload);
+		response.payload = payload.array();
+		return response;
+	}
+
+	/**
+	 * Reads until the buffer is full.
+	 *
+	 * @param buffer the buffer
+	 * @throws IOException if the connection is closed or fails
+	 */
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("The server closed the connection");
+			}
+		}
+	}
+
+	/**
+	 * Sends a request and waits for its response. Must not be mixed with pipelined requests.
+	 *
+	 * @param op the operation
+	 * @param flags the flags
+	 * @param payload the payload
+	 * @return the result
+	 * @throws IOException if the request failed
+	 */
+	private byte[] call(byte op, byte flags, byte[] payload) throws IOException {
+		int id = nextId++;
+		send(id, op, flags, payload);
+		Response response = receive();
+		if (response.id != id) {
+			throw new IOException("Expected the response to request "+id+", not "+response.id);
+		}
+		if (!response.isOk()) {
+			throw new IOException(response.getError());
+		}
+		return response.payload;
+	}
+
+	/**
+	 * Compresses data to a .huf container.
+	 *
+	 * @param data the data
+	 * @param flags FLAG_MODEL, FLAG_ADAPTIVE, or 0
+	 * @return the .huf container
+	 * @throws IOException if the request failed
+	 */
+	byte[] compress(byte[] data, byte flags) throws IOException {
+		return call(HuffCompServer.OP_COMPRESS, flags, data);
+	}
+
+	/**
+	 * Decompresses a .huf container.
+	 *
+	 * @param data the .huf container
+	 * @return the original data
+	 * @throws IOException if the request failed
+	 */
+	byte[] decompress(byte[] data) throws IOException {
+		return call(HuffCompServer.OP_DECOMPRESS, (byte) 0, data);
+	}
+
+	/**
+	 * Closes the connection.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Runs one connection of the load generator: a sender thread keeps up to depth
+	 * requests in flight while this thread receives the responses.
+	 *
+	 * @param address the address of the server
+	 * @param numRequests the number of requests
+	 * @param depth the pipeline depth
+	 * @param flags the flags of the compress requests
+	 * @param payloads the payload of each request, by request ID modulo payloads.length
+	 * @param ops the operation of each payload
+	 * @param latencies the latency of each request, in nanoseconds
+	 * @throws Exception if the connection or a request fails
+	 */
+	static void runConnection(SocketAddress address, int numRequests, int depth, byte flags,
+			                  byte[][] payloads, byte[] ops, long[] latencies) throws Exception {
+		long[] sent = new long[numRequests];
+		Semaphore window = new Semaphore(depth);
+		try (HuffCompClient client = new HuffCompClient(address)) {
+			Exception[] sendError = new Exception[1];
+			Thread sender = new Thread(() -> {
+				try {
+					for (int id = 0; id < numRequests; id++) {
+						window.acquire();
+						int p = id % payloads.length;
+						sent[id] = System.nanoTime();
+						client.send(id, ops[p], (ops[p] == HuffCompServer.OP_COMPRESS) ? flags : 0, payloads[p]);
+					}
+				} catch (Exception e) {
+					sendError[0] = e;
+				}
+			});
+			sender.start();
+			for (int i = 0; i < numRequests; i++) {
+				Response response = client.receive();
+				latencies[response.id] = System.nanoTime() - sent[response.id];
+				window.release();
+				if (!response.isOk()) {
+					throw new IOException("Request "+response.id+" failed: "+response.getError());
+				}
+			}
+			sender.join();
+			if (sendError[0] != null) {
+				throw sendError[0];
+			}
+		}
+	}
+
+	/**
+	 * Gets a percentile of the sorted latencies.
+	 *
+	 * @param sorted the sorted latencies
+	 * @param percent the percentile
+	 * @return the latency, in nanoseconds
+	 */
+	static long percentile(long[] sorted, double percent) {
+		int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/**
+	 * Runs the load generator.
+	 *
+	 * @param args [-c connections] [-n requests per connection] [-d pipeline depth] [-model | -adaptive] address file ...
+	 * @throws Exception if a request fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int connections = 4;
+		int numRequests = 1000;
+		int depth = 8;
+		byte flags = 0;
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-c": connections = Integer.parseInt(args[++i]); break;
+			case "-n": numRequests = Integer.parseInt(args[++i]); break;
+			case "-d": depth = Integer.parseInt(args[++i]); break;
+			case "-model": flags = HuffCompServer.FLAG_MODEL; break;
+			case "-adaptive": flags = HuffCompServer.FLAG_ADAPTIVE; break;
+			default: names.add(args[i]);
+			}
+		}
+		if (names.size() < 2) {
+			System.err.println("Usage: HuffCompClient [-c connections] [-n requests] [-d depth] [-model | -adaptive] "+
+					           "(port | host:port | unix:path) file ...");
+			System.exit(2);
+		}
+		SocketAddress address = HuffCompServer.parseAddress(names.get(0));
+
+		// each file is sent as a compress request and, compressed, as a decompress request
+		int numFiles = names.size() - 1;
+		byte[][] payloads = new byte[2 * numFiles][];
+		byte[] ops = new byte[2 * numFiles];
+		try (HuffCompClient client = new HuffCompClient(address)) {
+			for (int i = 0; i < numFiles; i++) {
+				byte[] data = Files.readAllBytes(new File(names.get(i + 1)).toPath());
+				byte[] compressed = client.compress(data, flags);
+				if (!Arrays.equals(data, client.decompress(compressed))) {
+					throw new IOException("The round trip of "+names.get(i + 1)+" failed");
+				}
+				payloads[2 * i] = data;
+				ops[2 * i] = HuffCompServer.OP_COMPRESS;
+				payloads[2 * i + 1] = compressed;
+				ops[2 * i + 1] = HuffCompServer.OP_DECOMPRESS;
+			}
+		}
+		long payloadBytes = 0;
+		for (int id = 0; id < numRequests; id++) {
+			payloadBytes += payloads[id % payloads.length].length;
+		}
+
+		long[][] latencies = new long[connections][numRequests];
+		Thread[] threads = new Thread[connections];
+		Exception[] errors = new Exception[connections];
+		int n = numRequests;
+		int d = depth;
+		byte f = flags;
+		long start = System.nanoTime();
+		for (int c = 0; c < connections; c++) {
+			int conn = c;
+			threads[c] = new Thread(() -> {
+				try {
+					runConnection(address, n, d, f, payloads, ops, latencies[conn]);
+				} catch (Exception e) {
+					errors[conn] = e;
+				}
+			});
+			threads[c].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		for (Exception e : errors) {
+			if (e != null) {
+				throw e;
+			}
+		}
+
+		long[] all = new long[connections * numRequests];
+		for (int c = 0; c < connections; c++) {
+			System.arraycopy(latencies[c], 0, all, c * numRequests, numRequests);
+		}
+		Arrays.sort(all);
+		System.out.printf("%d connections x %d requests, depth %d: %.0f requests/s, %.1f MB/s%n", connections,
+				          numRequests, depth, all.length / seconds, connections * payloadBytes / (double) (1 << 20) / seconds);
+		System.out.printf("latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", percentile(all, 50) / 1e6,
+				          percentile(all, 99) / 1e6, all[all.length - 1] / 1e6);
+	}
+}
@@ -1,15 +1,23 @@
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.geometry.HPos;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -20,11 +28,13 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
@@ -51,6 +61,7 @@ public class HuffCompGUI extends Application {
 	private final int LABEL_COL = 0;
 	private final int TF_COL = 1;
 	private final int BUTTON_COL = 2;
+	private final double PROGRESS_WIDTH = 300;
 	
 	/** panes */
 	private BorderPane pane = new BorderPane();
@@ -58,12 +69,14 @@ public class HuffCompGUI extends Application {
     
     /** boxes */
     private HBox optionBox = new HBox(15);
+    private HBox statusBox = new HBox(15);
     
     /** buttons and checkboxes */
 	private Button btnGenWeights;
 	private Button btnEncode;
 	private Button btnDecode;
 	private Button btnClear;
+	private Button btnCancel;
     private CheckBox ckbSaveWeights;
     private CheckBox ckbOptimize;
 
@@ -73,6 +86,10 @@ public class HuffCompGUI extends Application {
     private Label lblWeights;
     private Label lblEncode;
     private Label lblDecode;
+    private Label lblStatus;
+    
+    /** the progress of the running operation */
+    private ProgressBar progressBar;
     
     /** text fields */
 	private ComboBox<String> sourceFile;
@@ -86,6 +103,16 @@ public class HuffCompGUI extends Application {
     private EncodeDecode encdec;
     private HuffCompAlerts hca;
     
+    /** runs the operations off the JavaFX application thread, one at a time */
+    private ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+    	Thread thread = new Thread(r, "HuffCompGUI-worker");
+    	thread.setDaemon(true);
+    	return thread;
+    });
+    
+    /** the running operation; null if there is none */
+    private Task<HuffCompressionResult> currentTask;
+    
 	/**
 	 * Instantiates a new huffman compression GUI.
 	 */
@@ -113,6 +140,8 @@ public class HuffCompGUI extends Application {
 		lblEncode.setFont(Font.font("Arial",FontWeight.BOLD,14));	
 		lblDecode = new Label("Decoded File: ");
 		lblDecode.setFont(Font.font("Arial",FontWeight.BOLD,14));	
+		lblStatus = new Label();
+		lblStatus.setPrefWidth(LABEL_COL_WIDTH+BUTTON_COL_WIDTH);
 	}
 	
 	/**
@@ -150,6 +179,8 @@ public class HuffCompGUI extends Application {
 		btnEncode = new Button("Encode");
 		btnDecode = new Button("Decode");
 		btnClear = new Button("Clear Fields");
+		btnCancel = new Button("Cancel");
+		btnCancel.setDisable(true);
 		ckbSaveWeights = new CheckBox("Save Weights");
 		ckbSaveWeights.setSelected(saveWeights);
 		ckbOptimize = new CheckBox("Optimize");
@@ -159,6 +190,7 @@ public class HuffCompGUI extends Application {
 		btnClear.setOnAction(e -> clearAllFields());
 		btnEncode.setOnAction(e->executeEncode());
 		btnDecode.setOnAction(e->executeDecode());
+		btnCancel.setOnAction(e->cancelTask());
 		ckbSaveWeights.setOnAction(e -> saveWeights = ckbSaveWeights.isSelected());
 		ckbOptimize.setOnAction(e -> {optimize = ckbOptimize.isSelected();
 									  updateTextFieldDefaults(sourceFile.getValue());
@@ -232,6 +264,18 @@ public class HuffCompGUI extends Application {
 		
 	}
 	
+	/**
+	 * Instantiates and initializes an HBox with the ProgressBar, the status Label 
+	 * (throughput and ETA of the running operation) and the Cancel button
+	 */
+	private void initStatusBox() {
+		progressBar = new ProgressBar(0);
+		progressBar.setPrefWidth(PROGRESS_WIDTH);
+		statusBox.setAlignment(Pos.CENTER);
+		statusBox.setPrefHeight(OPTIONS_HEIGHT);
+		statusBox.getChildren().addAll(progressBar,lblStatus,btnCancel);
+	}
+	
 	/**
 	 * Initializes the top, center, and bottom portions of the BorderPane pane.
 	 * Forces the alignment of the hdr node to be centered.
@@ -240,7 +284,7 @@ public class HuffCompGUI extends Application {
 		pane.setTop(hdr);
 		BorderPane.setAlignment(hdr, Pos.CENTER);		
 		pane.setCenter(gp);		
-		pane.setBottom(optionBox);
+		pane.setBottom(new VBox(optionBox,statusBox));
 	}
 	
 	/**
@@ -257,6 +301,7 @@ public class HuffCompGUI extends Application {
 		initButtonsCheckBoxes();
 		initGridPane();
 		initHBox();
+		initStatusBox();
 		initBorderPane();
 
 		Scene scene = new Scene(pane);
@@ -329,37 +374,202 @@ public class HuffCompGUI extends Application {
 	/**
 	 * Calls GenWeights.generateWeights with the selected sourceFile.
 	 * If saveWeights is true, writes the weights to the specified file 
-	 * the weights/ directory.
+	 * the weights/ directory. GenWeights does not report its progress, so the
+	 * ProgressBar stays indeterminate; if the operation is cancelled, the weights
+	 * are generated but not saved.
 	 */
 	private void generateWeights() {
-		gw.generateWeights("data/"+sourceFile.getValue());
-		if (saveWeights) 
-			gw.saveWeightsToFile("weights/"+weightsFile.getText());
+		String src = "data/"+sourceFile.getValue();
+		String wts = "weights/"+weightsFile.getText();
+		boolean save = saveWeights;
+		runTask("Weights", null, task -> {
+			gw.generateWeights(src);
+			if (save && !task.isCancelled()) 
+				gw.saveWeightsToFile(wts);
+			return null;
+		});
 	}
 	
 	/**
 	 * Encodes the specified text file using the specified weights file
 	 * (if this file does not exist, encode will generate the weights
 	 * from the text file) and writes the encoded data to the specified 
-	 * file in the encode/ directory.
+	 * file in the encode/ directory. When it is done, the sizes, ratio and phase
+	 * times are shown in the done alert.
 	 */
 	private void executeEncode() {
-		encdec.encode("data/"+sourceFile.getValue(),
-				      "encode/"+encodeFile.getText(),
-				      "weights/"+weightsFile.getText(),
-				      optimize);
+		String src = "data/"+sourceFile.getValue();
+		String enc = "encode/"+encodeFile.getText();
+		String wts = "weights/"+weightsFile.getText();
+		boolean opt = optimize;
+		runTask("Encode", enc, task -> encdec.encode(src, enc, wts, opt));
 	}
 	
 	/**
 	 * Decodes the specified encoded file using the specified weights file, 
 	 * WHICH MUST EXIST. Writes the decoded data to the specified file in
-	 * the decode/ directory.
+	 * the decode/ directory. When it is done, the sizes, ratio and phase times
+	 * are shown in the done alert.
 	 */
 	private void executeDecode() {
-		encdec.decode("encode/"+encodeFile.getText(),
-				      "decode/"+decodeFile.getText(),
-				      "weights/"+weightsFile.getText(),
-				      optimize);
+		String enc = "encode/"+encodeFile.getText();
+		String dec = "decode/"+decodeFile.getText();
+		String wts = "weights/"+weightsFile.getText();
+		boolean opt = optimize;
+		runTask("Decode", dec, task -> encdec.decode(enc, dec, wts, opt));
+	}
+	
+	/**
+	 * The Interface Operation - an operation run by runTask() on the worker thread.
+	 */
+	private interface Operation {
+		
+		/**
+		 * Runs the operation.
+		 *
+		 * @param task the task running the operation, to check if it was cancelled
+		 * @return the result of an encode or decode; null if there is none
+		 */
+		HuffCompressionResult run(Task<HuffCompressionResult> task);
+	}
+	
+	/**
+	 * Runs an operation as a Task on the worker thread, so the GUI stays responsive.
+	 * While the task runs, the buttons are disabled and the ProgressBar and the status
+	 * Label follow the number of bytes the engine has read, with the throughput and the
+	 * estimated time remaining. The Cancel button stops the engine at its next read;
+	 * the engine then removes the partial output file, which is removed here as well in
+	 * case it was already complete. When an encode or decode succeeds, its result is
+	 * shown in the done alert.
+	 *
+	 * @param name the name of the operation, for the status Label
+	 * @param outName the name of the output file; null if there is none
+	 * @param operation the operation
+	 */
+	private void runTask(String name, String outName, Operation operation) {
+		Task<HuffCompressionResult> task = new Task<HuffCompressionResult>() {
+			@Override
+			protected HuffCompressionResult call() {
+				long start = System.nanoTime();
+				updateMessage(name+"...");
+				encdec.setProgressListener((done, total) -> {
+					updateProgress(done, total);
+					updateMessage(formatRate(done, total, System.nanoTime() - start));
+				});
+				encdec.setCancelCheck(this::isCancelled);
+				HuffCompressionResult result;
+				try {
+					result = operation.run(this);
+				} finally {
+					encdec.setProgressListener(null);
+					encdec.setCancelCheck(null);
+				}
+				updateProgress(1, 1);
+				updateMessage(String.format("%s done in %.2f s", name, (System.nanoTime() - start) / 1e9));
+				return result;
+			}
+		};
+		task.setOnSucceeded(e -> {
+			endTask(task.getMessage());
+			HuffCompressionResult result = task.getValue();
+			if (result != null && result.hasOutput()) {
+				doneAlert(name+" complete", result.toString());
+			}
+		});
+		task.setOnFailed(e -> endTask(name+" failed: "+task.getException().getMessage()));
+		task.setOnCancelled(e -> {
+			endTask(name+" cancelled");
+			progressBar.setProgress(0);
+			if (outName != null) {
+				worker.execute(() -> new File(outName).delete());
+			}
+		});
+		progressBar.progressProperty().bind(task.progressProperty());
+		lblStatus.textProperty().bind(task.messageProperty());
+		setRunning(true);
+		currentTask = task;
+		worker.execute(task);
+	}
+	
+	/**
+	 * Formats the throughput and the estimated time remaining of the running operation.
+	 *
+	 * @param done the number of bytes processed
+	 * @param total the total number of bytes
+	 * @param nanos the elapsed time, in nanoseconds
+	 * @return the status text
+	 */
+	static String formatRate(long done, long total, long nanos) {
+		if (done <= 0) {
+			return "0.0 MB/s";
+		}
+		double rate = done / (Math.max(nanos, 1) / 1e9);
+		return String.format("%.1f MB/s, ETA %.1f s", rate / (1 << 20), Math.max(0, total - done) / rate);
+	}
+	
+	/**
+	 * Cancels the running operation, if there is one. The task is not interrupted; the
+	 * engine checks for the cancel each time it reads a chunk of its input.
+	 */
+	private void cancelTask() {
+		if (currentTask != null) {
+			currentTask.cancel(false);
+		}
+	}
+	
+	/**
+	 * Unbinds the ProgressBar and the status Label from the finished task, shows the
+	 * final status and enables the buttons.
+	 *
+	 * @param status the final status
+	 */
+	private void endTask(String status) {
+		progressBar.progressProperty().unbind();
+		lblStatus.textProperty().unbind();
+		lblStatus.setText(status);
+		currentTask = null;
+		setRunning(false);
+	}
+	
+	/**
+	 * Disables the buttons that start an operation while one is running, and enables
+	 * the Cancel button.
+	 *
+	 * @param running true if an operation is running
+	 */
+	private void setRunning(boolean running) {
+		btnGenWeights.setDisable(running);
+		btnEncode.setDisable(running);
+		btnDecode.setDisable(running);
+		btnClear.setDisable(running);
+		btnCancel.setDisable(!running);
+	}
+	
+	/**
+	 * Runs the code on the JavaFX application thread and waits for its result. The
+	 * alerts are raised by the engine on the worker thread, but a JavaFX Alert can 
+	 * only be shown on the application thread.
+	 *
+	 * @param <T> the type of the result
+	 * @param code the code to run
+	 * @return the result
+	 */
+	private <T> T onFxThread(Callable<T> code) {
+		try {
+			if (Platform.isFxApplicationThread()) {
+				return code.call();
+			}
+			FutureTask<T> future = new FutureTask<T>(code);
+			Platform.runLater(future);
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
 	}
 	
 	/**
@@ -370,10 +580,13 @@ public class HuffCompGUI extends Application {
 	 * @param errorMsg the error msg
 	 */
 	void inputAlert(String hdr, String errorMsg) {
-			Alert alert = new Alert(AlertType.WARNING);
-			alert.setHeaderText(hdr);
-			alert.setContentText(errorMsg);
-			alert.showAndWait();
+		onFxThread(() -> {
+				Alert alert = new Alert(AlertType.WARNING);
+				alert.setHeaderText(hdr);
+				alert.setContentText(errorMsg);
+				alert.showAndWait();
+				return null;
+		});
 	}
 
 	/**
@@ -384,10 +597,13 @@ public class HuffCompGUI extends Application {
 	 * @param errorMsg the error msg
 	 */
 	void outputAlert(String hdr, String errorMsg) {
-			Alert alert = new Alert(AlertType.WARNING);
-			alert.setHeaderText(hdr);
-			alert.setContentText(errorMsg);
-			alert.showAndWait();
+		onFxThread(() -> {
+				Alert alert = new Alert(AlertType.WARNING);
+				alert.setHeaderText(hdr);
+				alert.setContentText(errorMsg);
+				alert.showAndWait();
+				return null;
+		});
 	}
 
 	/**
@@ -400,13 +616,15 @@ public class HuffCompGUI extends Application {
 	 * @return true if the user confirms the action; otherwise false.
 	 */
 	boolean confirmAlert(String hdr, String msg) {	
-			Alert alert = new Alert(AlertType.CONFIRMATION);
-			alert.setHeaderText(hdr);
-			alert.setContentText(msg);
-			Optional<ButtonType> result = alert.showAndWait();
-			if (result.isPresent())
-				return(result.get() == ButtonType.OK);
-			return false;
+		return onFxThread(() -> {
+				Alert alert = new Alert(AlertType.CONFIRMATION);
+				alert.setHeaderText(hdr);
+				alert.setContentText(msg);
+				Optional<ButtonType> result = alert.showAndWait();
+				if (result.isPresent())
+					return(result.get() == ButtonType.OK);
+				return false;
+		});
 	}
 
 	/**
@@ -416,10 +634,13 @@ public class HuffCompGUI extends Application {
 	 * @param success the success
 	 */
 	void doneAlert(String hdr, String success) {
-			Alert alert = new Alert(AlertType.INFORMATION);
-			alert.setHeaderText(hdr);
-			alert.setContentText(success);
-			alert.showAndWait();
+		onFxThread(() -> {
+				Alert alert = new Alert(AlertType.INFORMATION);
+				alert.setHeaderText(hdr);
+				alert.setContentText(success);
+				alert.showAndWait();
+				return null;
+		});
 	}
 	
 	/**
@@ -0,0 +1,859 @@
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class HuffCompServer. A local compression service, so that several processes on
+ * one host share a warm JVM, the codebook cache and the built-in models. Requests are
+ * framed messages over a TCP or Unix-domain socket, and are compressed to, or
+ * decompressed from, the .huf container in memory, with the stream classes
+ * (HuffmanOutputStream, AdaptiveHuffmanOutputStream) or a built-in model - no request
+ * touches the disk.
+ *
+ * Request frame (big-endian):
+ *   operation  1 byte   OP_COMPRESS or OP_DECOMPRESS
+ *   flags      1 byte   FLAG_MODEL, FLAG_ADAPTIVE (compress only)
+ *   request ID 4 bytes  returned in the response
+ *   length     4 bytes  the length of the payload (at most MAX_PAYLOAD)
+ *   payload
+ * Response frame:
+ *   status     1 byte   STATUS_OK, or STATUS_ERROR with a UTF-8 message as the payload
+ *   request ID 4 bytes
+ *   length     4 bytes
+ *   payload
+ *
+ * A decompress fails if its result would be larger than MAX_RESULT, so a small payload
+ * that decodes to a large one cannot exhaust the memory of the shared JVM. Every request
+ * is recorded in the engine metrics (see HuffEngineMetrics), like the encodes and decodes
+ * of EncodeDecode.
+ *
+ * A client may pipeline requests: it can send further requests before the responses
+ * arrive. The requests of a connection are processed concurrently, so the responses can
+ * arrive in a different order - the request ID matches them up.
+ *
+ * One selector thread does all socket I/O; the requests are processed by a fixed pool of
+ * workers. The server applies backpressure instead of queueing without limit: the
+ * workers' queue holds at most queueSize requests, and a connection stops being read
+ * (so TCP flow control pushes back on the client) while it has maxInFlight requests
+ * being processed, while its unsent responses exceed MAX_OUTPUT_BACKLOG bytes, or while
+ * a request it sent is waiting for room in the queue.
+ *
+ * Run: java -cp bin HuffCompServer [-w workers] [-q queue size] [-f max in flight] address
+ * where address is port, host:port or unix:path. See HuffCompClient for the client and
+ * the load generator.
+ */
+public class HuffCompServer implements Closeable {
+
+	/** Operation: compress the payload to a .huf container. */
+	static final byte OP_COMPRESS = 1;
+
+	/** Operation: decompress the .huf container in the payload. */
+	static final byte OP_DECOMPRESS = 2;
+
+	/** Flag: compress with a built-in model (see HuffModelLibrary). */
+	static final byte FLAG_MODEL = 1;
+
+	/** Flag: compress with an adaptive code. */
+	static final byte FLAG_ADAPTIVE = 2;
+
+	/** Status: the payload is the result. */
+	static final byte STATUS_OK = 0;
+
+	/** Status: the payload is an error message. */
+	static final byte STATUS_ERROR = 1;
+
+	/** The size of the request header. */
+	static final int REQUEST_HEADER_SIZE = 10;
+
+	/** The size of the response header. */
+	static final int RESPONSE_HEADER_SIZE = 9;
+
+	/** The largest payload accepted. */
+	static final int MAX_PAYLOAD = 64 << 20;
+
+	/** The largest result of a decompress: no more than a compress would accept. */
+	static final int MAX_RESULT = MAX_PAYLOAD;
+
+	/** The default number of requests waiting for a worker. */
+	static final int DEFAULT_QUEUE_SIZE = 64;
+
+	/** The default number of requests of one connection being processed at the same time. */
+	static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+	/** The unsent response bytes of a connection at which it stops being read. */
+	static final int MAX_OUTPUT_BACKLOG = 4 << 20;
+
+	/**
+	 * The Class Connection. The state of one client connection. Only used by the
+	 * selector thread.
+	 */
+	static class Connection {
+
+		/** The channel. */
+		SocketChannel channel;
+
+		/** The selection key. */
+		SelectionKey key;
+
+		/** The header of the request being read. */
+		ByteBuffer header = ByteBuffer.allocate(REQUEST_HEADER_SIZE);
+
+		/** The payload of the request being read; null while the header is read. */
+		ByteBuffer payload;
+
+		/** A complete request waiting for room in the workers' queue; null if none. */
+		Request pending;
+
+		/** The responses waiting to be sent. */
+		ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+
+		/** The number of bytes waiting to be sent. */
+		long backlog;
+
+		/** The number of requests being processed. */
+		int inFlight;
+
+		/** If true, no more requests are read, and the connection is closed once the responses are sent. */
+		boolean closing;
+
+		/** If true, the connection is closed. */
+		boolean closed;
+	}
+
+	/**
+	 * The Class Request. A request, and the response once it is processed.
+	 */
+	static class Request {
+
+		/** The connection. */
+		Connection conn;
+
+		/** The operation. */
+		byte op;
+
+		/** The flags. */
+		byte flags;
+
+		/** The request ID. */
+		int id;
+
+		/** The payload. */
+		byte[] payload;
+
+		/** The response frame. */
+		ByteBuffer response;
+	}
+
+	/** The address to listen on. */
+	private SocketAddress address;
+
+	/** The number of workers. */
+	private int workers;
+
+	/** The number of requests that can wait for a worker. */
+	private int queueSize;
+
+	/** The number of requests of one connection that can be processed at the same time. */
+	private int maxInFlight;
+
+	/** The selector. */
+	private Selector selector;
+
+	/** The server channel. */
+	private ServerSocketChannel server;
+
+	/** The workers. */
+	private ExecutorService pool;
+
+	/** The room in the workers' queue: one permit per request processed or waiting. */
+	private Semaphore queueSlots;
+
+	/** The processed requests, handed back to the selector thread. */
+	private ConcurrentLinkedQueue<Request> completed = new ConcurrentLinkedQueue<Request>();
+
+	/** The connections with a request waiting for room in the queue. */
+	private ArrayDeque<Connection> stalled = new ArrayDeque<Connection>();
+
+	/** The selector thread. */
+	private Thread selectorThread;
+
+	/** False once the server is closed. */
+	private volatile boolean running;
+
+	/** The codebook cache shared by the workers. */
+	private HuffCodebookCache codebookCache = new HuffCodebookCache();
+
+	/** The number of requests processed. */
+	private LongAdder requests = new LongAdder();
+
+	/** The number of requests that failed. */
+	private LongAdder errors = new LongAdder();
+
+	/** The number of times a request had to wait for room in the queue. */
+	private LongAdder stalls = new LongAdder();
+
+	/** The metrics each request is recorded in; null for none */
+	private HuffEngineMetrics metrics = HuffEngineMetrics.getInstance();
+
+	/**
+	 * Instantiates a new server with the default queue size and in flight limit.
+	 *
+	 * @param address the address to listen on
+	 * @param workers the number of workers
+	 */
+	public HuffCompServer(SocketAddress address, int workers) {
+		this(address, workers, DEFAULT_QUEUE_SIZE, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Instantiates a new server.
+	 *
+	 * @param address the address to listen on
+	 * @param workers the number of workers
+	 * @param queueSize the number of requests that can wait for a worker
+	 * @param maxInFlight the number of requests of one connection that can be processed at the same time
+	 */
+	public HuffCompServer(SocketAddress address, int workers, int queueSize, int maxInFlight) {
+		this.address = address;
+		this.workers = Math.max(1, workers);
+		this.queueSize = Math.max(0, queueSize);
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * Parses an address: port or host:port for TCP (the host defaults to the loopback
+	 * address), or unix:path for a Unix-domain socket.
+	 *
+	 * @param address the address
+	 * @return the socket address
+	 * @throws IOException if the host is not known
+	 * @throws NumberFormatException if the port is not a number
+	 */
+	static SocketAddress parseAddress(String address) throws IOException {
+		if (address.startsWith("unix:")) {
+			return UnixDomainSocketAddress.of(address.substring(5));
+		}
+		int colon = address.lastIndexOf(':');
+		InetAddress host = (colon < 0) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address.substring(0, colon));
+		return new InetSocketAddress(host, Integer.parseInt(address.substring(colon + 1)));
+	}
+
+	/**
+	 * Opens a socket channel of the right protocol family for an address.
+	 *
+	 * @param address the address
+	 * @return the channel, not connected
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static SocketChannel openChannel(SocketAddress address) throws IOException {
+		return (address instanceof UnixDomainSocketAddress) ? SocketChannel.open(StandardProtocolFamily.UNIX)
+				                                            : SocketChannel.open();
+	}
+
+	/**
+	 * Starts listening, and starts the selector thread and the workers.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void start() throws IOException {
+		selector = Selector.open();
+		server = (address instanceof UnixDomainSocketAddress) ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+				                                              : ServerSocketChannel.open();
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		pool = Executors.newFixedThreadPool(workers);
+		queueSlots = new Semaphore(workers + queueSize);
+		running = true;
+		selectorThread = new Thread(this::selectLoop, "HuffCompServer");
+		selectorThread.start();
+	}
+
+	/**
+	 * Gets the address the server listens on (with the actual port, if port 0 was given).
+	 *
+	 * @return the address
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	SocketAddress getLocalAddress() throws IOException {
+		return server.getLocalAddress();
+	}
+
+	/**
+	 * The selector thread: accepts connections, reads requests, hands them to the
+	 * workers, and writes the responses.
+	 */
+	private void selectLoop() {
+		while (running) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				break;
+			}
+			Request request;
+			while ((request = completed.poll()) != null) {
+				complete(request);
+			}
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+				if (!key.isValid()) {
+					continue;
+				}
+				if (key.isAcceptable()) {
+					accept();
+					continue;
+				}
+				Connection conn = (Connection) key.attachment();
+				try {
+					if (key.isWritable()) {
+						write(conn);
+					}
+					if (!conn.closed && key.isReadable()) {
+						read(conn);
+					}
+				} catch (IOException e) {
+					closeConnection(conn);
+				}
+			}
+			retryStalled();
+		}
+	}
+
+	/**
+	 * Accepts a connection.
+	 */
+	private void accept() {
+		try {
+			SocketChannel channel = server.accept();
+			if (channel == null) {
+				return;
+			}
+			channel.configureBlocking(false);
+			Connection conn = new Connection();
+			conn.channel = channel;
+			conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+		} catch (IOException e) {
+			// the client has gone; keep serving the others
+		}
+	}
+
+	/**
+	 * Checks whether a connection has stopped being read.
+	 *
+	 * @param conn the connection
+	 * @return true, if no more requests are read for now
+	 */
+	private boolean isPaused(Connection conn) {
+		return conn.pending != null || conn.closing || conn.inFlight >= maxInFlight || conn.backlog >= MAX_OUTPUT_BACKLOG;
+	}
+
+	/**
+	 * Reads requests from a connection until the socket has no more data or the
+	 * connection is paused, and hands each complete request to the workers.
+	 *
+	 * @param conn the connection
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void read(Connection conn) throws IOException {
+		while (!isPaused(conn)) {
+			ByteBuffer buffer = (conn.payload == null) ? conn.header : conn.payload;
+			if (buffer.hasRemaining()) {
+				int numRead = conn.channel.read(buffer);
+				if (numRead < 0) {
+					conn.closing = true;
+					break;
+				}
+				if (buffer.hasRemaining()) {
+					break;
+				}
+			}
+			if (conn.payload == null) {
+				int length = conn.header.getInt(6);
+				if (length < 0 || length > MAX_PAYLOAD) {
+					conn.output.add(response(STATUS_ERROR, conn.header.getInt(2),
+							("The payload of "+length+" bytes is larger than "+MAX_PAYLOAD).getBytes(StandardCharsets.UTF_8)));
+					conn.closing = true;
+					break;
+				}
+				conn.payload = ByteBuffer.allocate(length);
+				continue;
+			}
+			Request request = new Request();
+			request.conn = conn;
+			request.op = conn.header.get(0);
+			request.flags = conn.header.get(1);
+			request.id = conn.header.getInt(2);
+			request.payload = conn.payload.array();
+			conn.header.clear();
+			conn.payload = null;
+			if (!dispatch(request)) {
+				conn.pending = request;
+				stalled.add(conn);
+				stalls.increment();
+			}
+		}
+		updateInterest(conn);
+	}
+
+	/**
+	 * Hands a request to the workers, if there is room in the queue.
+	 *
+	 * @param request the request
+	 * @return true, if the request was queued
+	 */
+	private boolean dispatch(Request request) {
+		if (!queueSlots.tryAcquire()) {
+			return false;
+		}
+		request.conn.inFlight++;
+		pool.execute(() -> {
+			try {
+				request.response = process(request);
+			} catch (RuntimeException e) {
+				request.response = response(STATUS_ERROR, request.id, e.toString().getBytes(StandardCharsets.UTF_8));
+			} finally {
+				queueSlots.release();
+				completed.add(request);
+				selector.wakeup();
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Queues the response of a processed request. Runs on the selector thread.
+	 *
+	 * @param request the request
+	 */
+	private void complete(Request request) {
+		Connection conn = request.conn;
+		conn.inFlight--;
+		if (conn.closed) {
+			return;
+		}
+		conn.output.add(request.response);
+		conn.backlog += request.response.remaining();
+		try {
+			write(conn);
+		} catch (IOException e) {
+			closeConnection(conn);
+		}
+	}
+
+	/**
+	 * Retries the requests that were waiting for room in the queue, in the order they
+	 * stalled.
+	 */
+	private void retryStalled() {
+		while (!stalled.isEmpty()) {
+			Connection conn = stalled.peek();
+			if (!conn.closed) {
+				if (!dispatch(conn.pending)) {
+					return;
+				}
+				conn.pending = null;
+				updateInterest(conn);
+			}
+			stalled.poll();
+		}
+	}
+
+	/**
+	 * Writes as much of the queued responses as the socket accepts.
+	 *
+	 * @param conn the connection
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(Connection conn) throws IOException {
+		while (!conn.output.isEmpty()) {
+			ByteBuffer buffer = conn.output.peek();
+			int numWritten = conn.channel.write(buffer);
+			conn.backlog -= numWritten;
+			if (buffer.hasRemaining()) {
+				break;
+			}
+			conn.output.poll();
+		}
+		updateInterest(conn);
+	}
+
+	/**
+	 * Sets the operations the selector waits for on a connection, and closes a closing
+	 * connection once its responses are sent.
+	 *
+	 * @param conn the connection
+	 */
+	private void updateInterest(Connection conn) {
+		if (conn.closed) {
+			return;
+		}
+		if (conn.closing && conn.inFlight == 0 && conn.output.isEmpty()) {
+			closeConnection(conn);
+			return;
+		}
+		int ops = (isPaused(conn) ? 0 : SelectionKey.OP_READ) | (conn.output.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+		conn.key.interestOps(ops);
+	}
+
+	/**
+	 * Closes a connection. Responses still being processed are dropped.
+	 *
+	 * @param conn the connection
+	 */
+	private void closeConnection(Connection conn) {
+		conn.closed = true;
+		conn.key.cancel();
+		try {
+			conn.channel.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Processes a request on a worker. The payload is compressed to, or decompressed
+	 * from, a .huf container in memory, through the stream classes - nothing is written
+	 * to disk. Any error of the engine fails the request, with its message as the error.
+	 * The request is recorded in the metrics, with the sizes of the payload and result.
+	 *
+	 * @param request the request
+	 * @return the response frame
+	 */
+	ByteBuffer process(Request request) {
+		requests.increment();
+		HuffCompressionResult result = new HuffCompressionResult(request.op == OP_COMPRESS, null, null);
+		if (metrics != null) {
+			metrics.jobStarted();
+		}
+		long start = System.nanoTime();
+		try {
+			byte[] data;
+			if (request.op == OP_COMPRESS) {
+				data = compress(request.payload, request.flags, result);
+			} else if (request.op == OP_DECOMPRESS) {
+				data = decompress(request.payload, result);
+			} else {
+				throw new IOException("Unknown operation "+request.op);
+			}
+			long nanos = System.nanoTime() - start;
+			result.addPhase(result.isEncode() ? HuffCompressionResult.ENCODE : HuffCompressionResult.DECODE,
+					        nanos - result.getPhaseNanos(HuffCompressionResult.CODES));
+			jobFinished(result, nanos, request.payload.length, data.length);
+			return response(STATUS_OK, request.id, data);
+		} catch (IOException | RuntimeException e) {
+			errors.increment();
+			String message = (e.getMessage() != null) ? e.getMessage() : e.toString();
+			result.addError(message);
+			jobFinished(result, System.nanoTime() - start, request.payload.length, 0);
+			return response(STATUS_ERROR, request.id, message.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Completes the result of a request, and records it in the metrics.
+	 *
+	 * @param result the result
+	 * @param nanos the time of the request, in nanoseconds
+	 * @param inputBytes the size of the payload
+	 * @param outputBytes the size of the result; 0 if the request failed
+	 */
+	private void jobFinished(HuffCompressionResult result, long nanos, long inputBytes, long outputBytes) {
+		result.finish(nanos, inputBytes, outputBytes);
+		if (metrics != null) {
+			metrics.jobFinished(result);
+		}
+	}
+
+	/**
+	 * Compresses a payload to a .huf container: with an AdaptiveHuffmanOutputStream
+	 * (MODE_ADAPTIVE) for FLAG_ADAPTIVE, with the codebook of the best built-in model
+	 * (MODE_MODEL) for FLAG_MODEL, and otherwise with a HuffmanOutputStream (MODE_STREAM)
+	 * with a block size of the whole payload, up to HuffmanOutputStream.MAX_BLOCK_SIZE.
+	 *
+	 * @param data the payload
+	 * @param flags the flags of the request
+	 * @param result the result of the request, for the codebook phase
+	 * @return the .huf container
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private byte[] compress(byte[] data, byte flags, HuffCompressionResult result) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		if ((flags & FLAG_ADAPTIVE) != 0) {
+			AdaptiveHuffmanOutputStream ahos = new AdaptiveHuffmanOutputStream(out);
+			ahos.write(data);
+			ahos.finish();
+		} else if ((flags & FLAG_MODEL) != 0) {
+			int modelId = HuffModelLibrary.selectModel(data, Math.min(data.length, HuffModelLibrary.FINGERPRINT_SIZE));
+			HuffmanCompressionUtilities huffUtil = getCodebook(HuffModelLibrary.getCodeLengths(modelId), result).getHuffUtil();
+			new HuffFileHeader(data.length, modelId).write(out);
+			BitWriter bitWriter = new BinaryIO().openBitWriter(out);
+			bitWriter.writeCodes(data, 0, data.length, huffUtil.getCodeValues(), huffUtil.getCodeLengths());
+			bitWriter.flush();
+		} else {
+			int blockSize = Math.max(1, Math.min(data.length, HuffmanOutputStream.MAX_BLOCK_SIZE));
+			HuffmanOutputStream hos = new HuffmanOutputStream(out, blockSize);
+			hos.write(data);
+			hos.finish();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decompresses a .huf container. MODE_STREAM and MODE_ADAPTIVE containers are read
+	 * through a HuffmanInputStream and an AdaptiveHuffmanInputStream; MODE_STATIC and
+	 * MODE_MODEL containers are decoded with the codebook of their code lengths, and must
+	 * decode to the original length in the header. Blocked containers are not accepted -
+	 * they are decoded in parallel from a file by EncodeDecode. The result may not be
+	 * larger than MAX_RESULT.
+	 *
+	 * @param data the .huf container
+	 * @param result the result of the request, for the codebook phase
+	 * @return the original data
+	 * @throws IOException if the payload is not a .huf container, is corrupt or truncated, or
+	 *                     decodes to more than MAX_RESULT bytes
+	 */
+	private byte[] decompress(byte[] data, HuffCompressionResult result) throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(data);
+		if (!HuffFileHeader.readMagic(in)) {
+			throw new IOException("Not a "+HuffFileHeader.HUF_EXT+" payload - the magic number is missing");
+		}
+		HuffFileHeader header = HuffFileHeader.read(in);
+		ByteArrayOutputStream out;
+		switch (header.getMode()) {
+		case HuffFileHeader.MODE_STREAM:
+			out = new ByteArrayOutputStream(Math.max(32, Math.min(MAX_RESULT, data.length * 2)));
+			copyStream(new HuffmanInputStream(in, true), out);
+			break;
+		case HuffFileHeader.MODE_ADAPTIVE:
+			out = new ByteArrayOutputStream(Math.max(32, Math.min(MAX_RESULT, data.length * 2)));
+			copyStream(new AdaptiveHuffmanInputStream(in, true), out);
+			break;
+		case HuffFileHeader.MODE_STATIC:
+		case HuffFileHeader.MODE_MODEL:
+			byte[] codeLengths = (header.getMode() == HuffFileHeader.MODE_MODEL) ?
+					HuffModelLibrary.getCodeLengths(header.getModelId()) : header.getCodeLengths();
+			if (codeLengths == null) {
+				throw new IOException("Unsupported or corrupt .huf header");
+			}
+			if (header.getOriginalLength() > MAX_RESULT) {
+				throw tooLarge();
+			}
+			out = new ByteArrayOutputStream((int) header.getOriginalLength());
+			HuffmanDecodeTable decodeTable = getCodebook(codeLengths, result).getDecodeTable();
+			long decoded = decodeTable.decodeCount(new BinaryIO().openBitReader(in), out, header.getOriginalLength());
+			if (decoded != header.getOriginalLength()) {
+				throw new IOException("Decoded "+decoded+" of "+header.getOriginalLength()+" bytes");
+			}
+			break;
+		default:
+			throw new IOException("Unsupported .huf mode "+header.getMode()+" - decompress blocked files with HuffCompCLI");
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Copies a decompressing stream to the output, up to MAX_RESULT bytes. If the stream
+	 * fails, the number of bytes decoded before the error is part of the message.
+	 *
+	 * @param in the decompressing stream
+	 * @param out the output
+	 * @throws IOException if the stream is corrupt or truncated, or decodes to more than MAX_RESULT bytes
+	 */
+	private static void copyStream(InputStream in, ByteArrayOutputStream out) throws IOException {
+		byte[] chunk = new byte[8192];
+		int numRead;
+		try {
+			while ((numRead = in.read(chunk)) != -1) {
+				if (numRead > MAX_RESULT - out.size()) {
+					throw tooLarge();
+				}
+				out.write(chunk, 0, numRead);
+			}
+		} catch (IOException e) {
+			throw new IOException("Decoded "+out.size()+" bytes before the error: "+e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Creates the error for a result larger than MAX_RESULT.
+	 *
+	 * @return the exception
+	 */
+	private static IOException tooLarge() {
+		return new IOException("The result is larger than "+MAX_RESULT+" bytes");
+	}
+
+	/**
+	 * Gets the codebook for canonical code lengths from the shared codebook cache,
+	 * building it the first time. The time to build it is the CODES phase of the result.
+	 *
+	 * @param codeLengths the code lengths
+	 * @param result the result of the request
+	 * @return the codebook
+	 * @throws IOException if the code lengths are not valid
+	 */
+	private HuffCodebook getCodebook(byte[] codeLengths, HuffCompressionResult result) throws IOException {
+		String key = HuffCodebookCache.lengthsKey(codeLengths);
+		HuffCodebook codebook = codebookCache.get(key);
+		if (codebook == null) {
+			long start = System.nanoTime();
+			HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+			if (!huffUtil.setCodeLengths(codeLengths)) {
+				throw new IOException("Unsupported or corrupt .huf header");
+			}
+			codebook = new HuffCodebook(huffUtil, null);
+			codebookCache.put(key, codebook);
+			result.addPhase(HuffCompressionResult.CODES, System.nanoTime() - start);
+		} else {
+			result.setCodebookCached();
+		}
+		return codebook;
+	}
+
+	/**
+	 * Builds a response frame.
+	 *
+	 * @param status the status
+	 * @param id the request ID
+	 * @param payload the payload
+	 * @return the frame, ready to be written
+	 */
+	static ByteBuffer response(byte status, int id, byte[] payload) {
+		ByteBuffer frame = ByteBuffer.allocate(RESPONSE_HEADER_SIZE + payload.length);
+		frame.put(status).putInt(id).putInt(payload.length).put(payload);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Gets the number of requests processed.
+	 *
+	 * @return the number of requests
+	 */
+	long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Gets the number of requests that failed.
+	 *
+	 * @return the number of errors
+	 */
+	long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * Gets the number of times a request had to wait for room in the workers' queue.
+	 *
+	 * @return the number of stalls
+	 */
+	long getStalls() {
+		return stalls.sum();
+	}
+
+	/**
+	 * Sets the metrics each request is recorded in. By default, this is the shared
+	 * instance registered with the platform MBean server - see HuffEngineMetrics.
+	 *
+	 * @param metrics the metrics; null to record nothing
+	 */
+	void setMetrics(HuffEngineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the codebook cache shared by the workers.
+	 *
+	 * @return the codebook cache
+	 */
+	HuffCodebookCache getCodebookCache() {
+		return codebookCache;
+	}
+
+	/**
+	 * Stops the server: closes every connection, stops the workers, and removes the
+	 * Unix-domain socket file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (SelectionKey key : selector.keys()) {
+			key.channel().close();
+		}
+		selector.close();
+		pool.shutdownNow();
+		if (address instanceof UnixDomainSocketAddress) {
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+		}
+	}
+
+	/**
+	 * Runs the server until the process is stopped.
+	 *
+	 * @param args [-w workers] [-q queue size] [-f max in flight] address
+	 * @throws Exception if the server cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		int workers = Runtime.getRuntime().availableProcessors();
+		int queueSize = DEFAULT_QUEUE_SIZE;
+		int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+		String address = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-w": workers = Integer.parseInt(args[++i]); break;
+			case "-q": queueSize = Integer.parseInt(args[++i]); break;
+			case "-f": maxInFlight = Integer.parseInt(args[++i]); break;
+			default: address = args[i];
+			}
+		}
+		if (address == null) {
+			System.err.println("Usage: HuffCompServer [-w workers] [-q queue size] [-f max in flight] (port | host:port | unix:path)");
+			System.exit(2);
+		}
+		HuffCompServer server = new HuffCompServer(parseAddress(address), workers, queueSize, maxInFlight);
+		server.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				server.close();
+			} catch (IOException e) {
+				// exiting anyway
+			}
+		}));
+		System.out.println("HuffCompServer listening on "+server.getLocalAddress()+" with "+workers+" workers");
+	}
+}
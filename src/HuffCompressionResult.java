@@ -0,0 +1,329 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class HuffCompressionResult. The result of one EncodeDecode.encode or decode: the
+ * sizes of the input and output files, the compression ratio and bits per symbol, and the
+ * time spent in each phase of the engine, in the order the phases ran. A phase that ran
+ * more than once (or not at all, when the codebook came from the codebook cache) is
+ * summed (or absent).
+ *
+ * The sizes are measured on the files, so the ratio and bits per symbol are those of the
+ * whole file, including the .huf header. The HuffCompServer works in memory, and gives
+ * the sizes of the payload and result of each request instead.
+ *
+ * The result also records the errors of the engine: the alerts that stopped the encode
+ * or decode, an exception, or a cancel. A failed result has at least one error. An empty
+ * output file is not an error - it is the correct decode of an empty original.
+ */
+public class HuffCompressionResult {
+
+	/** The phase that generates the weights from the input file. */
+	static final String WEIGHTS = "weights";
+
+	/** The phase that reads the weights file. */
+	static final String READ_WEIGHTS = "read weights";
+
+	/** The phase that builds the Huffman tree. */
+	static final String TREE = "tree";
+
+	/** The phase that creates the codes (tree codes, canonical codes, or codes from code lengths). */
+	static final String CODES = "codes";
+
+	/** The phase that writes the encoded file. */
+	static final String ENCODE = "encode";
+
+	/** The phase that writes the decoded file. */
+	static final String DECODE = "decode";
+
+	/** The number of bytes in a megabyte, for MB/s. */
+	private static final double MB = 1 << 20;
+
+	/** True for an encode, false for a decode. */
+	private final boolean encode;
+
+	/** The input file. */
+	private final File input;
+
+	/** The output file. */
+	private final File output;
+
+	/** The time of each phase, in nanoseconds, in the order the phases ran. */
+	private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+	/** True if the codebook came from the codebook cache. */
+	private boolean codebookCached;
+
+	/** The size of the input file. */
+	private long inputBytes;
+
+	/** The size of the output file; 0 if there is no output file. */
+	private long outputBytes;
+
+	/** True if the output file exists once the engine is finished. */
+	private boolean hasOutput;
+
+	/** The total time, in nanoseconds. */
+	private long totalNanos;
+
+	/** The errors that stopped the engine, in the order they occurred. */
+	private final List<String> errors = new ArrayList<String>();
+
+	/**
+	 * Instantiates a new result.
+	 *
+	 * @param encode true for an encode, false for a decode
+	 * @param input the input file
+	 * @param output the output file
+	 */
+	public HuffCompressionResult(boolean encode, File input, File output) {
+		this.encode = encode;
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Adds the time of a phase.
+	 *
+	 * @param phase the phase
+	 * @param nanos the time, in nanoseconds
+	 */
+	void addPhase(String phase, long nanos) {
+		phases.merge(phase, nanos, Long::sum);
+	}
+
+	/**
+	 * Records that the codebook came from the codebook cache.
+	 */
+	void setCodebookCached() {
+		codebookCached = true;
+	}
+
+	/**
+	 * Records an error that stopped the engine.
+	 *
+	 * @param error the error message
+	 */
+	void addError(String error) {
+		errors.add(error);
+	}
+
+	/**
+	 * Records the sizes of the files and the total time, once the engine is finished.
+	 *
+	 * @param totalNanos the total time, in nanoseconds
+	 */
+	void finish(long totalNanos) {
+		this.totalNanos = totalNanos;
+		inputBytes = (input != null) ? input.length() : 0;
+		hasOutput = output != null && output.isFile();
+		outputBytes = hasOutput ? output.length() : 0;
+	}
+
+	/**
+	 * Records the sizes and the total time of an in-memory encode or decode, which has no
+	 * files, once it is finished.
+	 *
+	 * @param totalNanos the total time, in nanoseconds
+	 * @param inputBytes the size of the input
+	 * @param outputBytes the size of the output; 0 if there is no output
+	 */
+	void finish(long totalNanos, long inputBytes, long outputBytes) {
+		this.totalNanos = totalNanos;
+		this.inputBytes = inputBytes;
+		this.outputBytes = outputBytes;
+		hasOutput = !isFailed();
+	}
+
+	/**
+	 * Checks if this is the result of an encode.
+	 *
+	 * @return true for an encode, false for a decode
+	 */
+	boolean isEncode() {
+		return encode;
+	}
+
+	/**
+	 * Gets the input file.
+	 *
+	 * @return the input file
+	 */
+	File getInput() {
+		return input;
+	}
+
+	/**
+	 * Gets the time of a phase.
+	 *
+	 * @param phase the phase
+	 * @return the time, in nanoseconds; 0 if the phase did not run
+	 */
+	long getPhaseNanos(String phase) {
+		return phases.getOrDefault(phase, 0L);
+	}
+
+	/**
+	 * Gets the time of each phase, in the order the phases ran.
+	 *
+	 * @return the phases
+	 */
+	Map<String, Long> getPhases() {
+		return phases;
+	}
+
+	/**
+	 * Checks if the codebook came from the codebook cache.
+	 *
+	 * @return true, if the tree and codes were not rebuilt
+	 */
+	boolean isCodebookCached() {
+		return codebookCached;
+	}
+
+	/**
+	 * Checks if the engine wrote the output file. The engine removes the output file if
+	 * it fails part way.
+	 *
+	 * @return true, if the output file exists
+	 */
+	boolean hasOutput() {
+		return hasOutput;
+	}
+
+	/**
+	 * Gets the errors that stopped the engine.
+	 *
+	 * @return the error messages; empty if the engine succeeded
+	 */
+	List<String> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Checks if the encode or decode failed.
+	 *
+	 * @return true, if the engine recorded an error
+	 */
+	boolean isFailed() {
+		return !errors.isEmpty();
+	}
+
+	/**
+	 * Gets the size of the input file.
+	 *
+	 * @return the size in bytes
+	 */
+	long getInputBytes() {
+		return inputBytes;
+	}
+
+	/**
+	 * Gets the size of the output file.
+	 *
+	 * @return the size in bytes; 0 if there is no output file
+	 */
+	long getOutputBytes() {
+		return outputBytes;
+	}
+
+	/**
+	 * Gets the size of the original (uncompressed) file: the input of an encode, the
+	 * output of a decode.
+	 *
+	 * @return the size in bytes
+	 */
+	long getOriginalBytes() {
+		return encode ? inputBytes : outputBytes;
+	}
+
+	/**
+	 * Gets the size of the compressed file: the output of an encode, the input of a decode.
+	 *
+	 * @return the size in bytes
+	 */
+	long getCompressedBytes() {
+		return encode ? outputBytes : inputBytes;
+	}
+
+	/**
+	 * Gets the compression ratio: the original size over the compressed size.
+	 *
+	 * @return the ratio; 0 if there is no compressed file
+	 */
+	double getRatio() {
+		return (getCompressedBytes() > 0) ? (double) getOriginalBytes() / getCompressedBytes() : 0;
+	}
+
+	/**
+	 * Gets the average number of compressed bits per original symbol (byte).
+	 *
+	 * @return the bits per symbol; 0 if the original file is empty
+	 */
+	double getBitsPerSymbol() {
+		return (getOriginalBytes() > 0) ? 8.0 * getCompressedBytes() / getOriginalBytes() : 0;
+	}
+
+	/**
+	 * Gets the total time of the encode or decode.
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the throughput of the encode or decode, over the original size.
+	 *
+	 * @return the throughput, in MB/s
+	 */
+	double getThroughput() {
+		return (totalNanos > 0) ? getOriginalBytes() / MB / (totalNanos / 1e9) : 0;
+	}
+
+	/**
+	 * Formats the phases on one line, for the CLI.
+	 *
+	 * @return the phases, e.g. "read weights 0.2 ms, tree 0.1 ms, codes 0.1 ms, encode 12.3 ms"
+	 */
+	String formatPhases() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Long> phase : phases.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(String.format("%s %.1f ms", phase.getKey(), phase.getValue() / 1e6));
+		}
+		if (codebookCached) {
+			sb.append((sb.length() > 0) ? ", " : "").append("cached codebook");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Formats the full report: the sizes, ratio, bits per symbol and throughput, then one
+	 * line per phase.
+	 *
+	 * @return the report
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s -> %s%n", (input != null) ? input.getName() : "",
+				                (output != null) ? output.getName() : ""));
+		sb.append(String.format("%d -> %d bytes, ratio %.2f:1, %.3f bits/symbol%n", inputBytes, outputBytes,
+				                getRatio(), getBitsPerSymbol()));
+		for (Map.Entry<String, Long> phase : phases.entrySet()) {
+			sb.append(String.format("  %-13s %10.3f ms%n", phase.getKey(), phase.getValue() / 1e6));
+		}
+		if (codebookCached) {
+			sb.append(String.format("  %-13s %13s%n", "codebook", "cached"));
+		}
+		sb.append(String.format("  %-13s %10.3f ms (%.1f MB/s)", "total", totalNanos / 1e6, getThroughput()));
+		return sb.toString();
+	}
+}
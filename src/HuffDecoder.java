@@ -0,0 +1,10 @@
+/**
+ * The Enum HuffDecoder - enumerated type representing the different
+ *                        decode engines available to EncodeDecode.decode
+ */
+public enum HuffDecoder {
+	/** Multi-bit table lookup - see HuffmanDecodeTable. */
+	TABLE,
+	/** Byte at a time finite state automaton - see HuffmanFSADecoder. */
+	FSA
+}
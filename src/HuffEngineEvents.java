@@ -0,0 +1,262 @@
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Class HuffEngineEvents. The JDK Flight Recorder events of the engine phases:
+ * weights generation, tree build, code generation, and the encode and decode of each
+ * block of a blocked container. Each event carries the file name, the byte counts, the
+ * symbol count and the maximum code length, so a recording of a batch shows which files
+ * and phases are slow, next to the GC and I/O events of the JVM.
+ *
+ * The engine creates an event, calls begin() before the phase and commitXxx() after it.
+ * The fields are only filled in (the tree walked, the code lengths scanned) when the
+ * event is enabled in a running recording - see Event.shouldCommit() - so the cost is
+ * close to zero when recording is off.
+ */
+public class HuffEngineEvents {
+
+	/** The category of the events in JDK Mission Control. */
+	static final String CATEGORY = "Huffman Compression";
+
+	/**
+	 * The Class EngineEvent. The fields shared by all of the engine events.
+	 */
+	abstract static class EngineEvent extends Event {
+
+		/** The file being processed. */
+		@Label("File")
+		String fileName;
+
+		/** The number of bytes read. */
+		@Label("Bytes In")
+		@DataAmount
+		long bytesIn;
+
+		/** The number of bytes written. */
+		@Label("Bytes Out")
+		@DataAmount
+		long bytesOut;
+
+		/** The number of symbols: the characters with a weight or code, or the symbols in a block. */
+		@Label("Symbols")
+		int symbolCount;
+
+		/** The longest code, in bits. */
+		@Label("Max Code Length")
+		int maxCodeLength;
+	}
+
+	/**
+	 * The Class WeightsEvent. GenWeights counts the weights of a file.
+	 */
+	@Name("huffman.WeightsGeneration")
+	@Label("Weights Generation")
+	@Description("Counting the frequency weights of a file")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class WeightsEvent extends EngineEvent {
+	}
+
+	/**
+	 * The Class TreeBuildEvent. The Huffman tree is built from the weights.
+	 */
+	@Name("huffman.TreeBuild")
+	@Label("Tree Build")
+	@Description("Building the Huffman tree from the weights")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class TreeBuildEvent extends EngineEvent {
+	}
+
+	/**
+	 * The Class CodeGenerationEvent. The codes are created from the tree or the code lengths.
+	 */
+	@Name("huffman.CodeGeneration")
+	@Label("Code Generation")
+	@Description("Creating the tree, canonical or length limited codes")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class CodeGenerationEvent extends EngineEvent {
+	}
+
+	/**
+	 * The Class BlockEncodeEvent. One block of a blocked container is encoded.
+	 */
+	@Name("huffman.BlockEncode")
+	@Label("Block Encode")
+	@Description("Encoding one block of a blocked .huf container")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class BlockEncodeEvent extends EngineEvent {
+
+		/** The block number. */
+		@Label("Block")
+		int block;
+	}
+
+	/**
+	 * The Class BlockDecodeEvent. One block of a blocked container is decoded.
+	 */
+	@Name("huffman.BlockDecode")
+	@Label("Block Decode")
+	@Description("Decoding one block of a blocked .huf container")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class BlockDecodeEvent extends EngineEvent {
+
+		/** The block number. */
+		@Label("Block")
+		int block;
+	}
+
+	/**
+	 * Commits a weights event.
+	 *
+	 * @param event the event, begun before the weights were counted
+	 * @param file the file the weights were counted from
+	 * @param weights the weights
+	 */
+	static void commitWeights(WeightsEvent event, File file, int[] weights) {
+		if (event.shouldCommit()) {
+			event.fileName = file.getName();
+			event.bytesIn = file.length();
+			event.symbolCount = countSymbols(weights);
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commits a tree build event.
+	 *
+	 * @param event the event, begun before the tree was built
+	 * @param file the file being encoded or decoded
+	 * @param huffUtil the built tree
+	 */
+	static void commitTree(TreeBuildEvent event, File file, HuffmanCompressionUtilities huffUtil) {
+		if (event.shouldCommit()) {
+			event.fileName = (file != null) ? file.getName() : "";
+			event.bytesIn = (file != null) ? file.length() : 0;
+			event.symbolCount = countLeaves(huffUtil.getTreeRoot());
+			event.maxCodeLength = treeDepth(huffUtil.getTreeRoot());
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commits a code generation event.
+	 *
+	 * @param event the event, begun before the codes were created
+	 * @param file the file being encoded or decoded
+	 * @param huffUtil the created codes
+	 */
+	static void commitCodes(CodeGenerationEvent event, File file, HuffmanCompressionUtilities huffUtil) {
+		if (event.shouldCommit()) {
+			event.fileName = (file != null) ? file.getName() : "";
+			event.bytesIn = (file != null) ? file.length() : 0;
+			byte[] lengths = huffUtil.getCodeLengths();
+			if (lengths != null) {
+				for (byte length : lengths) {
+					event.symbolCount += (length > 0) ? 1 : 0;
+					event.maxCodeLength = Math.max(event.maxCodeLength, length);
+				}
+			} else if (huffUtil.getEncodeMap() != null) {
+				for (String code : huffUtil.getEncodeMap()) {
+					if (code != null && !code.isEmpty()) {
+						event.symbolCount++;
+						event.maxCodeLength = Math.max(event.maxCodeLength, code.length());
+					}
+				}
+			}
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commits a block encode or decode event.
+	 *
+	 * @param event the event, begun before the block was encoded or decoded
+	 * @param file the file being encoded or decoded
+	 * @param block the block number
+	 * @param bytesIn the bytes read
+	 * @param bytesOut the bytes written
+	 * @param symbols the number of symbols in the block
+	 * @param maxCodeLength the longest code
+	 */
+	static void commitBlock(EngineEvent event, File file, int block, long bytesIn, long bytesOut, int symbols,
+			                int maxCodeLength) {
+		if (event.shouldCommit()) {
+			event.fileName = file.getName();
+			event.bytesIn = bytesIn;
+			event.bytesOut = bytesOut;
+			event.symbolCount = symbols;
+			event.maxCodeLength = maxCodeLength;
+			if (event instanceof BlockEncodeEvent) {
+				((BlockEncodeEvent) event).block = block;
+			} else if (event instanceof BlockDecodeEvent) {
+				((BlockDecodeEvent) event).block = block;
+			}
+			event.commit();
+		}
+	}
+
+	/**
+	 * Gets the longest code length.
+	 *
+	 * @param codeLengths the code lengths
+	 * @return the longest code length
+	 */
+	static int maxLength(byte[] codeLengths) {
+		int max = 0;
+		for (byte length : codeLengths) {
+			max = Math.max(max, length);
+		}
+		return max;
+	}
+
+	/**
+	 * Counts the characters with a non-zero weight.
+	 *
+	 * @param weights the weights
+	 * @return the number of characters
+	 */
+	private static int countSymbols(int[] weights) {
+		int count = 0;
+		for (int weight : weights) {
+			count += (weight > 0) ? 1 : 0;
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the leaves of a tree.
+	 *
+	 * @param node the root
+	 * @return the number of leaves
+	 */
+	private static int countLeaves(HuffmanTreeNode node) {
+		if (node == null) {
+			return 0;
+		}
+		return node.isLeaf() ? 1 : countLeaves(node.getLeft()) + countLeaves(node.getRight());
+	}
+
+	/**
+	 * Gets the depth of a tree: the length of its longest code.
+	 *
+	 * @param node the root
+	 * @return the depth
+	 */
+	private static int treeDepth(HuffmanTreeNode node) {
+		if (node == null || node.isLeaf()) {
+			return 0;
+		}
+		return 1 + Math.max(treeDepth(node.getLeft()), treeDepth(node.getRight()));
+	}
+}
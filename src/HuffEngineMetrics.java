@@ -0,0 +1,280 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The Class HuffEngineMetrics. Live metrics of every EncodeDecode in the JVM, for
+ * monitoring with JConsole or any JMX client: the bytes in and out, the files encoded
+ * and decoded, the active jobs, the codebook cache hit rate, the average ratio, and the
+ * encode and decode latency histograms. The shared instance is registered with the
+ * platform MBean server as OBJECT_NAME the first time it is used.
+ *
+ * EncodeDecode calls jobStarted() and jobFinished() around each encode and decode, on
+ * many threads at once, so every counter is a LongAdder: updates do not contend, and
+ * only the (rare) reads sum the cells. The latency histograms have one bucket per power
+ * of two microseconds.
+ */
+public class HuffEngineMetrics implements HuffEngineMetricsMBean {
+
+	/** The object name of the shared instance. */
+	static final String OBJECT_NAME = "HuffmanCompression:type=EngineMetrics";
+
+	/** The number of latency buckets: bucket i holds latencies below 2^i microseconds, the last one the rest. */
+	static final int NUM_BUCKETS = 32;
+
+	/** The shared instance, created and registered on first use. */
+	private static HuffEngineMetrics instance;
+
+	/** The bytes in. */
+	private final LongAdder bytesIn = new LongAdder();
+
+	/** The bytes out. */
+	private final LongAdder bytesOut = new LongAdder();
+
+	/** The files encoded. */
+	private final LongAdder filesEncoded = new LongAdder();
+
+	/** The files decoded. */
+	private final LongAdder filesDecoded = new LongAdder();
+
+	/** The failures. */
+	private final LongAdder failures = new LongAdder();
+
+	/** The active jobs. */
+	private final LongAdder activeJobs = new LongAdder();
+
+	/** The codebooks taken from a cache. */
+	private final LongAdder cacheHits = new LongAdder();
+
+	/** The codebooks built. */
+	private final LongAdder cacheMisses = new LongAdder();
+
+	/** The total original size of the files processed. */
+	private final LongAdder originalBytes = new LongAdder();
+
+	/** The total compressed size of the files processed. */
+	private final LongAdder compressedBytes = new LongAdder();
+
+	/** The encode latency histogram. */
+	private final LongAdder[] encodeLatency = newHistogram();
+
+	/** The decode latency histogram. */
+	private final LongAdder[] decodeLatency = newHistogram();
+
+	/**
+	 * Gets the shared instance, registering it with the platform MBean server the first
+	 * time. If it can't be registered, the metrics are still collected.
+	 *
+	 * @return the shared instance
+	 */
+	static synchronized HuffEngineMetrics getInstance() {
+		if (instance == null) {
+			instance = new HuffEngineMetrics();
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				server.registerMBean(instance, new ObjectName(OBJECT_NAME));
+			} catch (InstanceAlreadyExistsException e) {
+				// registered by another class loader - that instance is the one monitored
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates an empty latency histogram.
+	 *
+	 * @return the histogram
+	 */
+	private static LongAdder[] newHistogram() {
+		LongAdder[] histogram = new LongAdder[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			histogram[i] = new LongAdder();
+		}
+		return histogram;
+	}
+
+	/**
+	 * Gets the bucket of a latency.
+	 *
+	 * @param nanos the latency, in nanoseconds
+	 * @return the bucket: the number of bits in the latency in microseconds
+	 */
+	static int bucket(long nanos) {
+		long micros = nanos / 1000;
+		return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * Records the start of an encode or decode.
+	 */
+	void jobStarted() {
+		activeJobs.increment();
+	}
+
+	/**
+	 * Records the end of an encode or decode. It counts as a failure if the engine
+	 * recorded an error - see HuffCompressionResult.isFailed().
+	 *
+	 * @param result the result
+	 */
+	void jobFinished(HuffCompressionResult result) {
+		activeJobs.decrement();
+		bytesIn.add(result.getInputBytes());
+		bytesOut.add(result.getOutputBytes());
+		if (result.isCodebookCached()) {
+			cacheHits.increment();
+		} else if (result.getPhaseNanos(HuffCompressionResult.CODES) > 0) {
+			cacheMisses.increment();
+		}
+		if (result.isFailed()) {
+			failures.increment();
+			return;
+		}
+		originalBytes.add(result.getOriginalBytes());
+		compressedBytes.add(result.getCompressedBytes());
+		if (result.isEncode()) {
+			filesEncoded.increment();
+			encodeLatency[bucket(result.getTotalNanos())].increment();
+		} else {
+			filesDecoded.increment();
+			decodeLatency[bucket(result.getTotalNanos())].increment();
+		}
+	}
+
+	/**
+	 * Sums a histogram.
+	 *
+	 * @param histogram the histogram
+	 * @return the count of each bucket
+	 */
+	private static long[] sum(LongAdder[] histogram) {
+		long[] counts = new long[histogram.length];
+		for (int i = 0; i < histogram.length; i++) {
+			counts[i] = histogram[i].sum();
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets a percentile of a histogram, as the upper bound of the bucket it falls in.
+	 *
+	 * @param histogram the histogram
+	 * @param percent the percentile
+	 * @return the latency, in milliseconds; 0 if the histogram is empty
+	 */
+	static double percentile(long[] histogram, double percent) {
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(percent / 100 * total);
+		long seen = 0;
+		for (int i = 0; i < histogram.length && total > 0; i++) {
+			seen += histogram[i];
+			if (seen >= rank) {
+				return (1L << i) / 1000.0;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public long getFilesEncoded() {
+		return filesEncoded.sum();
+	}
+
+	@Override
+	public long getFilesDecoded() {
+		return filesDecoded.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getActiveJobs() {
+		return activeJobs.sum();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = cacheHits.sum();
+		long lookups = hits + cacheMisses.sum();
+		return (lookups > 0) ? (double) hits / lookups : 0;
+	}
+
+	@Override
+	public double getAverageRatio() {
+		long compressed = compressedBytes.sum();
+		return (compressed > 0) ? (double) originalBytes.sum() / compressed : 0;
+	}
+
+	@Override
+	public long[] getLatencyBucketBoundsMicros() {
+		long[] bounds = new long[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			bounds[i] = (i < NUM_BUCKETS - 1) ? 1L << i : Long.MAX_VALUE;
+		}
+		return bounds;
+	}
+
+	@Override
+	public long[] getEncodeLatencyHistogram() {
+		return sum(encodeLatency);
+	}
+
+	@Override
+	public long[] getDecodeLatencyHistogram() {
+		return sum(decodeLatency);
+	}
+
+	@Override
+	public double getEncodeLatencyP50() {
+		return percentile(getEncodeLatencyHistogram(), 50);
+	}
+
+	@Override
+	public double getEncodeLatencyP99() {
+		return percentile(getEncodeLatencyHistogram(), 99);
+	}
+
+	@Override
+	public double getDecodeLatencyP50() {
+		return percentile(getDecodeLatencyHistogram(), 50);
+	}
+
+	@Override
+	public double getDecodeLatencyP99() {
+		return percentile(getDecodeLatencyHistogram(), 99);
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : new LongAdder[] {bytesIn, bytesOut, filesEncoded, filesDecoded, failures,
+				                                cacheHits, cacheMisses, originalBytes, compressedBytes}) {
+			adder.reset();
+		}
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			encodeLatency[i].reset();
+			decodeLatency[i].reset();
+		}
+	}
+}
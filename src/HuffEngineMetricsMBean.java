@@ -0,0 +1,120 @@
+/**
+ * The Interface HuffEngineMetricsMBean - the JMX management interface of HuffEngineMetrics.
+ * The attributes are cumulative since the engine started (or since the last reset).
+ * Latencies are in milliseconds; the histograms count the encodes or decodes in each
+ * bucket, with the upper bound of each bucket given by LatencyBucketBoundsMicros.
+ */
+public interface HuffEngineMetricsMBean {
+
+	/**
+	 * Gets the number of bytes read by the encodes and decodes.
+	 *
+	 * @return the bytes in
+	 */
+	long getBytesIn();
+
+	/**
+	 * Gets the number of bytes written by the encodes and decodes.
+	 *
+	 * @return the bytes out
+	 */
+	long getBytesOut();
+
+	/**
+	 * Gets the number of files encoded.
+	 *
+	 * @return the files encoded
+	 */
+	long getFilesEncoded();
+
+	/**
+	 * Gets the number of files decoded.
+	 *
+	 * @return the files decoded
+	 */
+	long getFilesDecoded();
+
+	/**
+	 * Gets the number of encodes and decodes that did not write their output file.
+	 *
+	 * @return the failures
+	 */
+	long getFailures();
+
+	/**
+	 * Gets the number of encodes and decodes running now.
+	 *
+	 * @return the active jobs
+	 */
+	long getActiveJobs();
+
+	/**
+	 * Gets the fraction of the codebooks that were taken from a codebook cache instead of
+	 * being built.
+	 *
+	 * @return the cache hit rate, from 0 to 1; 0 if no codebook was needed
+	 */
+	double getCacheHitRate();
+
+	/**
+	 * Gets the average compression ratio: the total original size over the total
+	 * compressed size, for the files processed.
+	 *
+	 * @return the average ratio; 0 if no file was processed
+	 */
+	double getAverageRatio();
+
+	/**
+	 * Gets the upper bound of each latency bucket.
+	 *
+	 * @return the bounds, in microseconds
+	 */
+	long[] getLatencyBucketBoundsMicros();
+
+	/**
+	 * Gets the latency histogram of the encodes.
+	 *
+	 * @return the number of encodes in each bucket
+	 */
+	long[] getEncodeLatencyHistogram();
+
+	/**
+	 * Gets the latency histogram of the decodes.
+	 *
+	 * @return the number of decodes in each bucket
+	 */
+	long[] getDecodeLatencyHistogram();
+
+	/**
+	 * Gets the median encode latency, to the upper bound of its bucket.
+	 *
+	 * @return the latency, in milliseconds
+	 */
+	double getEncodeLatencyP50();
+
+	/**
+	 * Gets the 99th percentile encode latency, to the upper bound of its bucket.
+	 *
+	 * @return the latency, in milliseconds
+	 */
+	double getEncodeLatencyP99();
+
+	/**
+	 * Gets the median decode latency, to the upper bound of its bucket.
+	 *
+	 * @return the latency, in milliseconds
+	 */
+	double getDecodeLatencyP50();
+
+	/**
+	 * Gets the 99th percentile decode latency, to the upper bound of its bucket.
+	 *
+	 * @return the latency, in milliseconds
+	 */
+	double getDecodeLatencyP99();
+
+	/**
+	 * Resets all the counters except the active jobs.
+	 */
+	void reset();
+}
@@ -0,0 +1,314 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The Class HuffFileHeader. Describes the header of the self-describing .huf container.
+ * The header carries everything needed to rebuild the canonical codebook, so a .huf
+ * file can be decoded without the weights file that was used to encode it.
+ *
+ * Layout (big endian):
+ *   magic            4 bytes  "HUF!"
+ *   version          1 byte
+ *   mode             1 byte   (MODE_STATIC, MODE_STREAM, MODE_BLOCKED, MODE_ADAPTIVE or MODE_MODEL)
+ * MODE_STATIC and MODE_BLOCKED only:
+ *   original length  8 bytes  number of characters in the original file
+ *   alphabet size    2 bytes
+ *   code lengths     1 byte per character in the alphabet (0 = no code)
+ * MODE_BLOCKED only:
+ *   block size       4 bytes  number of characters in each block (except the last)
+ * MODE_MODEL only:
+ *   original length  8 bytes  number of characters in the original file
+ *   model ID         2 bytes  the built-in model that holds the code lengths - see HuffModelLibrary
+ * The canonical Huffman bitstream follows immediately, padded to a byte boundary.
+ * There is no EOF character - the decoder stops after original length characters.
+ * In MODE_BLOCKED every block starts on a byte boundary, and the file ends with a 
+ * HuffBlockIndex trailer.
+ * 
+ * In MODE_STREAM the header is followed by the blocks written by HuffmanOutputStream,
+ * each of which carries its own code lengths. In MODE_ADAPTIVE the header is followed by
+ * the codes written by AdaptiveHuffmanOutputStream, which need no codebook at all.
+ * MODE_MODEL is laid out like MODE_STATIC, but the code lengths come from a built-in model.
+ */
+public class HuffFileHeader {
+
+	/** The magic number at the start of every .huf file ("HUF!"). */
+	static final int MAGIC = 0x48554621;
+
+	/** The current container version. */
+	static final int VERSION = 1;
+
+	/** The file extension that selects the container format when encoding. */
+	static final String HUF_EXT = ".huf";
+
+	/** Mode: a single canonical codebook for the whole file. */
+	static final int MODE_STATIC = 0;
+
+	/** Mode: a sequence of independent blocks - see HuffmanOutputStream. */
+	static final int MODE_STREAM = 1;
+
+	/** Mode: fixed size blocks sharing one codebook, with a block index - see ParallelBlockEncoder. */
+	static final int MODE_BLOCKED = 2;
+
+	/** Mode: a single pass adaptive Huffman code - see AdaptiveHuffmanOutputStream. */
+	static final int MODE_ADAPTIVE = 3;
+
+	/** Mode: a single codebook taken from a built-in model - see HuffModelLibrary. */
+	static final int MODE_MODEL = 4;
+
+	/** The container version. */
+	private int version;
+
+	/** The container mode. */
+	private int mode;
+
+	/** The number of characters in the original file. */
+	private long originalLength;
+
+	/** The canonical code lengths; the array length is the alphabet size. */
+	private byte[] codeLengths;
+
+	/** The number of characters in each block - MODE_BLOCKED only. */
+	private int blockSize;
+
+	/** The built-in model - MODE_MODEL only. */
+	private int modelId;
+
+	/**
+	 * Instantiates a new header for a mode that has no codebook in the header (MODE_STREAM
+	 * or MODE_ADAPTIVE).
+	 *
+	 * @param mode the container mode
+	 */
+	public HuffFileHeader(int mode) {
+		this(mode, -1, new byte[0]);
+	}
+
+	/**
+	 * Instantiates a new header.
+	 *
+	 * @param mode the container mode
+	 * @param originalLength the number of characters in the original file
+	 * @param codeLengths the canonical code lengths
+	 */
+	public HuffFileHeader(int mode, long originalLength, byte[] codeLengths) {
+		this.version = VERSION;
+		this.mode = mode;
+		this.originalLength = originalLength;
+		this.codeLengths = codeLengths;
+	}
+
+	/**
+	 * Instantiates a new header for a blocked container (MODE_BLOCKED).
+	 *
+	 * @param originalLength the number of characters in the original file
+	 * @param codeLengths the canonical code lengths shared by all blocks
+	 * @param blockSize the number of characters in each block
+	 */
+	public HuffFileHeader(long originalLength, byte[] codeLengths, int blockSize) {
+		this(MODE_BLOCKED, originalLength, codeLengths);
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Instantiates a new header for a container encoded with a built-in model (MODE_MODEL).
+	 *
+	 * @param originalLength the number of characters in the original file
+	 * @param modelId the model ID - see HuffModelLibrary
+	 */
+	public HuffFileHeader(long originalLength, int modelId) {
+		this(MODE_MODEL, originalLength, new byte[0]);
+		this.modelId = modelId;
+	}
+
+	/**
+	 * Gets the version.
+	 *
+	 * @return the version
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the mode.
+	 *
+	 * @return the mode
+	 */
+	int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Gets the original length.
+	 *
+	 * @return the original length
+	 */
+	long getOriginalLength() {
+		return originalLength;
+	}
+
+	/**
+	 * Gets the code lengths.
+	 *
+	 * @return the code lengths
+	 */
+	byte[] getCodeLengths() {
+		return codeLengths;
+	}
+
+	/**
+	 * Gets the block size.
+	 *
+	 * @return the block size; 0 if the container is not blocked
+	 */
+	int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Gets the built-in model.
+	 *
+	 * @return the model ID; 0 if the container is not encoded with a model
+	 */
+	int getModelId() {
+		return modelId;
+	}
+
+	/**
+	 * Gets the number of blocks in a blocked container.
+	 *
+	 * @return the number of blocks
+	 */
+	int getNumBlocks() {
+		return (int) ((originalLength + blockSize - 1) / blockSize);
+	}
+
+	/**
+	 * Gets the size of the header in bytes.
+	 *
+	 * @return the header size
+	 */
+	int getSize() {
+		if (mode == MODE_MODEL) {
+			return 16;
+		}
+		if (!hasCodebook(mode)) {
+			return 6;
+		}
+		return 16 + codeLengths.length + ((mode == MODE_BLOCKED) ? 4 : 0);
+	}
+
+	/**
+	 * Writes the header to the output stream.
+	 *
+	 * @param os the output stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void write(OutputStream os) throws IOException {
+		DataOutputStream dos = new DataOutputStream(os);
+		dos.writeInt(MAGIC);
+		dos.writeByte(version);
+		dos.writeByte(mode);
+		if (hasCodebook(mode)) {
+			dos.writeLong(originalLength);
+			dos.writeShort(codeLengths.length);
+			dos.write(codeLengths);
+		}
+		if (mode == MODE_BLOCKED) {
+			dos.writeInt(blockSize);
+		}
+		if (mode == MODE_MODEL) {
+			dos.writeLong(originalLength);
+			dos.writeShort(modelId);
+		}
+		dos.flush();
+	}
+
+	/**
+	 * Reads the header from the input stream. The magic number MUST already have been
+	 * consumed (see readMagic).
+	 *
+	 * @param is the input stream, positioned just after the magic number
+	 * @return the header
+	 * @throws IOException Signals that an I/O exception has occurred, or the version is not supported
+	 */
+	static HuffFileHeader read(InputStream is) throws IOException {
+		DataInputStream dis = new DataInputStream(is);
+		int version = dis.readUnsignedByte();
+		if (version > VERSION) {
+			throw new IOException("Unsupported .huf version: "+version);
+		}
+		int mode = dis.readUnsignedByte();
+		if (mode == MODE_MODEL) {
+			HuffFileHeader header = new HuffFileHeader(dis.readLong(), dis.readUnsignedShort());
+			header.version = version;
+			return header;
+		}
+		if (!hasCodebook(mode)) {
+			HuffFileHeader header = new HuffFileHeader(mode);
+			header.version = version;
+			return header;
+		}
+		long originalLength = dis.readLong();
+		byte[] codeLengths = new byte[dis.readUnsignedShort()];
+		dis.readFully(codeLengths);
+		HuffFileHeader header = new HuffFileHeader(mode, originalLength, codeLengths);
+		if (mode == MODE_BLOCKED) {
+			header.blockSize = dis.readInt();
+			if (header.blockSize <= 0) {
+				throw new IOException("Corrupt .huf header - bad block size");
+			}
+		}
+		header.version = version;
+		return header;
+	}
+
+	/**
+	 * Checks if the header of a mode carries the original length and the code lengths.
+	 *
+	 * @param mode the container mode
+	 * @return true, for MODE_STATIC and MODE_BLOCKED
+	 */
+	private static boolean hasCodebook(int mode) {
+		return mode == MODE_STATIC || mode == MODE_BLOCKED;
+	}
+
+	/**
+	 * Reads the first 4 bytes of the stream and checks them against the magic number.
+	 *
+	 * @param is the input stream
+	 * @return true, if the stream starts with the .huf magic number
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static boolean readMagic(InputStream is) throws IOException {
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = is.read();
+			if (b == -1) {
+				return false;
+			}
+			magic = (magic << 8) | b;
+		}
+		return magic == MAGIC;
+	}
+
+	/**
+	 * Checks if the file is a .huf container, by looking at the magic number. Headerless
+	 * (.bin) files do not start with the magic number.
+	 *
+	 * @param file the file to check
+	 * @return true, if the file is a .huf container
+	 */
+	static boolean isContainer(File file) {
+		try (FileInputStream fis = new FileInputStream(file)) {
+			return readMagic(fis);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
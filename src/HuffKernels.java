@@ -0,0 +1,168 @@
+/**
+ * The Class HuffKernels. The hot loops of the byte histogram (GenWeights) and the bulk
+ * bit packer (BitWriter.writeCodes()). This class holds the portable scalar kernels.
+ *
+ * HuffVectorKernels, in the src-vector source folder, overrides them with the Java Vector
+ * API (jdk.incubator.vector). It is only used if the module is in the boot layer and the
+ * class was compiled, otherwise the scalar kernels are used. To enable it:
+ *   javac --add-modules jdk.incubator.vector -cp bin -d bin src-vector/*.java
+ *   java --add-modules jdk.incubator.vector -cp bin ...
+ * HuffBenchmark reports the weights and packing benchmarks with each available kernel.
+ */
+public class HuffKernels {
+
+	/** The module of the Vector API. */
+	static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	/** The class of the Vector API kernels, loaded by name so this class compiles without the module. */
+	static final String VECTOR_CLASS = "HuffVectorKernels";
+
+	/** The number of byte values. */
+	static final int NUM_BYTES = 256;
+
+	/** The number of interleaved sub-histograms of the scalar kernel. */
+	private static final int NUM_SUB_HISTOGRAMS = 4;
+
+	/** The scalar kernels. */
+	private static final HuffKernels SCALAR = new HuffKernels();
+
+	/** The Vector API kernels; null if they are not available. */
+	private static final HuffKernels VECTOR = loadVectorKernels();
+
+	/** The kernels used by the engine. */
+	private static volatile HuffKernels active = (VECTOR != null) ? VECTOR : SCALAR;
+
+	/**
+	 * Loads the Vector API kernels, if the module is in the boot layer and the class is on
+	 * the classpath.
+	 *
+	 * @return the kernels, or null if they are not available
+	 */
+	private static HuffKernels loadVectorKernels() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			return null;
+		}
+		try {
+			return (HuffKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the kernels used by the engine: the Vector API kernels if they are available,
+	 * otherwise the scalar kernels.
+	 *
+	 * @return the kernels
+	 */
+	static HuffKernels get() {
+		return active;
+	}
+
+	/**
+	 * Selects the kernels used by the engine, so the benchmark can compare them.
+	 *
+	 * @param kernels the kernels - scalar() or vector()
+	 */
+	static void setActive(HuffKernels kernels) {
+		active = kernels;
+	}
+
+	/**
+	 * Gets the scalar kernels.
+	 *
+	 * @return the scalar kernels
+	 */
+	static HuffKernels scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * Gets the Vector API kernels.
+	 *
+	 * @return the kernels, or null if they are not available
+	 */
+	static HuffKernels vector() {
+		return VECTOR;
+	}
+
+	/**
+	 * Gets the name of the kernels, for the benchmark.
+	 *
+	 * @return the name
+	 */
+	String getName() {
+		return "scalar";
+	}
+
+	/**
+	 * Gets the number of sub-histograms that countChunk() counts into.
+	 *
+	 * @return the number of sub-histograms
+	 */
+	int getNumSubHistograms() {
+		return NUM_SUB_HISTOGRAMS;
+	}
+
+	/**
+	 * Counts each byte value in a chunk. Consecutive bytes are counted into
+	 * NUM_SUB_HISTOGRAMS interleaved sub-histograms, so a run of the same byte does not
+	 * make each increment wait for the previous one to be stored.
+	 *
+	 * @param chunk the bytes to count
+	 * @param numBytes the number of bytes in the chunk
+	 * @param sub the getNumSubHistograms() sub-histograms, one after the other
+	 */
+	void countChunk(byte[] chunk, int numBytes, int[] sub) {
+		int i = 0;
+		for (; i + 3 < numBytes; i += 4) {
+			sub[chunk[i] & 0xFF]++;
+			sub[NUM_BYTES + (chunk[i + 1] & 0xFF)]++;
+			sub[2 * NUM_BYTES + (chunk[i + 2] & 0xFF)]++;
+			sub[3 * NUM_BYTES + (chunk[i + 3] & 0xFF)]++;
+		}
+		for (; i < numBytes; i++) {
+			sub[chunk[i] & 0xFF]++;
+		}
+	}
+
+	/**
+	 * Gets the count of one byte value in the sub-histograms filled by countChunk().
+	 *
+	 * @param sub the sub-histograms
+	 * @param value the byte value
+	 * @return the count
+	 */
+	int subCount(int[] sub, int value) {
+		return sub[value] + sub[NUM_BYTES + value] + sub[2 * NUM_BYTES + value] + sub[3 * NUM_BYTES + value];
+	}
+
+	/**
+	 * Finds the first byte that has no code, so that the packing loop of writeCodes() does
+	 * not have to test each code length.
+	 *
+	 * @param data the bytes to encode
+	 * @param off the index of the first byte
+	 * @param len the number of bytes
+	 * @param codeLengths the length of each code (0 = no code)
+	 * @return the index of the first byte with no code, or off+len if every byte has a code
+	 */
+	int findUncoded(byte[] data, int off, int len, byte[] codeLengths) {
+		int end = off + len;
+		if (codeLengths.length < NUM_BYTES) {
+			for (int i = off; i < end; i++) {
+				int ord = data[i] & 0xFF;
+				if (ord >= codeLengths.length || codeLengths[ord] == 0) {
+					return i;
+				}
+			}
+			return end;
+		}
+		for (int i = off; i < end; i++) {
+			if (codeLengths[data[i] & 0xFF] == 0) {
+				return i;
+			}
+		}
+		return end;
+	}
+}
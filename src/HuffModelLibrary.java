@@ -0,0 +1,189 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * The Class HuffModelLibrary. The built-in static models for the .huf container
+ * (MODE_MODEL). Each model is a canonical codebook trained from the English texts in
+ * data/, stored as the code length of every byte value. A file encoded with a model
+ * needs no weights pass and no weights file, and its header holds only the model ID
+ * instead of the code lengths, so small files compress in one pass with no per-file
+ * model overhead.
+ *
+ * Every model gives every byte value a code, so any file can be encoded with any model.
+ * The encoder picks the model that codes the first FINGERPRINT_SIZE bytes of the file
+ * in the fewest bits.
+ *
+ * The code lengths are part of the file format: a model MUST NOT be changed once files
+ * have been encoded with it. A retrained model gets a new ID - run main() to print the
+ * code lengths trained from data/.
+ */
+public class HuffModelLibrary {
+
+	/** Model ID: novel length prose (War and Peace, Harry Potter). */
+	static final int PROSE = 1;
+
+	/** Model ID: short children's verse (Dr. Seuss). */
+	static final int VERSE = 2;
+
+	/** The number of bytes at the start of the file used to pick a model. */
+	static final int FINGERPRINT_SIZE = 4096;
+
+	/** The maximum code length of the models. */
+	private static final int MAX_BITS = 24;
+
+	/** The total weight each training file is scaled to, so every file counts equally. */
+	private static final int TRAINING_SCALE = 1 << 20;
+
+	/** The number of byte values. */
+	private static final int NUM_BYTES = 256;
+
+	/** The name of each model, indexed by model ID. */
+	private static final String[] NAMES = {null, "prose", "verse"};
+
+	/** The training files of each model, in data/, indexed by model ID. */
+	private static final String[][] TRAINING_FILES = {
+		null,
+		{"warAndPeace.txt", "Harry Potter and the Sorcerer.txt"},
+		{"Green Eggs and Ham.txt", "The Cat in the Hat.txt", "simple.txt", "simpler.txt"}
+	};
+
+	/** The code length of each byte value, as 2 hex digits per byte value, indexed by model ID. */
+	private static final String[] CODE_LENGTHS = {
+		null,
+		"1515151515151515151506151515151515151515151515151515151515151515" +
+		"030a0715151515080d0d0e15060806120f0d0f0f101011100f110c0b15151509" +
+		"15090a0a0a0a0a0a08080d0c0b090a0a090c0909090c0b0a0d0b0f1515151515" +
+		"150407060503060604040a0705060404060a0505040607060a060a1515151315" +
+		"1515151515151515151515151515151515151515151515151515151515151515" +
+		"1515151515151515151515151515151515151515151515151515151515151515" +
+		"1515151515151515151515151515151515151515151515151515151515151515" +
+		"1515151515151515151515151515151515151515151515151515151515151414",
+		"1616161616161616161605161616161616161616161616161616161616161616" +
+		"0207161616161608161616160709061616161616161616161616161616161609" +
+		"160a0f0c0d0c16160c0716160c0f090b0e161609090d160a160b161616161616" +
+		"160406050504080804050e07060604050816060503060b060a06161616161616" +
+		"1616161616161616161616161616161616161616161616161616161616161616" +
+		"1616161616161616161616161616161616161616161616161616161616161616" +
+		"1616161616161616161616161616161515151515151515151515151515151515" +
+		"1515151515151515151515151515151515151515151515151515151515151515"
+	};
+
+	/**
+	 * Gets the number of models. The model IDs are 1 to getNumModels().
+	 *
+	 * @return the number of models
+	 */
+	static int getNumModels() {
+		return CODE_LENGTHS.length - 1;
+	}
+
+	/**
+	 * Gets the name of a model.
+	 *
+	 * @param modelId the model ID
+	 * @return the name, or null if there is no such model
+	 */
+	static String getName(int modelId) {
+		return (modelId > 0 && modelId < NAMES.length) ? NAMES[modelId] : null;
+	}
+
+	/**
+	 * Gets the code lengths of a model.
+	 *
+	 * @param modelId the model ID
+	 * @return a new array with the code length of each byte value, or null if there is no such model
+	 */
+	static byte[] getCodeLengths(int modelId) {
+		if (modelId <= 0 || modelId >= CODE_LENGTHS.length) {
+			return null;
+		}
+		String hex = CODE_LENGTHS[modelId];
+		byte[] lengths = new byte[hex.length() / 2];
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return lengths;
+	}
+
+	/**
+	 * Picks the model that codes the fingerprint (the start of the file) in the fewest bits.
+	 *
+	 * @param fingerprint the first bytes of the file
+	 * @param length the number of bytes in the fingerprint
+	 * @return the model ID
+	 */
+	static int selectModel(byte[] fingerprint, int length) {
+		int[] counts = new int[NUM_BYTES];
+		for (int i = 0; i < length; i++) {
+			counts[fingerprint[i] & 0xFF]++;
+		}
+		int best = PROSE;
+		long bestBits = Long.MAX_VALUE;
+		for (int modelId = 1; modelId <= getNumModels(); modelId++) {
+			byte[] lengths = getCodeLengths(modelId);
+			long bits = 0;
+			for (int i = 0; i < NUM_BYTES; i++) {
+				bits += (long) counts[i] * lengths[i];
+			}
+			if (bits < bestBits) {
+				best = modelId;
+				bestBits = bits;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Trains a model: the byte weights of each file are scaled to the same total, summed,
+	 * and given a floor of 1, so every byte value gets a code; the length limited
+	 * canonical codes are then built from the weights.
+	 *
+	 * @param files the training files
+	 * @return the code length of each byte value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static byte[] train(File[] files) throws IOException {
+		double[] total = new double[NUM_BYTES];
+		for (File file : files) {
+			byte[] data = Files.readAllBytes(file.toPath());
+			for (byte b : data) {
+				total[b & 0xFF] += (double) TRAINING_SCALE / data.length;
+			}
+		}
+		int[] weights = new int[NUM_BYTES];
+		for (int i = 0; i < NUM_BYTES; i++) {
+			weights[i] = Math.max(1, (int) Math.round(total[i]));
+		}
+		HuffmanCompressionUtilities huffUtil = new HuffmanCompressionUtilities();
+		huffUtil.setWeights(weights);
+		huffUtil.buildHuffmanTree(true);
+		if (!huffUtil.createLengthLimitedCodes(MAX_BITS, true)) {
+			throw new IOException("Cannot create "+MAX_BITS+" bit codes");
+		}
+		return huffUtil.getCodeLengths();
+	}
+
+	/**
+	 * Trains every model from the texts in data/ and prints the CODE_LENGTHS constants.
+	 *
+	 * @param args not used
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws IOException {
+		for (int modelId = 1; modelId < TRAINING_FILES.length; modelId++) {
+			File[] files = new File[TRAINING_FILES[modelId].length];
+			for (int i = 0; i < files.length; i++) {
+				files[i] = new File("data/"+TRAINING_FILES[modelId][i]);
+			}
+			byte[] lengths = train(files);
+			for (int i = 0; i < lengths.length; i += 32) {
+				StringBuilder hex = new StringBuilder();
+				for (int j = i; j < i + 32; j++) {
+					hex.append(String.format("%02x", lengths[j]));
+				}
+				System.out.println("\t\t\""+hex+((i + 32 < lengths.length) ? "\" +" : "\","));
+			}
+		}
+	}
+}
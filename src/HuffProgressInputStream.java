@@ -0,0 +1,108 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The Class HuffProgressInputStream. Counts the bytes read from the input of an encode
+ * or decode, reports them to a HuffProgressListener, and stops the engine when it is
+ * cancelled: the next read after the cancel throws an InterruptedIOException, which
+ * unwinds the engine like any other read error.
+ *
+ * The listener is called at most once every REPORT_INTERVAL bytes, and at the end of
+ * the input.
+ */
+public class HuffProgressInputStream extends FilterInputStream {
+
+	/** The number of bytes between two reports. */
+	static final int REPORT_INTERVAL = 1 << 16;
+
+	/** The size of the input. */
+	private long total;
+
+	/** The number of bytes read so far. */
+	private long done;
+
+	/** The number of bytes read at the last report. */
+	private long reported;
+
+	/** The listener; may be null. */
+	private HuffProgressListener listener;
+
+	/** Returns true once the engine is cancelled. */
+	private BooleanSupplier cancelled;
+
+	/**
+	 * Instantiates a new progress input stream.
+	 *
+	 * @param in the input stream
+	 * @param total the size of the input
+	 * @param listener the listener; null to only check for a cancel
+	 * @param cancelled returns true once the engine is cancelled
+	 */
+	public HuffProgressInputStream(InputStream in, long total, HuffProgressListener listener, BooleanSupplier cancelled) {
+		super(in);
+		this.total = total;
+		this.listener = listener;
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Reads a byte.
+	 *
+	 * @return the byte, or -1 at the end of the input
+	 * @throws IOException Signals that an I/O exception has occurred, or the engine was cancelled
+	 */
+	@Override
+	public int read() throws IOException {
+		checkCancelled();
+		int b = in.read();
+		count((b < 0) ? -1 : 1);
+		return b;
+	}
+
+	/**
+	 * Reads up to len bytes.
+	 *
+	 * @param b the buffer
+	 * @param off the offset in the buffer
+	 * @param len the number of bytes to read
+	 * @return the number of bytes read, or -1 at the end of the input
+	 * @throws IOException Signals that an I/O exception has occurred, or the engine was cancelled
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkCancelled();
+		int numRead = in.read(b, off, len);
+		count(numRead);
+		return numRead;
+	}
+
+	/**
+	 * Throws if the engine was cancelled.
+	 *
+	 * @throws InterruptedIOException if the engine was cancelled
+	 */
+	private void checkCancelled() throws InterruptedIOException {
+		if (cancelled.getAsBoolean()) {
+			throw new InterruptedIOException("Cancelled");
+		}
+	}
+
+	/**
+	 * Counts the bytes read, and reports them if enough have been read since the last
+	 * report or the input is exhausted.
+	 *
+	 * @param numRead the number of bytes read, or -1 at the end of the input
+	 */
+	private void count(int numRead) {
+		if (numRead > 0) {
+			done += numRead;
+		}
+		if (listener != null && (done - reported >= REPORT_INTERVAL || (numRead < 0 && done != reported))) {
+			reported = done;
+			listener.progress(done, total);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+/**
+ * The Interface HuffProgressListener - receives the progress of an encode or decode
+ * from EncodeDecode, as the number of input bytes processed. It is called on the thread
+ * running the engine, not on the JavaFX application thread.
+ */
+public interface HuffProgressListener {
+
+	/**
+	 * Reports the progress.
+	 *
+	 * @param bytesDone the number of input bytes processed so far
+	 * @param bytesTotal the size of the input in bytes
+	 */
+	void progress(long bytesDone, long bytesTotal);
+}
@@ -0,0 +1,164 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * The Class HuffWeightsFile. The compact binary weights file (.hwt). The CSV weights file
+ * is parsed one line at a time; the binary file is read with a single bulk read and
+ * decoded from memory, which matters when thousands of small files are decoded. The
+ * CSV format remains available as an export format - the format is selected by the
+ * file extension.
+ *
+ * Layout (big endian):
+ *   magic            4 bytes  "HWT!"
+ *   version          1 byte
+ *   alphabet size    2 bytes
+ *   weights          1 unsigned LEB128 varint per character in the alphabet
+ *   checksum         4 bytes  CRC32 of all of the preceding bytes
+ */
+public class HuffWeightsFile {
+
+	/** The magic number at the start of every binary weights file ("HWT!"). */
+	static final int MAGIC = 0x48575421;
+
+	/** The current format version. */
+	static final int VERSION = 1;
+
+	/** The file extension that selects the binary weights format. */
+	static final String WEIGHTS_EXT = ".hwt";
+
+	/** The size in bytes of the fixed header (magic, version and alphabet size). */
+	private static final int HEADER_SIZE = 7;
+
+	/** The size in bytes of the checksum. */
+	private static final int CRC_SIZE = 4;
+
+	/**
+	 * Checks whether the file name selects the binary weights format.
+	 *
+	 * @param file the weights file
+	 * @return true, if the file has the binary weights extension
+	 */
+	static boolean isBinary(File file) {
+		return file != null && file.getName().endsWith(WEIGHTS_EXT);
+	}
+
+	/**
+	 * Encodes the weights in the binary weights format.
+	 *
+	 * @param weights the weight of each character - MUST NOT be negative
+	 * @return the contents of the binary weights file
+	 */
+	static byte[] toBytes(int[] weights) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(HEADER_SIZE + 2 * weights.length + CRC_SIZE);
+		writeInt(bos, MAGIC);
+		bos.write(VERSION);
+		bos.write(weights.length >>> 8);
+		bos.write(weights.length);
+		for (int weight : weights) {
+			int value = weight;
+			while ((value & ~0x7F) != 0) {
+				bos.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bos.write(value);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bos.toByteArray());
+		writeInt(bos, (int) crc.getValue());
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Decodes the weights from the contents of a binary weights file, and checks the magic
+	 * number, version and checksum.
+	 *
+	 * @param data the contents of the binary weights file
+	 * @return the weight of each character
+	 * @throws IOException if the data is not a valid binary weights file
+	 */
+	static int[] fromBytes(byte[] data) throws IOException {
+		if (data.length < HEADER_SIZE + CRC_SIZE || readInt(data, 0) != MAGIC) {
+			throw new IOException("Not a binary weights file");
+		}
+		if (data[4] != VERSION) {
+			throw new IOException("Unsupported binary weights file version "+data[4]);
+		}
+		int end = data.length - CRC_SIZE;
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, end);
+		if ((int) crc.getValue() != readInt(data, end)) {
+			throw new IOException("Corrupt binary weights file - bad checksum");
+		}
+		int[] weights = new int[((data[5] & 0xFF) << 8) | (data[6] & 0xFF)];
+		int pos = HEADER_SIZE;
+		for (int i = 0; i < weights.length; i++) {
+			int value = 0;
+			int b;
+			int shift = 0;
+			do {
+				// the 5th byte of a weight holds bits 28 to 30, and ends the varint
+				if (pos >= end || (shift == 28 && (data[pos] & 0xF8) != 0)) {
+					throw new IOException("Corrupt binary weights file - bad weight "+i);
+				}
+				b = data[pos++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			weights[i] = value;
+		}
+		if (pos != end) {
+			throw new IOException("Corrupt binary weights file - unexpected data after the weights");
+		}
+		return weights;
+	}
+
+	/**
+	 * Writes the weights to a binary weights file.
+	 *
+	 * @param file the file to write
+	 * @param weights the weight of each character
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void write(File file, int[] weights) throws IOException {
+		Files.write(file.toPath(), toBytes(weights));
+	}
+
+	/**
+	 * Reads the weights from a binary weights file with a single bulk read.
+	 *
+	 * @param file the file to read
+	 * @return the weight of each character
+	 * @throws IOException Signals that an I/O exception has occurred, or the file is corrupt
+	 */
+	static int[] read(File file) throws IOException {
+		return fromBytes(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Writes an int, big endian.
+	 *
+	 * @param bos the output
+	 * @param value the value
+	 */
+	private static void writeInt(ByteArrayOutputStream bos, int value) {
+		bos.write(value >>> 24);
+		bos.write(value >>> 16);
+		bos.write(value >>> 8);
+		bos.write(value);
+	}
+
+	/**
+	 * Reads a big endian int.
+	 *
+	 * @param data the data
+	 * @param pos the position of the int
+	 * @return the value
+	 */
+	private static int readInt(byte[] data, int pos) {
+		return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) |
+			   ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+	}
+}
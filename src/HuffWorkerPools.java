@@ -0,0 +1,32 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The Class HuffWorkerPools. The ForkJoinPools shared by the parallel parts of the engine:
+ * the histogram of GenWeights and the ParallelBlockEncoder and ParallelBlockDecoder.
+ * Starting and stopping a pool for every file costs more than counting or encoding a
+ * small file, so one pool is kept for each level of parallelism and reused by every job.
+ *
+ * The common pool is used when it has the requested parallelism. The other pools are
+ * created on first use and never shut down; their worker threads are daemon threads, so
+ * they do not keep the JVM alive.
+ */
+public class HuffWorkerPools {
+
+	/** The shared pools, by parallelism. */
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+	/**
+	 * Gets the shared pool for a level of parallelism.
+	 *
+	 * @param parallelism the number of worker threads
+	 * @return the common pool if its parallelism matches, otherwise the shared pool for the parallelism
+	 */
+	static ForkJoinPool get(int parallelism) {
+		int threads = Math.max(1, parallelism);
+		if (threads == ForkJoinPool.getCommonPoolParallelism()) {
+			return ForkJoinPool.commonPool();
+		}
+		return pools.computeIfAbsent(threads, ForkJoinPool::new);
+	}
+}
@@ -2,6 +2,7 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -15,6 +16,9 @@ public class HuffmanCompressionUtilities {
 	/** Constant representing the number of ASCII characters. */
 	private final int NUM_ASCII = 128;
 
+	/** Constant representing the number of byte values - the alphabet of the .huf container. */
+	static final int NUM_BYTES = 256;
+
 	/** Constant representing the start of the printable range of ASCII characters */
     private final int ASCII_PRINT_MIN = 32;    
 
@@ -27,9 +31,22 @@ public class HuffmanCompressionUtilities {
 	/** The root. */
 	private HuffmanTreeNode root;
 	
-	/**  The encode map - this will map a character to the bit string that will replace it. */
+	/**  The encode map - this will map a character to the bit string that will replace it. 
+	 *   In canonical mode this is only a debug view of codeValues/codeLengths. */
 	private String[] encodeMap;
 	
+	/** The maximum code length supported by the canonical code tables. */
+	static final int MAX_CANONICAL_BITS = 32;
+	
+	/** The canonical code values, right-aligned - only valid after createCanonicalCodes() */
+	private int[] codeValues;
+	
+	/** The canonical code lengths - 0 means the character has no code */
+	private byte[] codeLengths;
+	
+	/** The percentage increase in the encoded size caused by the last length limit */
+	private double lengthLimitLoss;
+	
 	/** The str. This is used to print the tree structure for testing purposes */
 	private String str;
 	
@@ -77,24 +94,70 @@ public class HuffmanCompressionUtilities {
 		return encodeMap;
 	}
 	
+	/**
+	 * Gets the canonical code values.
+	 *
+	 * @return the code values
+	 */
+	int[] getCodeValues() {
+		return codeValues;
+	}
+	
+	/**
+	 * Gets the canonical code lengths.
+	 *
+	 * @return the code lengths
+	 */
+	byte[] getCodeLengths() {
+		return codeLengths;
+	}
+	
+	/**
+	 * Gets the percentage increase in the encoded size (sum of weight * code length) caused
+	 * by the last call to createLengthLimitedCodes, compared to the unlimited Huffman codes.
+	 *
+	 * @return the length limit loss, in percent
+	 */
+	double getLengthLimitLoss() {
+		return lengthLimitLoss;
+	}
+	
 	/**
 	 * Read freq weights from the given File inf.
 	 * You can assume that this file has already been error checked
 	 * Use fio and a BufferedReader to read the line, split into
 	 * fields, and initialize the weights array/
+	 * The weights array has NUM_ASCII entries, unless the file contains weights for
+	 * characters 128 to 255 (written for the byte alphabet), in which case it has NUM_BYTES.
+	 * A binary weights file (see HuffWeightsFile) is loaded with a single bulk read instead.
 	 *
 	 * @param inf the File object connected to the file to be read
-	 * @return the int[] that represent the weights....
+	 * @return the int[] that represent the weights, or null if a binary weights file is corrupt
 	 */
 	int[] readFreqWeights(File inf) {
+		if (HuffWeightsFile.isBinary(inf)) {
+			try {
+				weights = HuffWeightsFile.read(inf);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+			return weights;
+		}
 		BufferedReader bufferedReader = fio.openBufferedReader(inf);
 		String readLine;
 		String[] splitLine;
+		int ord;
 		
+		weights = new int[NUM_ASCII];
 		try {
 			while ((readLine = bufferedReader.readLine()) != null) {
 				splitLine = readLine.split("[,]", 0);
-				weights[Integer.parseInt(splitLine[0])] = Integer.parseInt(splitLine[1]);
+				ord = Integer.parseInt(splitLine[0]);
+				if (ord >= weights.length) {
+					weights = Arrays.copyOf(weights, NUM_BYTES);
+				}
+				weights[ord] = Integer.parseInt(splitLine[1]);
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -158,7 +221,7 @@ public class HuffmanCompressionUtilities {
 		HuffmanTreeNode left, right;
 		
 		root = null;
-		encodeMap = new String[NUM_ASCII];
+		encodeMap = new String[weights.length];
 		initializeHuffmanQueue(minimize);
 		
 		while (queue.peek() != null) {
@@ -215,6 +278,319 @@ public class HuffmanCompressionUtilities {
 		createHuffmanCodes(node.getRight(), code.concat("1"), level + 1);
 	}
 	
+	/**
+	 * Creates canonical huffman codes no longer than maxBits bits. If the tree already fits,
+	 * this is the same as createCanonicalCodes(). Otherwise, the optimal length-limited code
+	 * lengths are found with the package-merge algorithm, directly from the weights, and the
+	 * increase in the encoded size is recorded (see getLengthLimitLoss()).
+	 * 
+	 * It is assumed that buildHuffmanTree() has been called prior to calling this method,
+	 * with the same value of minimize.
+	 *
+	 * @param maxBits the maximum code length (1 to MAX_CANONICAL_BITS)
+	 * @param minimize - when true, only characters with non-zero weights get a code
+	 * @return true, if successful; false if there are too many characters for maxBits
+	 */
+	boolean createLengthLimitedCodes(int maxBits, boolean minimize) {
+		lengthLimitLoss = 0;
+		if (maxBits < 1 || maxBits > MAX_CANONICAL_BITS) {
+			return false;
+		}
+		if (treeDepth(root) <= maxBits) {
+			return createCanonicalCodes();
+		}
+		
+		int n = 0;
+		int[] ords = new int[weights.length];
+		for (int i = 0; i < weights.length; i++) {
+			if (!minimize || weights[i] != 0) {
+				ords[n++] = i;
+			}
+		}
+		if (n > (1L << maxBits)) {
+			return false;
+		}
+		byte[] lengths = packageMerge(Arrays.copyOf(ords, n), maxBits);
+		long huffmanBits = weightedLength(root, 0);
+		long limitedBits = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			limitedBits += (long) weights[i] * lengths[i];
+		}
+		if (huffmanBits > 0) {
+			lengthLimitLoss = 100.0 * (limitedBits - huffmanBits) / huffmanBits;
+		}
+		return setCodeLengths(lengths);
+	}
+	
+	/**
+	 * Finds the optimal code lengths of at most maxBits bits with the package-merge 
+	 * algorithm. The characters are sorted by weight; level maxBits holds the characters, 
+	 * and each shallower level is the characters merged with the pairs ("packages") of the
+	 * level below. The 2n-2 cheapest items of level 1 are selected, and every character 
+	 * in a selected item (directly, or inside a package) gets one more bit of code length.
+	 *
+	 * @param ords the characters that get a code - MUST be at most 2^maxBits of them
+	 * @param maxBits the maximum code length
+	 * @return the code lengths, indexed by character
+	 */
+	private byte[] packageMerge(int[] ords, int maxBits) {
+		byte[] lengths = new byte[weights.length];
+		int n = ords.length;
+		if (n <= 2) {
+			for (int ord : ords) {
+				lengths[ord] = 1;
+			}
+			return lengths;
+		}
+		Integer[] sorted = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = ords[i];
+		}
+		Arrays.sort(sorted, (a, b) -> (weights[a] != weights[b]) ? Integer.compare(weights[a], weights[b]) 
+				                                                 : Integer.compare(a, b));
+		long[] leafWeights = new long[n];
+		for (int i = 0; i < n; i++) {
+			leafWeights[i] = weights[sorted[i]];
+		}
+		
+		// isPackage[d][k] is true if the k-th item at level d is a package of two items from level d+1
+		boolean[][] isPackage = new boolean[maxBits + 1][];
+		long[] level = leafWeights;
+		isPackage[maxBits] = new boolean[n];
+		for (int d = maxBits - 1; d >= 1; d--) {
+			int numPackages = level.length / 2;
+			long[] merged = new long[n + numPackages];
+			isPackage[d] = new boolean[merged.length];
+			int leaf = 0, pkg = 0;
+			for (int k = 0; k < merged.length; k++) {
+				long pkgWeight = (pkg < numPackages) ? level[2 * pkg] + level[2 * pkg + 1] : Long.MAX_VALUE;
+				if (leaf < n && leafWeights[leaf] <= pkgWeight) {
+					merged[k] = leafWeights[leaf++];
+				} else {
+					merged[k] = pkgWeight;
+					isPackage[d][k] = true;
+					pkg++;
+				}
+			}
+			level = merged;
+		}
+		
+		int take = 2 * n - 2;
+		for (int d = 1; d <= maxBits && take > 0; d++) {
+			int numLeaves = 0;
+			for (int k = 0; k < take; k++) {
+				if (!isPackage[d][k]) {
+					lengths[sorted[numLeaves++]]++;
+				}
+			}
+			take = 2 * (take - numLeaves);
+		}
+		return lengths;
+	}
+	
+	/**
+	 * Finds the depth of the deepest leaf of the tree.
+	 *
+	 * @param node the current node
+	 * @return the depth of the deepest leaf below node
+	 */
+	private int treeDepth(HuffmanTreeNode node) {
+		if (node == null || node.isLeaf()) {
+			return 0;
+		}
+		return 1 + Math.max(treeDepth(node.getLeft()), treeDepth(node.getRight()));
+	}
+	
+	/**
+	 * Finds the encoded size of the tree codes: the sum of weight * depth over the leaves.
+	 *
+	 * @param node the current node
+	 * @param depth the depth of the current node
+	 * @return the encoded size in bits of the leaves below node
+	 */
+	private long weightedLength(HuffmanTreeNode node, int depth) {
+		if (node == null) {
+			return 0;
+		}
+		if (node.isLeaf()) {
+			return (long) node.getWeight() * depth;
+		}
+		return weightedLength(node.getLeft(), depth + 1) + weightedLength(node.getRight(), depth + 1);
+	}
+	
+	/**
+	 * Creates the canonical huffman codes. The code lengths are taken from the depth of 
+	 * each leaf in the current tree, and the codes are then reassigned in canonical order
+	 * (by increasing length, then by increasing ordinal value). The tree is rebuilt to match 
+	 * the canonical codes, and the encodeMap is regenerated as a debug view.
+	 * 
+	 * It is assumed that buildHuffmanTree() has been called prior to calling this method.
+	 *
+	 * @return true, if successful; false if a code is longer than MAX_CANONICAL_BITS
+	 */
+	boolean createCanonicalCodes() {
+		byte[] lengths = new byte[weights.length];
+		if (!findCodeLengths(root, 0, lengths)) {
+			return false;
+		}
+		// a tree with a single leaf still needs a 1 bit code
+		if (root != null && root.isLeaf()) {
+			lengths[root.getOrdValue()] = 1;
+		}
+		return setCodeLengths(lengths);
+	}
+	
+	/**
+	 * Rebuilds the complete canonical codebook from the code lengths alone: assigns the
+	 * canonical code values, rebuilds the tree and regenerates the encodeMap debug view.
+	 * The lengths come from .huf headers, streams and the codebook cache, so they are 
+	 * checked against the Kraft inequality: the sum of 2^-length over the characters 
+	 * with a code must be exactly 1 (a complete prefix code), except for a single 
+	 * character, whose one code leaves the sum below 1.
+	 *
+	 * @param lengths the code length of each character; 0 if the character has no code
+	 * @return true, if successful; false if a length is larger than MAX_CANONICAL_BITS, 
+	 *         or the lengths are not those of a complete prefix code
+	 */
+	boolean setCodeLengths(byte[] lengths) {
+		int[] lengthCount = new int[MAX_CANONICAL_BITS + 1];
+		int[] nextCode = new int[MAX_CANONICAL_BITS + 1];
+		int code = 0;
+		int numCodes = 0;
+		long kraft = 0;
+		
+		for (int i = 0; i < lengths.length; i++) {
+			if (lengths[i] < 0 || lengths[i] > MAX_CANONICAL_BITS) {
+				return false;
+			}
+			lengthCount[lengths[i]]++;
+			if (lengths[i] > 0) {
+				numCodes++;
+				kraft += 1L << (MAX_CANONICAL_BITS - lengths[i]);
+			}
+		}
+		if (kraft > (1L << MAX_CANONICAL_BITS) || (numCodes > 1 && kraft != (1L << MAX_CANONICAL_BITS))) {
+			return false;
+		}
+		lengthCount[0] = 0;
+		for (int len = 1; len <= MAX_CANONICAL_BITS; len++) {
+			code = (code + lengthCount[len - 1]) << 1;
+			nextCode[len] = code;
+		}
+		
+		codeLengths = lengths.clone();
+		codeValues = new int[lengths.length];
+		encodeMap = new String[lengths.length];
+		for (int i = 0; i < lengths.length; i++) {
+			if (lengths[i] != 0) {
+				codeValues[i] = nextCode[lengths[i]]++;
+				encodeMap[i] = codeToString(codeValues[i], lengths[i]);
+			}
+		}
+		root = buildCanonicalTree();
+		return true;
+	}
+	
+	/**
+	 * Records the depth of every leaf in the tree as its code length. 
+	 *
+	 * @param node the current node
+	 * @param depth the depth of the current node
+	 * @param lengths the array of code lengths to fill in
+	 * @return false if any leaf is deeper than MAX_CANONICAL_BITS
+	 */
+	private boolean findCodeLengths(HuffmanTreeNode node, int depth, byte[] lengths) {
+		if (node == null) {
+			return true;
+		}
+		if (node.isLeaf()) {
+			if (depth > MAX_CANONICAL_BITS) {
+				return false;
+			}
+			lengths[node.getOrdValue()] = (byte) depth;
+			return true;
+		}
+		return findCodeLengths(node.getLeft(), depth + 1, lengths) && 
+			   findCodeLengths(node.getRight(), depth + 1, lengths);
+	}
+	
+	/**
+	 * Builds a tree that matches the canonical codes, so that the tree based decoders
+	 * work on canonical codes as well.
+	 *
+	 * @return the root of the canonical tree; null if there are no codes
+	 */
+	private HuffmanTreeNode buildCanonicalTree() {
+		int count = 0;
+		for (int i = 0; i < codeLengths.length; i++) {
+			if (codeLengths[i] != 0) count++;
+		}
+		if (count == 0) {
+			return null;
+		}
+		
+		// sorting by the left-aligned code value puts the leaves in tree order
+		Integer[] ords = new Integer[count];
+		count = 0;
+		for (int i = 0; i < codeLengths.length; i++) {
+			if (codeLengths[i] != 0) ords[count++] = i;
+		}
+		Arrays.sort(ords, (a, b) -> Long.compare(alignedCode(a), alignedCode(b)));
+		return buildCanonicalNode(ords, 0, count, 0);
+	}
+	
+	/**
+	 * Returns the code value of a character, left-aligned to MAX_CANONICAL_BITS.
+	 *
+	 * @param ord the ordinal value of the character
+	 * @return the left-aligned code value
+	 */
+	private long alignedCode(int ord) {
+		return ((long) codeValues[ord] & 0xFFFFFFFFL) << (MAX_CANONICAL_BITS - codeLengths[ord]);
+	}
+	
+	/**
+	 * Recursively builds the canonical tree. All characters in ords[lo..hi) share the 
+	 * same first depth bits of their codes.
+	 *
+	 * @param ords the characters, sorted in code order
+	 * @param lo the first character of this subtree
+	 * @param hi one past the last character of this subtree
+	 * @param depth the depth of this subtree
+	 * @return the root of the subtree
+	 */
+	private HuffmanTreeNode buildCanonicalNode(Integer[] ords, int lo, int hi, int depth) {
+		if (lo >= hi) {
+			return null;
+		}
+		if (codeLengths[ords[lo]] == depth) {
+			return new HuffmanTreeNode(ords[lo], (ords[lo] < weights.length) ? weights[ords[lo]] : 0);
+		}
+		int mid = lo;
+		while (mid < hi && ((codeValues[ords[mid]] >>> (codeLengths[ords[mid]] - 1 - depth)) & 1) == 0) {
+			mid++;
+		}
+		HuffmanTreeNode left = buildCanonicalNode(ords, lo, mid, depth + 1);
+		HuffmanTreeNode right = buildCanonicalNode(ords, mid, hi, depth + 1);
+		int weight = ((left != null) ? left.getWeight() : 0) + ((right != null) ? right.getWeight() : 0);
+		return new HuffmanTreeNode(weight, left, right);
+	}
+	
+	/**
+	 * Converts a code value to the equivalent string of 1's and 0's.
+	 *
+	 * @param code the code value
+	 * @param length the length of the code in bits
+	 * @return the code string
+	 */
+	private String codeToString(int code, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = length - 1; i >= 0; i--) {
+			sb.append(((code >>> i) & 1) == 1 ? '1' : '0');
+		}
+		return sb.toString();
+	}
+	
 	/**
 	 * Prints the huffman tree for debugging and JUnit test purposes...
 	 * DO NOT CHANGE!!!
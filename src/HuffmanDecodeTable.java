@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The Class HuffmanDecodeTable. A table driven replacement for walking the Huffman
+ * tree one bit at a time. The decoder peeks TABLE_BITS bits from a BitReader and
+ * resolves the character and its code length with a single array access. Codes that
+ * are longer than TABLE_BITS continue in a second-level table (and so on), so trees
+ * of any depth are supported.
+ *
+ * Each table entry is one of:
+ *   - a leaf:     (ordinal value << 8) | number of bits in the code (within this table)
+ *   - a subtable: SUBTABLE | offset of the subtable in the table array
+ *   - INVALID:    the bits do not correspond to any code
+ */
+public class HuffmanDecodeTable {
+
+	/** The default number of bits resolved by each table lookup. */
+	static final int TABLE_BITS = 11;
+
+	/** Flag marking an entry that points to a subtable. */
+	private static final int SUBTABLE = 0x80000000;
+
+	/** Entry for bits that do not decode to any character. */
+	private static final int INVALID = -1;
+
+	/** The size of the output buffer used by decodeToEOF. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The number of bits resolved by each table lookup. */
+	private int tableBits;
+
+	/** The primary table at offset 0, followed by all subtables. */
+	private int[] table;
+
+	/** The number of entries used in the table array. */
+	private int tableSize;
+
+	/**
+	 * Instantiates a new decode table for the tree with the default number of table bits.
+	 *
+	 * @param root the root of the Huffman tree
+	 */
+	public HuffmanDecodeTable(HuffmanTreeNode root) {
+		this(root, TABLE_BITS);
+	}
+
+	/**
+	 * Instantiates a new decode table for the tree.
+	 *
+	 * @param root the root of the Huffman tree
+	 * @param tableBits the number of bits resolved by each table lookup (1 to 15)
+	 */
+	public HuffmanDecodeTable(HuffmanTreeNode root, int tableBits) {
+		this.tableBits = tableBits;
+		table = new int[1 << tableBits];
+		tableSize = 1 << tableBits;
+		fillTable(0, root, 0, 0);
+	}
+
+	/**
+	 * Gets the number of int entries in the table, including all subtables.
+	 *
+	 * @return the table size
+	 */
+	int getTableSize() {
+		return tableSize;
+	}
+
+	/**
+	 * Gets the approximate memory footprint of the table in bytes.
+	 *
+	 * @return the footprint
+	 */
+	long getFootprint() {
+		return 4L * table.length;
+	}
+
+	/**
+	 * Recursively fills in the table starting at offset base. All entries whose
+	 * first depth bits equal prefix are resolved by node.
+	 *
+	 * @param base the offset of the table being filled in
+	 * @param node the tree node reached after depth bits
+	 * @param depth the number of bits consumed within this table
+	 * @param prefix the bits consumed within this table
+	 */
+	private void fillTable(int base, HuffmanTreeNode node, int depth, int prefix) {
+		int first = base + (prefix << (tableBits - depth));
+		int last = base + ((prefix + 1) << (tableBits - depth));
+
+		if (node == null) {
+			fillRange(first, last, INVALID);
+		} else if (node.isLeaf()) {
+			fillRange(first, last, (node.getOrdValue() << 8) | depth);
+		} else if (depth == tableBits) {
+			int sub = allocateSubtable();
+			table[first] = SUBTABLE | sub;
+			fillTable(sub, node, 0, 0);
+		} else {
+			fillTable(base, node.getLeft(), depth + 1, prefix << 1);
+			fillTable(base, node.getRight(), depth + 1, (prefix << 1) | 1);
+		}
+	}
+
+	/**
+	 * Fills a range of table entries with the same value.
+	 *
+	 * @param first the first entry
+	 * @param last one past the last entry
+	 * @param entry the value
+	 */
+	private void fillRange(int first, int last, int entry) {
+		for (int i = first; i < last; i++) {
+			table[i] = entry;
+		}
+	}
+
+	/**
+	 * Allocates a new subtable at the end of the table array, growing it if needed.
+	 *
+	 * @return the offset of the new subtable
+	 */
+	private int allocateSubtable() {
+		int offset = tableSize;
+		tableSize += 1 << tableBits;
+		if (tableSize > table.length) {
+			int[] newTable = new int[Math.max(tableSize, table.length * 2)];
+			System.arraycopy(table, 0, newTable, 0, offset);
+			table = newTable;
+		}
+		return offset;
+	}
+
+	/**
+	 * Decodes the next character from the bit reader.
+	 *
+	 * @param br the bit reader
+	 * @return the ordinal value of the character, or -1 if the bits are not a valid code
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	int decodeSymbol(BitReader br) throws IOException {
+		int entry = table[br.peekBits(tableBits)];
+		while (entry < 0) {
+			if (entry == INVALID) {
+				return -1;
+			}
+			br.skipBits(tableBits);
+			entry = table[(entry & ~SUBTABLE) + br.peekBits(tableBits)];
+		}
+		br.skipBits(entry & 0xFF);
+		return entry >>> 8;
+	}
+
+	/**
+	 * Decodes characters from the bit reader and writes them to the output stream
+	 * until the EOF character is decoded. Decoding also stops if an invalid code is
+	 * found or the input runs out before the EOF character.
+	 *
+	 * @param br the bit reader connected to the binary file
+	 * @param out the stream for the decoded characters
+	 * @param eof the ordinal value of the EOF character
+	 * @return the number of characters written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	long decodeToEOF(BitReader br, OutputStream out, int eof) throws IOException {
+		return decode(br, out, eof, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Decodes exactly count characters from the bit reader and writes them to the output
+	 * stream. Decoding stops early if an invalid code is found or the input runs out.
+	 *
+	 * @param br the bit reader connected to the binary file
+	 * @param out the stream for the decoded characters
+	 * @param count the number of characters to decode
+	 * @return the number of characters written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	long decodeCount(BitReader br, OutputStream out, long count) throws IOException {
+		return decode(br, out, -1, count);
+	}
+
+	/**
+	 * Decodes characters until the EOF character is decoded or limit characters have been
+	 * written, whichever comes first.
+	 *
+	 * @param br the bit reader connected to the binary file
+	 * @param out the stream for the decoded characters
+	 * @param eof the ordinal value of the EOF character; -1 if there is none
+	 * @param limit the maximum number of characters to write
+	 * @return the number of characters written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private long decode(BitReader br, OutputStream out, int eof, long limit) throws IOException {
+		byte[] outBuf = new byte[BUFFER_SIZE];
+		int outPos = 0;
+		long count = 0;
+		int ord;
+
+		while (count + outPos < limit && (ord = decodeSymbol(br)) != eof && ord != -1 && !br.isExhausted()) {
+			outBuf[outPos++] = (byte) ord;
+			if (outPos == outBuf.length) {
+				out.write(outBuf, 0, outPos);
+				count += outPos;
+				outPos = 0;
+			}
+		}
+		out.write(outBuf, 0, outPos);
+		return count + outPos;
+	}
+}
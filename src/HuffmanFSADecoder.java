@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * The Class HuffmanFSADecoder. A byte at a time decoder built as a finite state
+ * automaton over the internal nodes of the Huffman tree. The state is the internal
+ * node reached so far; for every (state, input byte) pair the automaton stores the
+ * characters emitted while walking the 8 bits of the byte, and the state reached at
+ * the end of the byte. Decoding is then one table lookup per compressed byte with no
+ * bit-level branching.
+ *
+ * Building the automaton costs (number of internal nodes * 256 * 8) steps, so it pays
+ * off when the same tree is used to decode a lot of data.
+ */
+public class HuffmanFSADecoder {
+
+	/** The maximum number of characters that can be emitted by one byte. */
+	private static final int MAX_EMIT = 8;
+
+	/** The count value marking a byte that does not correspond to any valid code. */
+	private static final int INVALID = 0xF;
+
+	/** The size of the input and output buffers. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The internal nodes of the tree; the index is the state number. The root is state 0. */
+	private ArrayList<HuffmanTreeNode> states;
+
+	/** The transitions: (next state << 4) | number of characters emitted, indexed by state*256+byte. */
+	private int[] transitions;
+
+	/** The characters emitted, MAX_EMIT slots per transition. */
+	private char[] emitted;
+
+	/** The root of the tree. */
+	private HuffmanTreeNode root;
+
+	/**
+	 * Instantiates a new FSA decoder for the tree.
+	 *
+	 * @param root the root of the Huffman tree
+	 */
+	public HuffmanFSADecoder(HuffmanTreeNode root) {
+		this.root = root;
+		states = new ArrayList<HuffmanTreeNode>();
+		IdentityHashMap<HuffmanTreeNode, Integer> stateIndex = new IdentityHashMap<HuffmanTreeNode, Integer>();
+		findStates(root, stateIndex);
+		transitions = new int[states.size() * 256];
+		emitted = new char[states.size() * 256 * MAX_EMIT];
+		for (int s = 0; s < states.size(); s++) {
+			for (int b = 0; b < 256; b++) {
+				buildTransition(s, b, stateIndex);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of states in the automaton.
+	 *
+	 * @return the number of states
+	 */
+	int getNumStates() {
+		return states.size();
+	}
+
+	/**
+	 * Gets the approximate memory footprint of the automaton in bytes.
+	 *
+	 * @return the footprint
+	 */
+	long getFootprint() {
+		return 4L * transitions.length + 2L * emitted.length + 8L * states.size();
+	}
+
+	/**
+	 * Numbers the internal nodes of the tree in preorder.
+	 *
+	 * @param node the current node
+	 * @param stateIndex the map of internal node to state number
+	 */
+	private void findStates(HuffmanTreeNode node, IdentityHashMap<HuffmanTreeNode, Integer> stateIndex) {
+		if (node == null || node.isLeaf()) {
+			return;
+		}
+		stateIndex.put(node, states.size());
+		states.add(node);
+		findStates(node.getLeft(), stateIndex);
+		findStates(node.getRight(), stateIndex);
+	}
+
+	/**
+	 * Walks the 8 bits of aByte starting at the node for state, recording the characters
+	 * emitted and the state reached at the end of the byte.
+	 *
+	 * @param state the starting state
+	 * @param aByte the input byte
+	 * @param stateIndex the map of internal node to state number
+	 */
+	private void buildTransition(int state, int aByte, IdentityHashMap<HuffmanTreeNode, Integer> stateIndex) {
+		int idx = (state << 8) | aByte;
+		HuffmanTreeNode node = states.get(state);
+		int count = 0;
+
+		for (int mask = 0x80; mask != 0; mask >>>= 1) {
+			node = ((aByte & mask) != 0) ? node.getRight() : node.getLeft();
+			if (node == null) {
+				transitions[idx] = INVALID;
+				return;
+			}
+			if (node.isLeaf()) {
+				emitted[idx * MAX_EMIT + count++] = (char) node.getOrdValue();
+				node = root;
+			}
+		}
+		transitions[idx] = (stateIndex.get(node) << 4) | count;
+	}
+
+	/**
+	 * Decodes bytes from the input stream and writes the characters to the output stream
+	 * until the EOF character is decoded, an invalid code is found or the input runs out.
+	 *
+	 * @param in the stream connected to the binary file
+	 * @param out the stream for the decoded characters
+	 * @param eof the ordinal value of the EOF character
+	 * @return the number of characters written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	long decodeToEOF(InputStream in, OutputStream out, int eof) throws IOException {
+		if (states.isEmpty()) {
+			return 0;   // the tree is a single leaf - only the EOF character
+		}
+		return decode(in, out, eof, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Decodes exactly count characters from the input stream and writes them to the output
+	 * stream. Decoding stops early if an invalid code is found or the input runs out.
+	 * The input stream may be read past the last code (up to the end of its buffer).
+	 *
+	 * @param in the stream connected to the binary data
+	 * @param out the stream for the decoded characters
+	 * @param count the number of characters to decode
+	 * @return the number of characters written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	long decodeCount(InputStream in, OutputStream out, long count) throws IOException {
+		if (states.isEmpty()) {
+			// the tree is a single leaf - every bit decodes to the same character
+			for (long i = 0; i < count; i++) {
+				out.write(root.getOrdValue());
+			}
+			return count;
+		}
+		return decode(in, out, -1, count);
+	}
+
+	/**
+	 * Decodes bytes until the EOF character is decoded or limit characters have been
+	 * written, whichever comes first.
+	 *
+	 * @param in the stream connected to the binary data
+	 * @param out the stream for the decoded characters
+	 * @param eof the ordinal value of the EOF character; -1 if there is none
+	 * @param limit the maximum number of characters to write
+	 * @return the number of characters written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private long decode(InputStream in, OutputStream out, int eof, long limit) throws IOException {
+		byte[] inBuf = new byte[BUFFER_SIZE];
+		byte[] outBuf = new byte[BUFFER_SIZE + MAX_EMIT];
+		int outPos = 0;
+		long count = 0;
+		int state = 0;
+		int numRead;
+
+		while (count < limit && (numRead = in.read(inBuf, 0, inBuf.length)) > 0) {
+			for (int i = 0; i < numRead; i++) {
+				int idx = (state << 8) | (inBuf[i] & 0xFF);
+				int trans = transitions[idx];
+				int emit = trans & 0xF;
+				if (emit == INVALID) {
+					out.write(outBuf, 0, outPos);
+					return count + outPos;
+				}
+				for (int k = idx * MAX_EMIT, end = k + emit; k < end; k++) {
+					char ord = emitted[k];
+					if (ord == eof || count + outPos == limit) {
+						out.write(outBuf, 0, outPos);
+						return count + outPos;
+					}
+					outBuf[outPos++] = (byte) ord;
+				}
+				if (outPos >= BUFFER_SIZE) {
+					out.write(outBuf, 0, outPos);
+					count += outPos;
+					outPos = 0;
+				}
+				state = trans >>> 4;
+			}
+		}
+		out.write(outBuf, 0, outPos);
+		return count + outPos;
+	}
+}
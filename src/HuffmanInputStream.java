@@ -0,0 +1,211 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Class HuffmanInputStream. Decompresses a stream written by HuffmanOutputStream,
+ * in the same spirit as java.util.zip.GZIPInputStream. One block is decoded at a time
+ * (with a HuffmanDecodeTable built from the block's code lengths), so memory use is
+ * bounded by the block size.
+ *
+ * Only the bytes of the next block are read from the underlying stream, using the
+ * compressed length in front of each block. A read returns as soon as a whole block has
+ * arrived on a pipe or socket, and any data that follows the end marker is left in the
+ * underlying stream.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+
+	/** Reads the block lengths and the compressed blocks from the underlying stream. */
+	private DataInputStream dataIn;
+
+	/** The compressed data of the current block. */
+	private byte[] compressed;
+
+	/** Rebuilds the codebook for each block. */
+	private HuffmanCompressionUtilities huffUtil;
+
+	/** The decoded data of the current block. */
+	private byte[] block;
+
+	/** The number of bytes in the current block. */
+	private int blockLen;
+
+	/** The position of the next byte to return from the current block. */
+	private int blockPos;
+
+	/** Set once the header has been read. */
+	private boolean started;
+
+	/** Set once the end marker has been read. */
+	private boolean finished;
+
+	/**
+	 * Instantiates a new Huffman input stream. The header is read on the first read.
+	 *
+	 * @param in the stream that supplies the compressed data
+	 */
+	public HuffmanInputStream(InputStream in) {
+		this(in, false);
+	}
+
+	/**
+	 * Instantiates a new Huffman input stream. Used by EncodeDecode, which has already
+	 * consumed the .huf header while detecting the container mode.
+	 *
+	 * @param in the stream that supplies the compressed data
+	 * @param headerRead true if the .huf header has already been read from in
+	 */
+	HuffmanInputStream(InputStream in, boolean headerRead) {
+		super(in);
+		dataIn = new DataInputStream(in);
+		compressed = new byte[0];
+		huffUtil = new HuffmanCompressionUtilities();
+		block = new byte[0];
+		blockLen = 0;
+		blockPos = 0;
+		started = headerRead;
+		finished = false;
+	}
+
+	/**
+	 * Reads one byte.
+	 *
+	 * @return the byte (0 to 255), or -1 at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public int read() throws IOException {
+		if (blockPos == blockLen && !readBlock()) {
+			return -1;
+		}
+		return block[blockPos++] & 0xFF;
+	}
+
+	/**
+	 * Reads up to len bytes into the array, starting at off.
+	 *
+	 * @param b the buffer
+	 * @param off the start offset in the buffer
+	 * @param len the maximum number of bytes to read
+	 * @return the number of bytes read, or -1 at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (blockPos == blockLen && !readBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, blockLen - blockPos);
+		System.arraycopy(block, blockPos, b, off, n);
+		blockPos += n;
+		return n;
+	}
+
+	/**
+	 * Skips up to n bytes of decompressed data.
+	 *
+	 * @param n the number of bytes to skip
+	 * @return the number of bytes skipped
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && (blockPos < blockLen || readBlock())) {
+			int step = (int) Math.min(n - skipped, blockLen - blockPos);
+			blockPos += step;
+			skipped += step;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of decoded bytes available without decoding another block.
+	 *
+	 * @return the number of bytes available
+	 */
+	@Override
+	public int available() {
+		return blockLen - blockPos;
+	}
+
+	/**
+	 * Mark is not supported.
+	 *
+	 * @return false
+	 */
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Reads and decodes the next block.
+	 *
+	 * @return true, if a block was read; false at the end of the stream
+	 * @throws IOException Signals that an I/O exception has occurred, or the data is corrupt
+	 */
+	private boolean readBlock() throws IOException {
+		if (finished) {
+			return false;
+		}
+		if (!started) {
+			if (!HuffFileHeader.readMagic(in) || HuffFileHeader.read(in).getMode() != HuffFileHeader.MODE_STREAM) {
+				throw new IOException("Not a Huffman stream");
+			}
+			started = true;
+		}
+		int len;
+		int size;
+		try {
+			len = dataIn.readInt();
+			if (len == 0) {
+				finished = true;
+				return false;
+			}
+			if (len < 0 || len > HuffmanOutputStream.MAX_BLOCK_SIZE) {
+				throw new IOException("Corrupt Huffman stream - bad block length "+len);
+			}
+			size = dataIn.readInt();
+			if (size < 2 || size > 2 + HuffmanOutputStream.ALPHABET_SIZE + 4L * len) {
+				throw new IOException("Corrupt Huffman stream - bad compressed length "+size);
+			}
+			if (compressed.length < size) {
+				compressed = new byte[size];
+			}
+			dataIn.readFully(compressed, 0, size);
+		} catch (EOFException e) {
+			throw new IOException("Unexpected end of Huffman stream", e);
+		}
+
+		BitReader bitReader = new BitReader(new ByteArrayInputStream(compressed, 0, size));
+		byte[] lengths = new byte[bitReader.readBits(16)];
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = (byte) bitReader.readBits(8);
+		}
+		if (bitReader.isExhausted() || !huffUtil.setCodeLengths(lengths)) {
+			throw new IOException("Corrupt Huffman stream - bad code lengths");
+		}
+
+		HuffmanDecodeTable decodeTable = new HuffmanDecodeTable(huffUtil.getTreeRoot());
+		if (block.length < len) {
+			block = new byte[len];
+		}
+		for (int i = 0; i < len; i++) {
+			int ord = decodeTable.decodeSymbol(bitReader);
+			if (ord == -1 || bitReader.isExhausted()) {
+				throw new IOException("Corrupt Huffman stream - invalid code");
+			}
+			block[i] = (byte) ord;
+		}
+		blockLen = len;
+		blockPos = 0;
+		return true;
+	}
+}
@@ -0,0 +1,250 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The Class HuffmanOutputStream. Compresses any output stream incrementally, in the
+ * same spirit as java.util.zip.GZIPOutputStream. Data is collected into blocks of at
+ * most blockSize bytes; each full block gets its own canonical codebook (built with
+ * HuffmanCompressionUtilities) and is written through a BitWriter. Memory use is
+ * bounded by the block size, whatever the length of the stream.
+ *
+ * Stream layout: a .huf header in MODE_STREAM, followed by blocks of
+ *   uncompressed length  32 bits  (0 marks the end of the stream)
+ *   compressed length    32 bits  the number of bytes in the rest of the block
+ *   alphabet size        16 bits
+ *   code lengths          8 bits per character
+ *   canonical codes      padded to a byte boundary
+ * The compressed length lets HuffmanInputStream read exactly the bytes of each block, so
+ * it never waits on a pipe or socket for data that has not been sent, and never reads
+ * past the end marker.
+ *
+ * flush() compresses the data written so far as a block of its own, like the sync flush
+ * of a GZIPOutputStream, so the reader can decode everything written before the flush.
+ * Each flush ends a block, so flushing often costs compression.
+ *
+ * The stream MUST be finished (finish() or close()) to write the end marker.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+
+	/** The default block size. */
+	static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	/** The largest block size - keeps the canonical code lengths within 32 bits. */
+	static final int MAX_BLOCK_SIZE = 1 << 20;
+
+	/** The number of characters in the alphabet - one per byte value. */
+	static final int ALPHABET_SIZE = 256;
+
+	/** The data collected for the current block. */
+	private byte[] block;
+
+	/** The number of bytes in the current block. */
+	private int blockLen;
+
+	/** The compressed data of the current block, before it is written to the underlying stream. */
+	private ByteArrayOutputStream blockOut;
+
+	/** The bit writer connected to blockOut. */
+	private BitWriter bitWriter;
+
+	/** Builds the codebook for each block. */
+	private HuffmanCompressionUtilities huffUtil;
+
+	/** Set once the header has been written. */
+	private boolean started;
+
+	/** Set once the end marker has been written. */
+	private boolean finished;
+
+	/**
+	 * Instantiates a new Huffman output stream with the default block size.
+	 *
+	 * @param out the stream that receives the compressed data
+	 */
+	public HuffmanOutputStream(OutputStream out) {
+		this(out, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Instantiates a new Huffman output stream.
+	 *
+	 * @param out the stream that receives the compressed data
+	 * @param blockSize the number of bytes compressed with each codebook (1 to MAX_BLOCK_SIZE)
+	 */
+	public HuffmanOutputStream(OutputStream out, int blockSize) {
+		super(out);
+		if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block size must be between 1 and "+MAX_BLOCK_SIZE);
+		}
+		block = new byte[blockSize];
+		blockLen = 0;
+		blockOut = new ByteArrayOutputStream(blockSize / 2 + ALPHABET_SIZE + 16);
+		bitWriter = new BinaryIO().openBitWriter(blockOut);
+		huffUtil = new HuffmanCompressionUtilities();
+		started = false;
+		finished = false;
+	}
+
+	/**
+	 * Writes one byte.
+	 *
+	 * @param b the byte
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[blockLen++] = (byte) b;
+		if (blockLen == block.length) {
+			writeBlock();
+		}
+	}
+
+	/**
+	 * Writes len bytes from the array, starting at off.
+	 *
+	 * @param b the data
+	 * @param off the start offset in the data
+	 * @param len the number of bytes to write
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, block.length - blockLen);
+			System.arraycopy(b, off, block, blockLen, n);
+			blockLen += n;
+			off += n;
+			len -= n;
+			if (blockLen == block.length) {
+				writeBlock();
+			}
+		}
+	}
+
+	/**
+	 * Compresses the partially filled block, if there is one, and flushes the underlying
+	 * stream - the equivalent of GZIPOutputStream's sync flush. Every byte written before
+	 * the flush can then be read by the other end, without waiting for a full block or for
+	 * the end of the stream. Blocks are byte aligned, so the flush adds no padding beyond
+	 * the usual end of a block, but the next block starts with a new codebook.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (blockLen > 0) {
+			writeBlock();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compresses any remaining data and writes the end marker, without closing the
+	 * underlying stream.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		if (blockLen > 0) {
+			writeBlock();
+		}
+		writeHeader();
+		out.write(new byte[4]);
+		out.flush();
+		finished = true;
+	}
+
+	/**
+	 * Finishes the stream and closes the underlying stream.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Throws an IOException if the stream has been finished.
+	 *
+	 * @throws IOException Signals that the stream has been finished
+	 */
+	private void ensureOpen() throws IOException {
+		if (finished) {
+			throw new IOException("HuffmanOutputStream has been finished");
+		}
+	}
+
+	/**
+	 * Writes the .huf header, the first time only.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeHeader() throws IOException {
+		if (!started) {
+			new HuffFileHeader(HuffFileHeader.MODE_STREAM).write(out);
+			started = true;
+		}
+	}
+
+	/**
+	 * Builds the canonical codebook for the current block and writes the block, preceded
+	 * by its uncompressed and compressed lengths.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeBlock() throws IOException {
+		writeHeader();
+		int[] weights = new int[ALPHABET_SIZE];
+		for (int i = 0; i < blockLen; i++) {
+			weights[block[i] & 0xFF]++;
+		}
+		huffUtil.setWeights(weights);
+		huffUtil.buildHuffmanTree(true);
+		if (!huffUtil.createCanonicalCodes()) {
+			throw new IOException("Block codes exceed "+HuffmanCompressionUtilities.MAX_CANONICAL_BITS+" bits");
+		}
+		int[] values = huffUtil.getCodeValues();
+		byte[] lengths = huffUtil.getCodeLengths();
+
+		blockOut.reset();
+		bitWriter.writeBits(lengths.length, 16);
+		for (int i = 0; i < lengths.length; i++) {
+			bitWriter.writeBits(lengths[i], 8);
+		}
+		bitWriter.writeCodes(block, 0, blockLen, values, lengths);
+		bitWriter.flush();
+
+		byte[] prefix = new byte[8];
+		putInt(prefix, 0, blockLen);
+		putInt(prefix, 4, blockOut.size());
+		out.write(prefix);
+		blockOut.writeTo(out);
+		blockLen = 0;
+	}
+
+	/**
+	 * Stores an int, big-endian.
+	 *
+	 * @param b the array
+	 * @param off the offset of the int in the array
+	 * @param value the value
+	 */
+	private static void putInt(byte[] b, int off, int value) {
+		b[off] = (byte) (value >>> 24);
+		b[off + 1] = (byte) (value >>> 16);
+		b[off + 2] = (byte) (value >>> 8);
+		b[off + 3] = (byte) value;
+	}
+}
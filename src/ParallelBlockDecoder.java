@@ -0,0 +1,187 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The Class ParallelBlockDecoder. Decodes a blocked .huf container (MODE_BLOCKED) on a
+ * ForkJoinPool. The HuffBlockIndex gives the bit offset and original length of every
+ * block, so each block is read, decoded and written to its own position in the output
+ * file (which is sized up front) independently of the other blocks.
+ *
+ * The decode table and the FSA only hold read-only tables after they are built, so a
+ * single instance is shared by all of the threads.
+ */
+public class ParallelBlockDecoder {
+
+	/** The decode table, if the TABLE engine is selected. */
+	private HuffmanDecodeTable decodeTable;
+
+	/** The FSA decoder, if the FSA engine is selected. */
+	private HuffmanFSADecoder fsa;
+
+	/** The shared pool that decodes the blocks. */
+	private ForkJoinPool pool;
+
+	/** The longest code, for the JFR events. */
+	private int maxCodeLength;
+
+	/**
+	 * Instantiates a new parallel block decoder.
+	 *
+	 * @param codebook the shared codebook, which supplies the decode table or FSA
+	 * @param decoder the decode engine to use
+	 * @param pool the shared pool that decodes the blocks - see HuffWorkerPools
+	 */
+	public ParallelBlockDecoder(HuffCodebook codebook, HuffDecoder decoder, ForkJoinPool pool) {
+		if (decoder == HuffDecoder.FSA) {
+			fsa = codebook.getFSADecoder();
+		} else {
+			decodeTable = codebook.getDecodeTable();
+		}
+		this.pool = pool;
+		byte[] codeLengths = codebook.getHuffUtil().getCodeLengths();
+		maxCodeLength = (codeLengths != null) ? HuffEngineEvents.maxLength(codeLengths) : 0;
+	}
+
+	/**
+	 * Decodes all of the blocks of the .huf file to the output file.
+	 *
+	 * @param binFile the .huf input file
+	 * @param header the .huf header of the input file
+	 * @param index the block index of the input file
+	 * @param outFile the decoded output file
+	 * @throws IOException Signals that an I/O exception has occurred, or a block is corrupt
+	 */
+	void decode(File binFile, HuffFileHeader header, HuffBlockIndex index, File outFile) throws IOException {
+		ArrayList<ForkJoinTask<Void>> tasks = new ArrayList<>(index.getNumBlocks());
+		try (FileChannel in = FileChannel.open(binFile.toPath(), StandardOpenOption.READ);
+			 RandomAccessFile raf = new RandomAccessFile(outFile, "rw")) {
+			raf.setLength(header.getOriginalLength());
+			FileChannel out = raf.getChannel();
+			long position = 0;
+			for (int i = 0; i < index.getNumBlocks(); i++) {
+				final int block = i;
+				final long outPosition = position;
+				tasks.add(pool.submit(() -> {
+					decodeBlock(binFile, block, in, header.getSize() + index.getBitOffset(block) / 8, index.getCompressedLength(block),
+							    index.getLength(block), out, outPosition);
+					return null;
+				}));
+				position += index.getLength(i);
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				await(tasks.get(i), i);
+			}
+		} finally {
+			// the pool is shared, so only the blocks of this file are cancelled if it fails
+			for (ForkJoinTask<Void> task : tasks) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Reads, decodes and writes one block. FileChannel positional reads and writes are safe
+	 * to use from several threads at once. Each block is recorded as a JFR BlockDecodeEvent.
+	 *
+	 * @param binFile the .huf input file, for the JFR event
+	 * @param block the block number, for the JFR event
+	 * @param in the channel for the .huf file
+	 * @param inPosition the position of the block's codes in the .huf file
+	 * @param compressedLength the compressed length of the block in bytes
+	 * @param length the number of characters in the block
+	 * @param out the channel for the output file
+	 * @param outPosition the position of the block in the output file
+	 * @throws IOException Signals that an I/O exception has occurred, or the block is corrupt
+	 */
+	private void decodeBlock(File binFile, int block, FileChannel in, long inPosition, int compressedLength, 
+			                 int length, FileChannel out, long outPosition) throws IOException {
+		HuffEngineEvents.BlockDecodeEvent event = new HuffEngineEvents.BlockDecodeEvent();
+		event.begin();
+		ByteBuffer inBuf = ByteBuffer.allocate(compressedLength);
+		while (inBuf.hasRemaining()) {
+			if (in.read(inBuf, inPosition + inBuf.position()) < 0) {
+				throw new IOException("unexpected end of file");
+			}
+		}
+		BlockOutputStream blockOut = new BlockOutputStream(length);
+		ByteArrayInputStream blockIn = new ByteArrayInputStream(inBuf.array());
+		long decoded = (fsa != null) ? fsa.decodeCount(blockIn, blockOut, length) :
+			                           decodeTable.decodeCount(new BitReader(blockIn), blockOut, length);
+		if (decoded != length) {
+			throw new IOException("truncated or invalid codes");
+		}
+		ByteBuffer outBuf = ByteBuffer.wrap(blockOut.data);
+		while (outBuf.hasRemaining()) {
+			out.write(outBuf, outPosition + outBuf.position());
+		}
+		HuffEngineEvents.commitBlock(event, binFile, block, compressedLength, length, length, maxCodeLength);
+	}
+
+	/**
+	 * Waits for a block to be decoded, unwrapping any IOException thrown by the task.
+	 *
+	 * @param task the block task
+	 * @param block the block number, for the error message
+	 * @throws IOException Signals that the task failed or was interrupted
+	 */
+	private void await(ForkJoinTask<Void> task, int block) throws IOException {
+		try {
+			task.get();
+		} catch (ExecutionException e) {
+			throw new IOException("Corrupt .huf file - block "+block+": "+e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding", e);
+		}
+	}
+
+	/**
+	 * The Class BlockOutputStream. Collects one decoded block in a fixed size array,
+	 * without the copy made by ByteArrayOutputStream.toByteArray().
+	 */
+	private static class BlockOutputStream extends OutputStream {
+
+		/** The decoded block. */
+		private byte[] data;
+
+		/** The number of bytes written so far. */
+		private int count;
+
+		/**
+		 * Instantiates a new block output stream.
+		 *
+		 * @param length the length of the block
+		 */
+		BlockOutputStream(int length) {
+			data = new byte[length];
+			count = 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == data.length) {
+				throw new IOException("block overflow");
+			}
+			data[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > data.length - count) {
+				throw new IOException("block overflow");
+			}
+			System.arraycopy(b, off, data, count, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The Class ParallelBlockEncoder. Writes a blocked .huf container (MODE_BLOCKED): the
+ * input is split into fixed size blocks, which are encoded independently on a ForkJoinPool
+ * with one shared canonical codebook and written in order, followed by a HuffBlockIndex
+ * with the bit offset and original length of every block.
+ *
+ * Each block starts on a byte boundary and depends only on the codebook, so the output
+ * is identical whatever the number of threads. At most 2 * parallelism blocks are in
+ * flight at a time, so memory use is bounded by the block size, not the file size.
+ */
+public class ParallelBlockEncoder {
+
+	/** The default block size. */
+	static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	/** The canonical code values, right-aligned. */
+	private int[] codeValues;
+
+	/** The canonical code lengths (0 = no code). */
+	private byte[] codeLengths;
+
+	/** The number of characters in each block. */
+	private int blockSize;
+
+	/** The shared pool that encodes the blocks. */
+	private ForkJoinPool pool;
+
+	/** The number of worker threads of the pool. */
+	private int parallelism;
+
+	/** The longest code, for the JFR events. */
+	private int maxCodeLength;
+
+	/**
+	 * Instantiates a new parallel block encoder.
+	 *
+	 * @param codeValues the canonical code values
+	 * @param codeLengths the canonical code lengths
+	 * @param blockSize the number of characters in each block
+	 * @param pool the shared pool that encodes the blocks - see HuffWorkerPools
+	 */
+	public ParallelBlockEncoder(int[] codeValues, byte[] codeLengths, int blockSize, ForkJoinPool pool) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be at least 1");
+		}
+		this.codeValues = codeValues;
+		this.codeLengths = codeLengths;
+		this.blockSize = blockSize;
+		this.pool = pool;
+		parallelism = pool.getParallelism();
+		maxCodeLength = HuffEngineEvents.maxLength(codeLengths);
+	}
+
+	/**
+	 * Encodes the input file to a blocked .huf container.
+	 *
+	 * @param inFile the file to be compressed
+	 * @param binFile the .huf output file
+	 * @throws IOException Signals that an I/O exception has occurred, or the input contains a character with no code
+	 */
+	void encode(File inFile, File binFile) throws IOException {
+		ArrayDeque<ForkJoinTask<byte[]>> window = new ArrayDeque<>();
+		try (FileChannel channel = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+			 BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(binFile))) {
+			long length = channel.size();
+			HuffFileHeader header = new HuffFileHeader(length, codeLengths, blockSize);
+			header.write(out);
+			int numBlocks = header.getNumBlocks();
+			HuffBlockIndex index = new HuffBlockIndex(numBlocks);
+			int next = 0;
+
+			for (int block = 0; block < numBlocks; block++) {
+				while (next < numBlocks && window.size() < 2 * parallelism) {
+					final int blockNum = next++;
+					window.add(pool.submit(() -> encodeBlock(inFile, channel, blockNum, length)));
+				}
+				byte[] data = await(window.remove());
+				out.write(data);
+				index.addBlock(data.length, (int) Math.min(blockSize, length - (long) block * blockSize));
+			}
+			index.write(out);
+		} finally {
+			// the pool is shared, so only the blocks of this file are cancelled if it fails
+			for (ForkJoinTask<byte[]> task : window) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Reads and encodes one block. The FileChannel positional read is safe to use from
+	 * several threads at once. Each block is recorded as a JFR BlockEncodeEvent.
+	 *
+	 * @param inFile the file to be compressed, for the JFR event
+	 * @param channel the input file channel
+	 * @param blockNum the block number
+	 * @param length the length of the input file
+	 * @return the encoded block, padded to a byte boundary
+	 * @throws IOException Signals that an I/O exception has occurred, or the block contains a character with no code
+	 */
+	private byte[] encodeBlock(File inFile, FileChannel channel, int blockNum, long length) throws IOException {
+		HuffEngineEvents.BlockEncodeEvent event = new HuffEngineEvents.BlockEncodeEvent();
+		event.begin();
+		long start = (long) blockNum * blockSize;
+		int len = (int) Math.min(blockSize, length - start);
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, start + buf.position()) < 0) {
+				throw new IOException("The input file changed while it was being encoded");
+			}
+		}
+		byte[] block = buf.array();
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 2 + 16);
+		BitWriter bitWriter = new BitWriter(bos);
+		if (bitWriter.writeCodes(block, 0, len, codeValues, codeLengths) != len) {
+			throw new IOException("The input contains a character with no code - "+
+					"check that the weights file matches the input file.");
+		}
+		bitWriter.flush();
+		byte[] encoded = bos.toByteArray();
+		HuffEngineEvents.commitBlock(event, inFile, blockNum, len, encoded.length, len, maxCodeLength);
+		return encoded;
+	}
+
+	/**
+	 * Waits for a block to be encoded, unwrapping any IOException thrown by the task.
+	 *
+	 * @param task the block task
+	 * @return the encoded block
+	 * @throws IOException Signals that the task failed or was interrupted
+	 */
+	private byte[] await(ForkJoinTask<byte[]> task) throws IOException {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding", e);
+		}
+	}
+}